@@ -2,11 +2,13 @@ package me.rages.reliableframework;
 
 import com.sk89q.worldedit.math.BlockVector3;
 import lombok.SneakyThrows;
-import me.rages.reliableframework.data.Entity;
 import me.rages.reliableframework.data.ReliableUser;
 import me.rages.reliableframework.pluginservice.ServiceManager;
 import me.rages.reliableframework.pluginservice.impl.worldedit.FAWEService;
-import me.rages.reliableframework.storage.SQLStorage;
+import me.rages.reliableframework.session.PlayerSessionManager;
+import me.rages.reliableframework.storage.Database;
+import me.rages.reliableframework.storage.impl.InMemoryStorage;
+import me.rages.reliableframework.storage.impl.LogStorage;
 import me.rages.reliableframework.storage.impl.MySQLStorage;
 import me.rages.reliableframework.storage.impl.SQLiteStorage;
 import org.bukkit.Bukkit;
@@ -26,7 +28,8 @@ import java.util.concurrent.CompletableFuture;
 
 public class ReliableFramework extends JavaPlugin implements Listener {
 
-    private SQLStorage storage;
+    private Database storage;
+    private PlayerSessionManager sessionManager;
 
     @Override
     @SneakyThrows
@@ -68,14 +71,27 @@ public class ReliableFramework extends JavaPlugin implements Listener {
             this.storage = new SQLiteStorage(this, ReliableUser.class).connect();
         } else if (dbType.equals("MySQL")) {
             this.storage = new MySQLStorage(this, ReliableUser.class).connect();
+        } else if (dbType.equals("Log")) {
+            this.storage = new LogStorage(this, ReliableUser.class).connect();
+        } else if (dbType.equals("Memory")) {
+            this.storage = new InMemoryStorage(this, ReliableUser.class).connect();
         }
+        this.sessionManager = PlayerSessionManager.createSessionManager(this, storage)
+                .register(ReliableUser.class, "player_uuid", (uuid, name) -> {
+                    ReliableUser user = new ReliableUser(storage);
+                    user.setUuid(uuid);
+                    user.setName(name);
+                    return user;
+                });
         getServer().getPluginManager().registerEvents(this, this);
+        getServer().getPluginManager().registerEvents(sessionManager, this);
     }
 
 
     @Override
     public void onDisable() {
         try {
+            sessionManager.close();
             storage.disconnect();
         } catch (SQLException e) {
             e.printStackTrace();
@@ -86,12 +102,12 @@ public class ReliableFramework extends JavaPlugin implements Listener {
     @EventHandler
     public void onPluginLoad(PluginEnableEvent event) {
         if (event.getPlugin().equals(this)) {
-            storage.loadAll(ReliableUser.class)
-                    .thenComposeAsync(users -> {
+            storage.stream(ReliableUser.class, user -> {})
+                    .thenComposeAsync(count -> {
                         Bukkit.getConsoleSender().sendMessage(
-                                ChatColor.RED + "Loaded Framework Users: " + users.size()
+                                ChatColor.RED + "Loaded Framework Users: " + count
                         );
-                        return CompletableFuture.completedFuture(users);
+                        return CompletableFuture.completedFuture(count);
                     })
                     .exceptionally(ex -> {
                         Bukkit.getConsoleSender().sendMessage(
@@ -106,29 +122,26 @@ public class ReliableFramework extends JavaPlugin implements Listener {
     @EventHandler
     public void onJoin(PlayerJoinEvent event) {
         Player player = event.getPlayer();
-        // Load the user from the database asynchronously
-        storage.load(Entity.of("uuid", player.getUniqueId()), ReliableUser.class)
-                .thenApplyAsync(user -> {
-                    if (user == null) {
-                        // Create a new user if it doesn't exist
-                        user = new ReliableUser(storage);
-                        user.setUuid(player.getUniqueId());
-                        user.setName(player.getName());
-                        Bukkit.getConsoleSender().sendMessage(
-                                ChatColor.YELLOW +
-                                        String.format("Created the user: [%s, %s]",
-                                        user.getName(), user.getUuid())
-                        );
-                    } else {
-                        Bukkit.getConsoleSender().sendMessage(
-                                ChatColor.GOLD +
-                                        String.format("Loaded the user: [%s, %s]",
-                                        user.getName(), user.getUuid())
-                        );
-                    }
-                    return user;
-                })
-                .thenComposeAsync(user -> {
+        // The user was loaded before the player joined
+        ReliableUser user = sessionManager.get(player, ReliableUser.class);
+        if (user == null) {
+            return;
+        }
+        if (user.getId() == null) {
+            Bukkit.getConsoleSender().sendMessage(
+                    ChatColor.YELLOW +
+                            String.format("Created the user: [%s, %s]",
+                            user.getName(), user.getUuid())
+            );
+        } else {
+            Bukkit.getConsoleSender().sendMessage(
+                    ChatColor.GOLD +
+                            String.format("Loaded the user: [%s, %s]",
+                            user.getName(), user.getUuid())
+            );
+        }
+
+        CompletableFuture.supplyAsync(() -> {
                     // Get the current join count, increment it, and save it back
                     int totalJoins = user.get("join_count", Integer.class).orElse(0) + 1;
                     user.set("join_count", totalJoins);
@@ -138,17 +151,18 @@ public class ReliableFramework extends JavaPlugin implements Listener {
                                     String.format("%s has joined the server %d times.",
                                     user.getName(), totalJoins)
                     );
-
-                    // Save the user asynchronously
-                    return storage.save(user).thenApplyAsync(result -> {
-                        // Additional actions after saving, if necessary
-                        Bukkit.getConsoleSender().sendMessage(
-                                ChatColor.GREEN +
-                                        String.format("User [%s, %s] saved successfully.",
-                                        user.getName(), user.getUuid())
-                        );
-                        return result;
-                    });
+                    return user;
+                }, storage.getExecutor())
+                // Save the user asynchronously
+                .thenCompose(storage::save)
+                .thenApply(result -> {
+                    // Additional actions after saving, if necessary
+                    Bukkit.getConsoleSender().sendMessage(
+                            ChatColor.GREEN +
+                                    String.format("User [%s, %s] saved successfully.",
+                                    user.getName(), user.getUuid())
+                    );
+                    return result;
                 })
                 .exceptionally(ex -> {
                     ex.printStackTrace();
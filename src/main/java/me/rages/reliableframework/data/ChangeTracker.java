@@ -0,0 +1,84 @@
+package me.rages.reliableframework.data;
+
+import java.util.*;
+
+/**
+ * Tracks which columns of a data object changed since it was last loaded or saved.
+ * <p>
+ * The tracker keeps a snapshot of the values last written to or read from the database,
+ * so changes made through plain setters are found by comparing against it. Values that are
+ * mutated in place compare equal to their snapshot and must be marked with
+ * {@link #markDirty(String)}, which {@link DataObject#set(String, Object)} does for every key.
+ */
+public class ChangeTracker {
+
+    private Map<String, Object> snapshot;
+    private final Set<String> dirty = new HashSet<>();
+
+    /**
+     * Marks a column as changed regardless of its value.
+     *
+     * @param column the column name
+     */
+    public synchronized void markDirty(String column) {
+        dirty.add(column);
+    }
+
+    /**
+     * Marks several columns as changed regardless of their values.
+     *
+     * @param columns the column names
+     */
+    public synchronized void markDirty(Collection<String> columns) {
+        dirty.addAll(columns);
+    }
+
+    /**
+     * Checks whether the data object has been loaded or saved since it was created.
+     *
+     * @return true if a snapshot exists
+     */
+    public synchronized boolean isTracked() {
+        return snapshot != null;
+    }
+
+    /**
+     * Gets the columns whose value differs from the snapshot or that were marked dirty,
+     * and clears the dirty marks.
+     *
+     * @param columns the column names
+     * @param values  the current value of each column
+     * @return the changed columns, or null if there is no snapshot yet and every column must be written
+     */
+    public synchronized Set<String> drainChanges(List<String> columns, List<Object> values) {
+        if (snapshot == null) {
+            dirty.clear();
+            return null;
+        }
+        Set<String> changed = new HashSet<>(dirty);
+        dirty.clear();
+        for (int i = 0; i < columns.size(); i++) {
+            String column = columns.get(i);
+            if (!snapshot.containsKey(column) || !Objects.deepEquals(snapshot.get(column), values.get(i))) {
+                changed.add(column);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Records the values now stored in the database.
+     *
+     * @param columns the column names
+     * @param values  the stored value of each column
+     */
+    public synchronized void markPersisted(List<String> columns, List<Object> values) {
+        if (snapshot == null) {
+            snapshot = new HashMap<>();
+        }
+        for (int i = 0; i < columns.size(); i++) {
+            snapshot.put(columns.get(i), values.get(i));
+        }
+    }
+
+}
@@ -1,7 +1,7 @@
 package me.rages.reliableframework.data;
 
 import me.rages.reliableframework.data.annotations.Table;
-import me.rages.reliableframework.storage.SQLStorage;
+import me.rages.reliableframework.storage.Database;
 
 import java.sql.SQLException;
 import java.util.Map;
@@ -21,11 +21,26 @@ public interface DataObject {
     Map<String, Object> getData();
 
     /**
-     * Gets the SQL storage instance used for database operations.
+     * Gets the storage instance used for database operations.
+     * <p>
+     * This returns a {@link Database} rather than an {@code SQLStorage}, so data objects can
+     * be kept in any storage backend. Implementations declaring an {@code SQLStorage} return
+     * type still compile, while callers relying on SQL-only methods have to check for and
+     * cast to {@code SQLStorage} themselves.
      *
-     * @return the SQLStorage instance.
+     * @return the Database instance.
      */
-    SQLStorage getStorage();
+    Database getStorage();
+
+    /**
+     * Gets the tracker recording which columns changed since the last load or save.
+     * Data objects without a tracker have every column written on each save.
+     *
+     * @return the change tracker, or null if changes are not tracked.
+     */
+    default ChangeTracker getChangeTracker() {
+        return null;
+    }
 
     /**
      * Retrieves a value from the data map and casts it to the specified type.
@@ -50,9 +65,13 @@ public interface DataObject {
     default void set(String key, Object value) {
         try {
             if (!getData().containsKey(key)) {
-                getStorage().ensureColumnExists(getTableName(getClass()), key, value);
+                getStorage().ensureColumnExists(getStorage().getTableName(getClass()), key, value);
             }
             getData().put(key, value);
+            ChangeTracker tracker = getChangeTracker();
+            if (tracker != null) {
+                tracker.markDirty(key);
+            }
         } catch (SQLException e) {
             throw new IllegalStateException("Failed to set value for key: " + key, e);
         }
@@ -0,0 +1,100 @@
+package me.rages.reliableframework.data;
+
+import me.rages.reliableframework.storage.Database;
+import me.rages.reliableframework.storage.query.Condition;
+
+import java.util.AbstractList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The {@link me.rages.reliableframework.data.annotations.OneToMany} related data objects of
+ * a parent, loaded with one query on first access, or already resolved by an eager fetch.
+ * <p>
+ * Reading the list before it is loaded blocks until the query finishes. Call {@link #load()}
+ * and continue once it completes, or fetch the relationship eagerly, to read it from the
+ * server thread. The loaded list is read-only.
+ *
+ * @param <E> the type of the related data objects
+ */
+public class LazyList<E extends DataObject> extends AbstractList<E> {
+
+    private final Database database;
+    private final Class<E> type;
+    private final String column;
+    private final Object parentId;
+    private CompletableFuture<List<E>> future;
+
+    /**
+     * Constructs an unloaded list.
+     *
+     * @param database the database to load from
+     * @param type     the class of the related data objects
+     * @param column   the column of the related table referring to the parent
+     * @param parentId the id of the parent, or null if the parent is not stored yet
+     */
+    public LazyList(Database database, Class<E> type, String column, Object parentId) {
+        this.database = database;
+        this.type = type;
+        this.column = column;
+        this.parentId = parentId;
+    }
+
+    /**
+     * Constructs a list of already loaded data objects.
+     *
+     * @param database the database they were loaded from
+     * @param type     the class of the related data objects
+     * @param column   the column of the related table referring to the parent
+     * @param parentId the id of the parent
+     * @param values   the related data objects
+     * @param <E>      the type of the related data objects
+     * @return the resolved list
+     */
+    public static <E extends DataObject> LazyList<E> resolved(Database database, Class<E> type, String column,
+                                                              Object parentId, List<E> values) {
+        LazyList<E> list = new LazyList<>(database, type, column, parentId);
+        list.future = CompletableFuture.completedFuture(Collections.unmodifiableList(values));
+        return list;
+    }
+
+    /**
+     * Loads the related data objects, once. Later calls return the same future.
+     *
+     * @return a CompletableFuture of the related data objects
+     */
+    public synchronized CompletableFuture<List<E>> load() {
+        if (future == null) {
+            future = parentId == null
+                    ? CompletableFuture.completedFuture(Collections.emptyList())
+                    : database.select(type).where(Condition.eq(column, parentId)).list()
+                    .thenApply(Collections::unmodifiableList);
+        }
+        return future;
+    }
+
+    /**
+     * Checks whether the related data objects have been loaded.
+     *
+     * @return true if they are loaded
+     */
+    public synchronized boolean isLoaded() {
+        return future != null && future.isDone();
+    }
+
+    private List<E> values() {
+        return load().join();
+    }
+
+    @Override
+    public E get(int index) {
+        return values().get(index);
+    }
+
+    @Override
+    public int size() {
+        return values().size();
+    }
+
+}
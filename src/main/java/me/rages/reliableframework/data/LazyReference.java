@@ -0,0 +1,100 @@
+package me.rages.reliableframework.data;
+
+import lombok.Getter;
+import me.rages.reliableframework.data.metadata.EntityMetadata;
+import me.rages.reliableframework.storage.Database;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A {@link me.rages.reliableframework.data.annotations.ManyToOne} related data object that
+ * is loaded on first use, or was already resolved by an eager fetch.
+ *
+ * @param <T> the type of the related data object
+ */
+public class LazyReference<T extends DataObject> {
+
+    private final Database database;
+    private final Class<T> type;
+
+    /**
+     * The id of the related data object, or null if there is none.
+     */
+    @Getter
+    private final Object id;
+
+    private CompletableFuture<T> future;
+
+    /**
+     * Constructs an unloaded reference.
+     *
+     * @param database the database to load from
+     * @param type     the class of the related data object
+     * @param id       the id of the related data object, may be null
+     */
+    public LazyReference(Database database, Class<T> type, Object id) {
+        this.database = database;
+        this.type = type;
+        this.id = id;
+    }
+
+    /**
+     * Constructs a reference to an already loaded data object.
+     *
+     * @param database the database it was loaded from
+     * @param type     the class of the related data object
+     * @param id       the id of the related data object, may be null
+     * @param value    the related data object, may be null
+     * @param <T>      the type of the related data object
+     * @return the resolved reference
+     */
+    public static <T extends DataObject> LazyReference<T> resolved(Database database, Class<T> type, Object id, T value) {
+        LazyReference<T> reference = new LazyReference<>(database, type, id);
+        reference.future = CompletableFuture.completedFuture(value);
+        return reference;
+    }
+
+    /**
+     * Loads the related data object, once. Later calls return the same future.
+     *
+     * @return a CompletableFuture of the related data object, or of null if there is none
+     */
+    public synchronized CompletableFuture<T> load() {
+        if (future == null) {
+            EntityMetadata<T> metadata = EntityMetadata.of(type);
+            future = id == null || metadata.getIdColumn() == null
+                    ? CompletableFuture.completedFuture(null)
+                    : database.load(Entity.of(metadata.getIdColumn().getName(), id), type);
+        }
+        return future;
+    }
+
+    /**
+     * Gets the related data object if it has been loaded.
+     *
+     * @return the related data object, or null if it is not loaded yet or there is none
+     */
+    public synchronized T getIfLoaded() {
+        return future != null && future.isDone() && !future.isCompletedExceptionally() ? future.join() : null;
+    }
+
+    /**
+     * Checks whether the related data object has been loaded.
+     *
+     * @return true if it is loaded
+     */
+    public synchronized boolean isLoaded() {
+        return future != null && future.isDone();
+    }
+
+    /**
+     * Gets the related data object, loading it and waiting for it if needed. Blocks the
+     * calling thread, so avoid calling this on the server thread before it is loaded.
+     *
+     * @return the related data object, or null if there is none
+     */
+    public T get() {
+        return load().join();
+    }
+
+}
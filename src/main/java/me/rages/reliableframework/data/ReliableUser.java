@@ -3,8 +3,9 @@ package me.rages.reliableframework.data;
 import lombok.*;
 import me.rages.reliableframework.data.annotations.Column;
 import me.rages.reliableframework.data.annotations.Id;
+import me.rages.reliableframework.data.annotations.Indexed;
 import me.rages.reliableframework.data.annotations.Table;
-import me.rages.reliableframework.storage.SQLStorage;
+import me.rages.reliableframework.storage.Database;
 
 import java.sql.SQLException;
 import java.util.HashMap;
@@ -20,15 +21,17 @@ public class ReliableUser implements DataObject {
     @Id(autoIncrement = true)
     @Column(name = "id")
     private Integer id;
+    @Indexed
     @Column(name = "player_uuid")
     private UUID uuid;
     @Column(name = "username")
     private String name;
 
     private final Map<String, Object> data = new HashMap<>();
-    private final SQLStorage storage;
+    private final Database storage;
+    private final ChangeTracker changeTracker = new ChangeTracker();
 
-    public ReliableUser(SQLStorage storage) {
+    public ReliableUser(Database storage) {
         this.storage = storage;
     }
 
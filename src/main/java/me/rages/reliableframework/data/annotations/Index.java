@@ -0,0 +1,17 @@
+package me.rages.reliableframework.data.annotations;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+@Retention(RetentionPolicy.RUNTIME)
+@Target({})
+public @interface Index {
+
+    String name() default "";
+
+    String[] columns();
+
+    boolean unique() default false;
+
+}
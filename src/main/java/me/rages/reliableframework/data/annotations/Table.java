@@ -9,4 +9,6 @@ public @interface Table {
 
     String name();
 
+    Index[] indexes() default {};
+
 }
\ No newline at end of file
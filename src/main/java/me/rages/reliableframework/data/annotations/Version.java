@@ -0,0 +1,19 @@
+package me.rages.reliableframework.data.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an int or long {@link Column} as the version of its row, for optimistic locking.
+ * <p>
+ * A save of an existing row only succeeds if the stored version still is the one the data
+ * object holds, and increments it; otherwise the save fails with an
+ * {@link me.rages.reliableframework.storage.OptimisticLockException}. New rows start at version 1.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface Version {
+
+}
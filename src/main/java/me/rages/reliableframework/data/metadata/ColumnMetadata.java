@@ -0,0 +1,126 @@
+package me.rages.reliableframework.data.metadata;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import me.rages.reliableframework.data.annotations.Column;
+import me.rages.reliableframework.data.annotations.Id;
+import me.rages.reliableframework.data.annotations.Version;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+/**
+ * Describes a single {@link Column} annotated field of a data object,
+ * holding method handles to read and write it without per-call reflection.
+ */
+@Getter
+public final class ColumnMetadata {
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    /**
+     * The column name in the database.
+     */
+    private final String name;
+
+    /**
+     * The name of the backing field.
+     */
+    private final String fieldName;
+
+    /**
+     * The declared type of the backing field.
+     */
+    private final Class<?> type;
+
+    /**
+     * Whether this column is the {@link Id} column.
+     */
+    private final boolean id;
+
+    /**
+     * Whether the database generates the value of this column.
+     */
+    private final boolean autoIncrement;
+
+    /**
+     * Whether this column is the {@link Version} column.
+     */
+    private final boolean version;
+
+    @Getter(AccessLevel.NONE)
+    private final MethodHandle getter;
+
+    @Getter(AccessLevel.NONE)
+    private final MethodHandle setter;
+
+    ColumnMetadata(Field field) throws IllegalAccessException {
+        Column column = field.getAnnotation(Column.class);
+        Id idAnnotation = field.getAnnotation(Id.class);
+
+        this.name = column.name();
+        this.fieldName = field.getName();
+        this.type = field.getType();
+        this.id = idAnnotation != null;
+        this.autoIncrement = idAnnotation != null && idAnnotation.autoIncrement();
+        this.version = field.isAnnotationPresent(Version.class);
+
+        field.setAccessible(true);
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        this.getter = lookup.unreflectGetter(field).asType(GETTER_TYPE);
+        this.setter = Modifier.isFinal(field.getModifiers())
+                ? null
+                : lookup.unreflectSetter(field).asType(SETTER_TYPE);
+    }
+
+    /**
+     * Reads the value of this column from a data object.
+     *
+     * @param target the data object
+     * @return the field value
+     */
+    public Object get(Object target) {
+        try {
+            return getter.invokeExact(target);
+        } catch (Throwable t) {
+            throw new IllegalStateException("Failed to read column " + name + " from " + target.getClass().getName(), t);
+        }
+    }
+
+    /**
+     * Writes a value to this column of a data object. Null values are ignored for
+     * primitive fields.
+     *
+     * @param target the data object
+     * @param value  the value to write
+     */
+    public void set(Object target, Object value) {
+        if (setter == null) {
+            throw new IllegalStateException("Column " + name + " of " + target.getClass().getName() + " is final");
+        }
+        if (value == null && type.isPrimitive()) {
+            return;
+        }
+        try {
+            setter.invokeExact(target, value);
+        } catch (Throwable t) {
+            throw new IllegalStateException("Failed to write column " + name + " of " + target.getClass().getName(), t);
+        }
+    }
+
+    /**
+     * Gets the version following a value of this {@link Version} column.
+     *
+     * @param current the current version, null for a row that was never stored
+     * @return the next version, of the field type
+     */
+    public Object nextVersion(Object current) {
+        long next = current != null ? ((Number) current).longValue() + 1 : 1L;
+        return type == Long.class || type == long.class ? (Object) next : (Object) (int) next;
+    }
+
+}
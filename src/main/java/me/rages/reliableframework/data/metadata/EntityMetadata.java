@@ -0,0 +1,275 @@
+package me.rages.reliableframework.data.metadata;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import me.rages.reliableframework.data.DataObject;
+import me.rages.reliableframework.data.annotations.Column;
+import me.rages.reliableframework.data.annotations.Index;
+import me.rages.reliableframework.data.annotations.Indexed;
+import me.rages.reliableframework.data.annotations.ManyToOne;
+import me.rages.reliableframework.data.annotations.OneToMany;
+import me.rages.reliableframework.data.annotations.Table;
+import me.rages.reliableframework.storage.Database;
+import me.rages.reliableframework.storage.SQLStorage;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Mapping information for a {@link DataObject} class, built once per class
+ * and cached for the lifetime of the class.
+ *
+ * @param <T> the type of the data object
+ */
+@Getter
+public final class EntityMetadata<T extends DataObject> {
+
+    private static final ClassValue<EntityMetadata<?>> REGISTRY = new ClassValue<EntityMetadata<?>>() {
+        @Override
+        @SuppressWarnings("unchecked")
+        protected EntityMetadata<?> computeValue(Class<?> type) {
+            return new EntityMetadata<>((Class<? extends DataObject>) type);
+        }
+    };
+
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class, Database.class);
+
+    /**
+     * The data object class.
+     */
+    private final Class<T> type;
+
+    /**
+     * The table name from the {@link Table} annotation.
+     */
+    private final String tableName;
+
+    /**
+     * The mapped columns in declaration order.
+     */
+    private final List<ColumnMetadata> columns;
+
+    /**
+     * The {@link me.rages.reliableframework.data.annotations.Id} column, or null if there is none.
+     */
+    private final ColumnMetadata idColumn;
+
+    /**
+     * The {@link me.rages.reliableframework.data.annotations.Version} column, or null if there is none.
+     */
+    private final ColumnMetadata versionColumn;
+
+    /**
+     * The secondary indexes declared on fields and on the {@link Table} annotation.
+     */
+    private final List<IndexMetadata> indexes;
+
+    /**
+     * The {@link ManyToOne} and {@link OneToMany} relationships in declaration order.
+     */
+    private final List<RelationMetadata> relations;
+
+    @Getter(AccessLevel.NONE)
+    private final Map<String, ColumnMetadata> columnsByName;
+
+    @Getter(AccessLevel.NONE)
+    private final MethodHandle constructor;
+
+    /**
+     * Whether the constructor only accepts an {@link SQLStorage} rather than any {@link Database}.
+     */
+    @Getter(AccessLevel.NONE)
+    private final boolean sqlConstructor;
+
+    private EntityMetadata(Class<T> type) {
+        Table table = type.getAnnotation(Table.class);
+        if (table == null) {
+            throw new IllegalArgumentException("No @Table annotation found on class: " + type.getName());
+        }
+        this.type = type;
+        this.tableName = table.name();
+
+        List<ColumnMetadata> columns = new ArrayList<>();
+        Map<String, ColumnMetadata> columnsByName = new HashMap<>();
+        ColumnMetadata idColumn = null;
+        ColumnMetadata versionColumn = null;
+        List<IndexMetadata> indexes = new ArrayList<>();
+        List<RelationMetadata> relations = new ArrayList<>();
+        for (Field field : type.getDeclaredFields()) {
+            if (field.isAnnotationPresent(ManyToOne.class) || field.isAnnotationPresent(OneToMany.class)) {
+                try {
+                    relations.add(new RelationMetadata(field));
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException("Failed to access field " + field.getName() + " of " + type.getName(), e);
+                }
+                continue;
+            }
+            if (!field.isAnnotationPresent(Column.class)) {
+                continue;
+            }
+            ColumnMetadata column;
+            try {
+                column = new ColumnMetadata(field);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Failed to access field " + field.getName() + " of " + type.getName(), e);
+            }
+            columns.add(column);
+            columnsByName.put(column.getName().toLowerCase(Locale.ROOT), column);
+            if (column.isId() && idColumn == null) {
+                idColumn = column;
+            }
+            if (column.isVersion()) {
+                Class<?> versionType = column.getType();
+                if (versionType != int.class && versionType != Integer.class
+                        && versionType != long.class && versionType != Long.class) {
+                    throw new IllegalArgumentException("@Version field " + field.getName() + " of " + type.getName()
+                            + " must be an int or a long");
+                }
+                if (column.isId() || versionColumn != null) {
+                    throw new IllegalArgumentException("Only one non-id @Version field is allowed in " + type.getName());
+                }
+                versionColumn = column;
+            }
+            Indexed indexed = field.getAnnotation(Indexed.class);
+            if (indexed != null) {
+                indexes.add(new IndexMetadata(
+                        tableName, indexed.name(), Collections.singletonList(column.getName()), indexed.unique()
+                ));
+            }
+        }
+        for (Index index : table.indexes()) {
+            indexes.add(new IndexMetadata(tableName, index.name(), Arrays.asList(index.columns()), index.unique()));
+        }
+        this.columns = Collections.unmodifiableList(columns);
+        this.columnsByName = columnsByName;
+        this.idColumn = idColumn;
+        this.versionColumn = versionColumn;
+        this.indexes = Collections.unmodifiableList(indexes);
+        this.relations = Collections.unmodifiableList(relations);
+        MethodHandle constructor = findConstructor(type, Database.class);
+        this.sqlConstructor = constructor == null;
+        this.constructor = constructor != null ? constructor : findConstructor(type, SQLStorage.class);
+    }
+
+    /**
+     * Gets the metadata for a data object class, building it on first use.
+     *
+     * @param type the data object class
+     * @param <T>  the type of the data object
+     * @return the entity metadata
+     * @throws IllegalArgumentException if the class does not have a @Table annotation
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends DataObject> EntityMetadata<T> of(Class<T> type) {
+        return (EntityMetadata<T>) REGISTRY.get(type);
+    }
+
+    /**
+     * Gets the metadata for the class of a data object.
+     *
+     * @param dataObject the data object
+     * @param <T>        the type of the data object
+     * @return the entity metadata
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends DataObject> EntityMetadata<T> of(T dataObject) {
+        return of((Class<T>) dataObject.getClass());
+    }
+
+    /**
+     * Gets a mapped column by name, ignoring case.
+     *
+     * @param name the column name
+     * @return the column, or null if the name is not a mapped column
+     */
+    public ColumnMetadata getColumn(String name) {
+        return columnsByName.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Gets a relationship by the name of its field.
+     *
+     * @param name the field name
+     * @return the relationship, or null if the class has no relationship field of that name
+     */
+    public RelationMetadata getRelation(String name) {
+        for (RelationMetadata relation : relations) {
+            if (relation.getName().equals(name)) {
+                return relation;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks whether a column name belongs to a {@link Column} annotated field.
+     *
+     * @param name the column name
+     * @return true if the column is mapped to a field
+     */
+    public boolean isMapped(String name) {
+        return getColumn(name) != null;
+    }
+
+    /**
+     * Checks whether lookups by a column can use an index, that is whether the column is
+     * the id or the leading column of a declared index.
+     *
+     * @param name the column name
+     * @return true if the column is indexed
+     */
+    public boolean isIndexed(String name) {
+        if (idColumn != null && idColumn.getName().equalsIgnoreCase(name)) {
+            return true;
+        }
+        for (IndexMetadata index : indexes) {
+            if (index.getColumns().get(0).equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Creates a new instance of the data object through its {@code (Database)} constructor,
+     * or its {@code (SQLStorage)} constructor if the storage is an SQL storage.
+     *
+     * @param storage the storage passed to the constructor
+     * @return the new data object
+     * @throws ReflectiveOperationException if the class has no usable constructor or it fails
+     */
+    @SuppressWarnings("unchecked")
+    public T newInstance(Database storage) throws ReflectiveOperationException {
+        if (constructor == null || (sqlConstructor && !(storage instanceof SQLStorage))) {
+            throw new NoSuchMethodException(type.getName() + ".<init>(Database)");
+        }
+        try {
+            Object instance = constructor.invokeExact(storage);
+            return (T) instance;
+        } catch (ReflectiveOperationException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new ReflectiveOperationException("Failed to create " + type.getName(), t);
+        }
+    }
+
+    private static MethodHandle findConstructor(Class<?> type, Class<?> storageType) {
+        try {
+            Constructor<?> constructor = type.getConstructor(storageType);
+            return MethodHandles.lookup().unreflectConstructor(constructor).asType(CONSTRUCTOR_TYPE);
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+
+}
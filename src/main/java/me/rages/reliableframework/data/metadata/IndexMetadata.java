@@ -0,0 +1,36 @@
+package me.rages.reliableframework.data.metadata;
+
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Describes a secondary index declared with {@link me.rages.reliableframework.data.annotations.Indexed}
+ * or {@link me.rages.reliableframework.data.annotations.Index}.
+ */
+@Getter
+public final class IndexMetadata {
+
+    /**
+     * The index name in the database.
+     */
+    private final String name;
+
+    /**
+     * The indexed column names in index order.
+     */
+    private final List<String> columns;
+
+    /**
+     * Whether the index enforces unique values.
+     */
+    private final boolean unique;
+
+    IndexMetadata(String tableName, String name, List<String> columns, boolean unique) {
+        this.name = name.isEmpty() ? "idx_" + tableName + "_" + String.join("_", columns) : name;
+        this.columns = Collections.unmodifiableList(columns);
+        this.unique = unique;
+    }
+
+}
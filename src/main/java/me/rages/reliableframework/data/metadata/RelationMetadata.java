@@ -0,0 +1,159 @@
+package me.rages.reliableframework.data.metadata;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import me.rages.reliableframework.data.DataObject;
+import me.rages.reliableframework.data.LazyList;
+import me.rages.reliableframework.data.LazyReference;
+import me.rages.reliableframework.data.annotations.ManyToOne;
+import me.rages.reliableframework.data.annotations.OneToMany;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Describes a {@link ManyToOne} or {@link OneToMany} annotated field of a data object.
+ * <p>
+ * A many-to-one field holds either the related data object, which is only set by an eager
+ * fetch, or a {@link LazyReference} to it. A one-to-many field is a {@link List},
+ * {@link Collection} or {@link LazyList} of the related data objects and is always filled
+ * with a {@link LazyList}.
+ */
+@Getter
+public final class RelationMetadata {
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    /**
+     * The kind of relationship.
+     */
+    public enum Kind {
+        MANY_TO_ONE,
+        ONE_TO_MANY
+    }
+
+    /**
+     * The name of the field, used to name the relationship in fetch plans.
+     */
+    private final String name;
+
+    private final Kind kind;
+
+    /**
+     * The class of the related data objects.
+     */
+    private final Class<? extends DataObject> target;
+
+    /**
+     * The foreign key column: for a many-to-one the column of this table holding the id of
+     * the related object, for a one-to-many the column or many-to-one field of the related
+     * table holding the id of this object.
+     */
+    private final String column;
+
+    /**
+     * Whether a many-to-one field is a {@link LazyReference} rather than the related object itself.
+     */
+    private final boolean reference;
+
+    @Getter(AccessLevel.NONE)
+    private final MethodHandle getter;
+
+    @Getter(AccessLevel.NONE)
+    private final MethodHandle setter;
+
+    RelationMetadata(Field field) throws IllegalAccessException {
+        ManyToOne manyToOne = field.getAnnotation(ManyToOne.class);
+        this.name = field.getName();
+        if (Modifier.isFinal(field.getModifiers())) {
+            throw new IllegalArgumentException("Relationship field " + describe(field) + " must not be final");
+        }
+        if (manyToOne != null) {
+            this.kind = Kind.MANY_TO_ONE;
+            this.reference = field.getType() == LazyReference.class;
+            this.target = reference ? typeArgument(field) : dataObjectType(field, field.getType());
+            this.column = manyToOne.joinColumn().isEmpty() ? field.getName() + "_id" : manyToOne.joinColumn();
+        } else {
+            OneToMany oneToMany = field.getAnnotation(OneToMany.class);
+            if (!field.getType().isAssignableFrom(LazyList.class)) {
+                throw new IllegalArgumentException("OneToMany field " + describe(field) + " must be a List, Collection or LazyList");
+            }
+            if (oneToMany.mappedBy().isEmpty()) {
+                throw new IllegalArgumentException("OneToMany field " + describe(field) + " needs mappedBy");
+            }
+            this.kind = Kind.ONE_TO_MANY;
+            this.reference = false;
+            this.target = typeArgument(field);
+            this.column = oneToMany.mappedBy();
+        }
+
+        field.setAccessible(true);
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        this.getter = lookup.unreflectGetter(field).asType(GETTER_TYPE);
+        this.setter = lookup.unreflectSetter(field).asType(SETTER_TYPE);
+    }
+
+    /**
+     * Reads the value of this relationship from a data object.
+     *
+     * @param target the data object
+     * @return the field value
+     */
+    public Object get(Object target) {
+        try {
+            return getter.invokeExact(target);
+        } catch (Throwable t) {
+            throw new IllegalStateException("Failed to read relationship " + name + " from " + target.getClass().getName(), t);
+        }
+    }
+
+    /**
+     * Writes the value of this relationship to a data object.
+     *
+     * @param target the data object
+     * @param value  the related object, reference or list
+     */
+    public void set(Object target, Object value) {
+        try {
+            setter.invokeExact(target, value);
+        } catch (Throwable t) {
+            throw new IllegalStateException("Failed to write relationship " + name + " of " + target.getClass().getName(), t);
+        }
+    }
+
+    private static Class<? extends DataObject> typeArgument(Field field) {
+        Type type = field.getGenericType();
+        if (!(type instanceof ParameterizedType)) {
+            throw new IllegalArgumentException("Relationship field " + describe(field) + " needs a type argument");
+        }
+        Type argument = ((ParameterizedType) type).getActualTypeArguments()[0];
+        if (argument instanceof ParameterizedType) {
+            argument = ((ParameterizedType) argument).getRawType();
+        }
+        if (!(argument instanceof Class)) {
+            throw new IllegalArgumentException("Relationship field " + describe(field) + " needs a concrete type argument");
+        }
+        return dataObjectType(field, (Class<?>) argument);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Class<? extends DataObject> dataObjectType(Field field, Class<?> type) {
+        if (!DataObject.class.isAssignableFrom(type)) {
+            throw new IllegalArgumentException("Relationship field " + describe(field) + " does not refer to a DataObject");
+        }
+        return (Class<? extends DataObject>) type;
+    }
+
+    private static String describe(Field field) {
+        return field.getDeclaringClass().getName() + "." + field.getName();
+    }
+
+}
@@ -0,0 +1,352 @@
+package me.rages.reliableframework.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates an {@code <Entity>_Mapper} for every {@code @Table} class.
+ * <p>
+ * The mapper holds the table name and columns and reads and writes the {@code @Column} fields
+ * through the class's getters and setters, or directly if a field is not private, and
+ * creates instances through its {@code (Database)} or {@code (SQLStorage)} constructor. Accessors generated by
+ * Lombok's {@code @Getter}, {@code @Setter} and {@code @Data} are recognised. Classes whose
+ * fields cannot be reached are skipped with a warning and keep being mapped reflectively.
+ */
+@SupportedAnnotationTypes(MapperProcessor.TABLE)
+public class MapperProcessor extends AbstractProcessor {
+
+    static final String TABLE = "me.rages.reliableframework.data.annotations.Table";
+    private static final String COLUMN = "me.rages.reliableframework.data.annotations.Column";
+    private static final String DATA_OBJECT = "me.rages.reliableframework.data.DataObject";
+    private static final String DATABASE = "me.rages.reliableframework.storage.Database";
+    private static final String STORAGE = "me.rages.reliableframework.storage.SQLStorage";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() == ElementKind.CLASS) {
+                    generate((TypeElement) element);
+                }
+            }
+        }
+        return false;
+    }
+
+    private void generate(TypeElement type) {
+        if (type.getModifiers().contains(Modifier.ABSTRACT)
+                || (type.getNestingKind() == NestingKind.MEMBER && !type.getModifiers().contains(Modifier.STATIC))
+                || (type.getNestingKind() != NestingKind.TOP_LEVEL && type.getNestingKind() != NestingKind.MEMBER)) {
+            skip(type, "it cannot be instantiated from its package");
+            return;
+        }
+        TypeElement dataObject = processingEnv.getElementUtils().getTypeElement(DATA_OBJECT);
+        if (dataObject == null || !processingEnv.getTypeUtils().isAssignable(type.asType(), dataObject.asType())) {
+            skip(type, "it does not implement DataObject");
+            return;
+        }
+        String storageType = storageConstructor(type);
+        if (storageType == null) {
+            skip(type, "it has no accessible (Database) or (SQLStorage) constructor");
+            return;
+        }
+
+        List<MappedColumn> columns = new ArrayList<>();
+        for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            AnnotationMirror column = findAnnotation(field, COLUMN);
+            if (column == null) {
+                continue;
+            }
+            MappedColumn mapped = new MappedColumn(field, String.valueOf(annotationValue(column, "name")));
+            if (!resolveAccessors(type, field, mapped)) {
+                skip(type, "field " + field.getSimpleName() + " has no accessible getter and setter");
+                return;
+            }
+            columns.add(mapped);
+        }
+
+        String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        String mapperName = flatName(type) + "_Mapper";
+        String qualifiedName = packageName.isEmpty() ? mapperName : packageName + "." + mapperName;
+        String table = String.valueOf(annotationValue(findAnnotation(type, TABLE), "name"));
+        try (Writer writer = processingEnv.getFiler().createSourceFile(qualifiedName, type).openWriter()) {
+            writer.write(source(packageName, mapperName, type.getQualifiedName().toString(), storageType, table, columns));
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Failed to write " + qualifiedName + ": " + e, type);
+        }
+    }
+
+    private String source(String packageName, String mapperName, String entity, String storageType, String table,
+                          List<MappedColumn> columns) {
+        List<String> names = new ArrayList<>();
+        for (MappedColumn column : columns) {
+            names.add(column.name);
+        }
+
+        StringBuilder out = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            out.append("package ").append(packageName).append(";\n\n");
+        }
+        out.append("import me.rages.reliableframework.storage.Database;\n");
+        out.append("import me.rages.reliableframework.storage.codec.TypeCodec;\n");
+        out.append("import me.rages.reliableframework.storage.codec.TypeCodecRegistry;\n");
+        out.append("import me.rages.reliableframework.storage.sql.EntityMapper;\n\n");
+        out.append("import java.sql.PreparedStatement;\n");
+        out.append("import java.sql.ResultSet;\n");
+        out.append("import java.sql.SQLException;\n");
+        out.append("import java.util.Arrays;\n");
+        out.append("import java.util.Collections;\n");
+        out.append("import java.util.List;\n\n");
+        out.append("@javax.annotation.processing.Generated(\"").append(getClass().getName()).append("\")\n");
+        out.append("@SuppressWarnings({\"unchecked\", \"rawtypes\"})\n");
+        out.append("public final class ").append(mapperName).append(" implements EntityMapper<").append(entity).append("> {\n\n");
+        out.append("    public static final String TABLE = ").append(literal(table)).append(";\n");
+        out.append("    public static final List<String> COLUMNS = Collections.unmodifiableList(Arrays.asList(");
+        for (int i = 0; i < names.size(); i++) {
+            out.append(i > 0 ? ", " : "").append(literal(names.get(i)));
+        }
+        out.append("));\n\n");
+
+        for (int i = 0; i < columns.size(); i++) {
+            out.append("    private final TypeCodec<").append(columns.get(i).codecType).append("> codec").append(i).append(";\n");
+        }
+        out.append("\n    public ").append(mapperName).append("(TypeCodecRegistry codecs) {\n");
+        for (int i = 0; i < columns.size(); i++) {
+            out.append("        this.codec").append(i).append(" = codecs.resolve(").append(columns.get(i).codecType).append(".class);\n");
+        }
+        out.append("    }\n\n");
+
+        out.append("    @Override\n    public List<String> getColumns() {\n        return COLUMNS;\n    }\n\n");
+        out.append("    @Override\n    public ").append(entity).append(" create(Database storage) {\n");
+        out.append("        return new ").append(entity)
+                .append(storageType.equals(DATABASE) ? "(storage);\n" : "((" + STORAGE + ") storage);\n").append("    }\n\n");
+
+        out.append("    @Override\n    public Object get(").append(entity).append(" entity, int column) {\n");
+        out.append("        switch (column) {\n");
+        for (int i = 0; i < columns.size(); i++) {
+            out.append("            case ").append(i).append(":\n");
+            out.append("                return ").append(columns.get(i).getter).append(";\n");
+        }
+        out.append("            default:\n");
+        out.append("                throw new IndexOutOfBoundsException(\"No mapped column at \" + column);\n");
+        out.append("        }\n    }\n\n");
+
+        out.append("    @Override\n    public void read(ResultSet rs, int index, int column, ").append(entity)
+                .append(" entity) throws SQLException {\n");
+        out.append("        switch (column) {\n");
+        for (int i = 0; i < columns.size(); i++) {
+            MappedColumn column = columns.get(i);
+            out.append("            case ").append(i).append(": {\n");
+            if (column.setter == null) {
+                out.append("                throw new IllegalStateException(")
+                        .append(literal("Column " + column.name + " of " + entity + " is final")).append(");\n");
+            } else {
+                out.append("                ").append(column.codecType).append(" value = codec").append(i).append(".read(rs, index);\n");
+                if (column.primitive) {
+                    out.append("                if (value != null) {\n");
+                    out.append("                    ").append(column.setter).append(";\n");
+                    out.append("                }\n");
+                } else {
+                    out.append("                ").append(column.setter).append(";\n");
+                }
+                out.append("                return;\n");
+            }
+            out.append("            }\n");
+        }
+        out.append("            default:\n");
+        out.append("                throw new IndexOutOfBoundsException(\"No mapped column at \" + column);\n");
+        out.append("        }\n    }\n\n");
+
+        out.append("    @Override\n    public int bind(PreparedStatement ps, List<Object> values) throws SQLException {\n");
+        for (int i = 0; i < columns.size(); i++) {
+            out.append("        EntityMapper.bind(ps, ").append(i + 1).append(", codec").append(i).append(", (")
+                    .append(columns.get(i).codecType).append(") values.get(").append(i).append("));\n");
+        }
+        out.append("        return ").append(columns.size() + 1).append(";\n    }\n\n");
+        out.append("}\n");
+        return out.toString();
+    }
+
+    /**
+     * Works out how the mapper reads and writes a field: directly if it is not private,
+     * otherwise through a declared or Lombok generated getter and setter.
+     */
+    private boolean resolveAccessors(TypeElement type, VariableElement field, MappedColumn column) {
+        String name = field.getSimpleName().toString();
+        boolean isFinal = field.getModifiers().contains(Modifier.FINAL);
+        if (!field.getModifiers().contains(Modifier.PRIVATE)) {
+            column.getter = "entity." + name;
+            column.setter = isFinal ? null : "entity." + name + " = value";
+            return true;
+        }
+
+        boolean primitiveBoolean = field.asType().getKind() == TypeKind.BOOLEAN;
+        String property = primitiveBoolean && name.length() > 2 && name.startsWith("is") && Character.isUpperCase(name.charAt(2))
+                ? name.substring(2)
+                : capitalize(name);
+        String getter = (primitiveBoolean ? "is" : "get") + property;
+        String setter = "set" + property;
+
+        if (!hasMethod(type, getter, 0) && !hasLombok(type, field, "lombok.Getter")) {
+            return false;
+        }
+        column.getter = "entity." + getter + "()";
+        if (isFinal) {
+            column.setter = null;
+        } else if (hasMethod(type, setter, 1) || hasLombok(type, field, "lombok.Setter")) {
+            column.setter = "entity." + setter + "(value)";
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Finds the constructor instances are created through, preferring a {@code (Database)}
+     * one over a {@code (SQLStorage)} one.
+     *
+     * @return the qualified name of the constructor's parameter type, or null if there is none
+     */
+    private String storageConstructor(TypeElement type) {
+        String found = null;
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (constructor.getModifiers().contains(Modifier.PRIVATE) || constructor.getParameters().size() != 1) {
+                continue;
+            }
+            String parameter = processingEnv.getTypeUtils().erasure(constructor.getParameters().get(0).asType()).toString();
+            if (parameter.equals(DATABASE)) {
+                return DATABASE;
+            } else if (parameter.equals(STORAGE)) {
+                found = STORAGE;
+            }
+        }
+        return found;
+    }
+
+    private static boolean hasMethod(TypeElement type, String name, int parameters) {
+        for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+            if (method.getSimpleName().contentEquals(name) && method.getParameters().size() == parameters
+                    && !method.getModifiers().contains(Modifier.PRIVATE)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks for a Lombok accessor annotation on the field, or on the class, that is not
+     * limited to private or no access.
+     */
+    private static boolean hasLombok(TypeElement type, VariableElement field, String annotation) {
+        AnnotationMirror onField = findAnnotation(field, annotation);
+        if (onField != null) {
+            return isAccessible(onField);
+        }
+        AnnotationMirror onType = findAnnotation(type, annotation);
+        if (onType != null) {
+            return isAccessible(onType);
+        }
+        return findAnnotation(type, "lombok.Data") != null;
+    }
+
+    private static boolean isAccessible(AnnotationMirror accessor) {
+        Object level = annotationValue(accessor, "value");
+        return level == null || !(level.toString().endsWith("NONE") || level.toString().endsWith("PRIVATE"));
+    }
+
+    private static AnnotationMirror findAnnotation(Element element, String name) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(name)) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    private static Object annotationValue(AnnotationMirror mirror, String name) {
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : mirror.getElementValues().entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals(name)) {
+                return entry.getValue().getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the simple names from the outermost class down, joined by underscores, matching
+     * the binary name with {@code $} replaced that the storage looks the mapper up by.
+     */
+    private static String flatName(TypeElement type) {
+        String name = type.getSimpleName().toString();
+        Element enclosing = type.getEnclosingElement();
+        while (enclosing instanceof TypeElement) {
+            name = enclosing.getSimpleName() + "_" + name;
+            enclosing = enclosing.getEnclosingElement();
+        }
+        return name;
+    }
+
+    private static String capitalize(String name) {
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private static String literal(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    private void skip(TypeElement type, String reason) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                "Not generating a mapper for " + type.getQualifiedName() + " because " + reason
+                        + ", it will be mapped reflectively", type);
+    }
+
+    /**
+     * A {@code @Column} field and the expressions reading and writing it.
+     */
+    private final class MappedColumn {
+
+        private final String name;
+        private final String codecType;
+        private final boolean primitive;
+        private String getter;
+        private String setter;
+
+        private MappedColumn(VariableElement field, String name) {
+            TypeMirror type = field.asType();
+            this.name = name;
+            this.primitive = type.getKind().isPrimitive();
+            this.codecType = primitive
+                    ? processingEnv.getTypeUtils().boxedClass((PrimitiveType) type).getQualifiedName().toString()
+                    : processingEnv.getTypeUtils().erasure(type).toString();
+        }
+
+    }
+
+}
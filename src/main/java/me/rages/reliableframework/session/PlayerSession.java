@@ -0,0 +1,69 @@
+package me.rages.reliableframework.session;
+
+import lombok.Getter;
+import me.rages.reliableframework.data.DataObject;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The data objects loaded for a single player, from pre-login until they are evicted after quitting.
+ */
+public class PlayerSession {
+
+    @Getter
+    private final UUID uniqueId;
+    private final Map<Class<? extends DataObject>, DataObject> dataObjects = new ConcurrentHashMap<>();
+
+    /**
+     * The save started when the player quit, eviction waits for it to commit.
+     */
+    volatile CompletableFuture<?> flush = CompletableFuture.completedFuture(null);
+
+    /**
+     * The pending eviction while the player is offline, null while they are online.
+     */
+    volatile BukkitTask eviction;
+
+    PlayerSession(UUID uniqueId) {
+        this.uniqueId = uniqueId;
+    }
+
+    /**
+     * Gets the loaded data object of a registered type.
+     *
+     * @param type the class of the data object
+     * @param <T>  the type of the data object
+     * @return the data object, or null if the type is not registered
+     */
+    public <T extends DataObject> T get(Class<T> type) {
+        return type.cast(dataObjects.get(type));
+    }
+
+    /**
+     * Gets every data object loaded for the player.
+     *
+     * @return the data objects
+     */
+    public Collection<DataObject> getDataObjects() {
+        return dataObjects.values();
+    }
+
+    /**
+     * Checks whether the player is offline and the session is waiting to be evicted.
+     *
+     * @return true if an eviction is pending
+     */
+    public boolean isPendingEviction() {
+        return eviction != null;
+    }
+
+    void put(Class<? extends DataObject> type, DataObject dataObject) {
+        dataObjects.put(type, dataObject);
+    }
+
+}
@@ -0,0 +1,326 @@
+package me.rages.reliableframework.session;
+
+import me.rages.reliableframework.data.DataObject;
+import me.rages.reliableframework.data.Entity;
+import me.rages.reliableframework.storage.Database;
+import me.rages.reliableframework.storage.cache.EntityCache;
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerLoginEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.BiFunction;
+import java.util.logging.Level;
+
+/**
+ * Loads the registered data objects of a player before they join and keeps them until
+ * shortly after they quit.
+ * <p>
+ * Loading starts on {@link AsyncPlayerPreLoginEvent}, which runs off the main thread, and the
+ * login waits for it, so every registered object is ready by the time the player joins.
+ * Objects created for a new player are saved before the login goes on. On quit the objects
+ * are saved and evicted after a grace period; a player reconnecting within it gets the same
+ * objects back without touching the database.
+ */
+public class PlayerSessionManager implements Listener {
+
+    private final JavaPlugin plugin;
+    private final Database storage;
+    private final long gracePeriod;
+    private final long prefetchTimeout;
+    private final Map<Class<? extends DataObject>, Registration<?>> registrations = new LinkedHashMap<>();
+    private final Map<UUID, PlayerSession> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a new PlayerSessionManager instance.
+     *
+     * @param plugin  the JavaPlugin instance
+     * @param storage the storage player data is loaded from
+     */
+    private PlayerSessionManager(JavaPlugin plugin, Database storage) {
+        this.plugin = plugin;
+        this.storage = storage;
+        ConfigurationSection section = plugin.getConfig().getConfigurationSection("storage.session");
+        this.gracePeriod = section != null ? section.getLong("grace-period", 30_000L) : 30_000L;
+        this.prefetchTimeout = section != null ? section.getLong("prefetch-timeout", 10_000L) : 10_000L;
+    }
+
+    /**
+     * Creates a new instance of PlayerSessionManager. The manager still has to be registered
+     * as a listener.
+     *
+     * @param plugin  the JavaPlugin instance
+     * @param storage the storage player data is loaded from
+     * @return a new instance of PlayerSessionManager
+     */
+    public static PlayerSessionManager createSessionManager(JavaPlugin plugin, Database storage) {
+        return new PlayerSessionManager(plugin, storage);
+    }
+
+    /**
+     * Registers a data object type to load for every player.
+     *
+     * @param type       the class of the data object
+     * @param uuidColumn the column holding the player's unique id
+     * @param creator    creates the data object from the player's unique id and name if none is stored yet
+     * @param <T>        the type of the data object
+     * @return this PlayerSessionManager instance
+     */
+    public <T extends DataObject> PlayerSessionManager register(Class<T> type, String uuidColumn,
+                                                                BiFunction<UUID, String, T> creator) {
+        registrations.put(type, new Registration<>(type, uuidColumn, creator));
+        return this;
+    }
+
+    /**
+     * Gets the session of a player.
+     *
+     * @param uniqueId the player's unique id
+     * @return the session, or null if the player has none
+     */
+    public PlayerSession getSession(UUID uniqueId) {
+        return sessions.get(uniqueId);
+    }
+
+    /**
+     * Gets a loaded data object of a player.
+     *
+     * @param player the player
+     * @param type   the class of the data object
+     * @param <T>    the type of the data object
+     * @return the data object, or null if the player has no session or the type is not registered
+     */
+    public <T extends DataObject> T get(Player player, Class<T> type) {
+        PlayerSession session = sessions.get(player.getUniqueId());
+        return session != null ? session.get(type) : null;
+    }
+
+    /**
+     * Loads the registered data objects of a player before they join, denying the login
+     * if they cannot be loaded in time.
+     *
+     * @param event the pre-login event
+     */
+    @EventHandler(priority = EventPriority.HIGHEST)
+    public void onPreLogin(AsyncPlayerPreLoginEvent event) {
+        if (event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            return;
+        }
+        UUID uniqueId = event.getUniqueId();
+        PlayerSession existing = sessions.get(uniqueId);
+        if (existing != null && resume(existing)) {
+            return;
+        }
+
+        PlayerSession session = new PlayerSession(uniqueId);
+        List<CompletableFuture<?>> loads = new ArrayList<>(registrations.size());
+        for (Registration<?> registration : registrations.values()) {
+            loads.add(registration.load(session, event.getName()));
+        }
+        try {
+            CompletableFuture.allOf(loads.toArray(new CompletableFuture<?>[0]))
+                    .get(prefetchTimeout, TimeUnit.MILLISECONDS);
+            sessions.put(uniqueId, session);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            discard(session, loads);
+            event.disallow(AsyncPlayerPreLoginEvent.Result.KICK_OTHER, "Your data could not be loaded, please try again.");
+        } catch (ExecutionException | TimeoutException e) {
+            plugin.getLogger().log(Level.SEVERE, "Failed to load data of " + event.getName(), e);
+            discard(session, loads);
+            event.disallow(AsyncPlayerPreLoginEvent.Result.KICK_OTHER, "Your data could not be loaded, please try again.");
+        }
+    }
+
+    /**
+     * Evicts the data objects of a session whose login was given up on once its loads have
+     * finished, so objects still loading after a timeout are not left in the cache without a
+     * session. Objects a newer session of the player is using stay cached.
+     *
+     * @param session the session given up on
+     * @param loads   the loads of the session
+     */
+    private void discard(PlayerSession session, List<CompletableFuture<?>> loads) {
+        CompletableFuture.allOf(loads.toArray(new CompletableFuture<?>[0])).whenComplete((result, ex) -> {
+            EntityCache cache = storage.getCache();
+            if (cache == null) {
+                return;
+            }
+            PlayerSession current = sessions.get(session.getUniqueId());
+            for (DataObject dataObject : session.getDataObjects()) {
+                if (current == null || !current.getDataObjects().contains(dataObject)) {
+                    cache.invalidate(dataObject);
+                }
+            }
+        });
+    }
+
+    /**
+     * Drops the session of a player whose login was refused after their data was loaded,
+     * for example because the server is full or they are not whitelisted. They never join,
+     * so no quit event would evict it.
+     *
+     * @param event the login event
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onLogin(PlayerLoginEvent event) {
+        if (event.getResult() == PlayerLoginEvent.Result.ALLOWED) {
+            return;
+        }
+        PlayerSession session = sessions.get(event.getPlayer().getUniqueId());
+        if (session == null) {
+            return;
+        }
+        synchronized (session) {
+            if (session.eviction != null) {
+                session.eviction.cancel();
+                session.eviction = null;
+            }
+            if (!sessions.remove(session.getUniqueId(), session)) {
+                return;
+            }
+        }
+        invalidate(session);
+    }
+
+    /**
+     * Saves the data objects of a player who quit and schedules their eviction.
+     *
+     * @param event the quit event
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent event) {
+        PlayerSession session = sessions.get(event.getPlayer().getUniqueId());
+        if (session == null) {
+            return;
+        }
+        synchronized (session) {
+            CompletableFuture<?> flush = storage.saveAll(new ArrayList<>(session.getDataObjects()))
+                    .exceptionally(ex -> {
+                        plugin.getLogger().log(Level.SEVERE, "Failed to save data of " + event.getPlayer().getName(), ex);
+                        return null;
+                    });
+            session.flush = flush;
+            if (session.eviction != null) {
+                session.eviction.cancel();
+            }
+            session.eviction = Bukkit.getScheduler().runTaskLater(
+                    plugin, () -> flush.whenComplete((result, ex) -> evict(session, flush)), Math.max(1L, gracePeriod / 50L)
+            );
+        }
+    }
+
+    /**
+     * Saves every session and drops them, waiting for the saves to commit. Call before
+     * disconnecting the storage.
+     */
+    public void close() {
+        List<DataObject> dataObjects = new ArrayList<>();
+        for (PlayerSession session : sessions.values()) {
+            synchronized (session) {
+                if (session.eviction != null) {
+                    session.eviction.cancel();
+                    session.eviction = null;
+                }
+            }
+            dataObjects.addAll(session.getDataObjects());
+        }
+        sessions.clear();
+        if (dataObjects.isEmpty()) {
+            return;
+        }
+        try {
+            storage.saveAll(dataObjects).join();
+        } catch (CompletionException e) {
+            plugin.getLogger().log(Level.SEVERE, "Failed to save player sessions", e);
+        }
+    }
+
+    /**
+     * Cancels the pending eviction of a reconnecting player's session.
+     *
+     * @param session the session
+     * @return true if the session is still live and can be reused
+     */
+    private boolean resume(PlayerSession session) {
+        synchronized (session) {
+            if (session.eviction != null) {
+                session.eviction.cancel();
+                session.eviction = null;
+            }
+            return sessions.get(session.getUniqueId()) == session;
+        }
+    }
+
+    /**
+     * Drops a session once its grace period passed and its save committed, unless the player
+     * reconnected or quit again in the meantime.
+     *
+     * @param session the session
+     * @param flush   the save the eviction was scheduled for
+     */
+    private void evict(PlayerSession session, CompletableFuture<?> flush) {
+        synchronized (session) {
+            if (session.eviction == null || session.flush != flush) {
+                return;
+            }
+            session.eviction = null;
+            sessions.remove(session.getUniqueId(), session);
+        }
+        invalidate(session);
+    }
+
+    /**
+     * Removes the data objects of a dropped session from the storage's cache.
+     *
+     * @param session the session
+     */
+    private void invalidate(PlayerSession session) {
+        EntityCache cache = storage.getCache();
+        if (cache != null) {
+            session.getDataObjects().forEach(cache::invalidate);
+        }
+    }
+
+    /**
+     * A registered data object type and how to load or create it for a player.
+     */
+    private final class Registration<T extends DataObject> {
+
+        private final Class<T> type;
+        private final String uuidColumn;
+        private final BiFunction<UUID, String, T> creator;
+
+        private Registration(Class<T> type, String uuidColumn, BiFunction<UUID, String, T> creator) {
+            this.type = type;
+            this.uuidColumn = uuidColumn;
+            this.creator = creator;
+        }
+
+        /**
+         * Loads the data object of a player into a session, creating and saving it if none
+         * is stored yet.
+         */
+        private CompletableFuture<Void> load(PlayerSession session, String name) {
+            return storage.load(Entity.of(uuidColumn, session.getUniqueId()), type).thenCompose(dataObject -> {
+                if (dataObject != null) {
+                    session.put(type, dataObject);
+                    return CompletableFuture.completedFuture(null);
+                }
+                T created = creator.apply(session.getUniqueId(), name);
+                session.put(type, created);
+                return storage.save(created).thenApply(saved -> null);
+            });
+        }
+
+    }
+
+}
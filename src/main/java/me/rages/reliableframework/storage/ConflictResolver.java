@@ -0,0 +1,24 @@
+package me.rages.reliableframework.storage;
+
+import me.rages.reliableframework.data.DataObject;
+
+/**
+ * Resolves an optimistic lock conflict of {@link Database#save(DataObject, ConflictResolver, int)}
+ * by merging the unsaved changes with the row as it is stored now.
+ *
+ * @param <T> the type of the data object
+ */
+@FunctionalInterface
+public interface ConflictResolver<T extends DataObject> {
+
+    /**
+     * Merges a conflicting save.
+     *
+     * @param mine    the data object whose save conflicted, holding its unsaved changes
+     * @param current the stored row loaded again, or null if it was deleted
+     * @return the data object to save next, typically {@code current} with the changes of
+     * {@code mine} applied, or null to give up and fail the save with the conflict
+     */
+    T resolve(T mine, T current);
+
+}
@@ -2,28 +2,41 @@ package me.rages.reliableframework.storage;
 
 import me.rages.reliableframework.data.DataObject;
 import me.rages.reliableframework.data.Entity;
+import me.rages.reliableframework.data.metadata.ColumnMetadata;
+import me.rages.reliableframework.data.metadata.EntityMetadata;
+import me.rages.reliableframework.storage.cache.EntityCache;
+import me.rages.reliableframework.storage.executor.StorageExecutor;
+import me.rages.reliableframework.storage.query.Condition;
+import me.rages.reliableframework.storage.query.Query;
 
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * Interface for database operations in a Minecraft plugin.
  * This interface defines the standard methods for connecting,
  * disconnecting, and performing CRUD operations on the database.
+ * <p>
+ * Implementations that do not run SQL throw {@link java.sql.SQLFeatureNotSupportedException}
+ * from the methods taking raw SQL or handing out connections.
  */
 public interface Database {
 
     /**
      * Connects to the database.
      *
-     * @return the SQLStorage instance
+     * @return this database
      * @throws SQLException if a database access error occurs
      */
-    SQLStorage connect() throws SQLException;
+    Database connect() throws SQLException;
 
     /**
      * Disconnects from the database.
@@ -33,7 +46,8 @@ public interface Database {
     void disconnect() throws SQLException;
 
     /**
-     * Gets the current database connection.
+     * Borrows a database connection from the connection pool.
+     * The connection must be closed to return it to the pool.
      *
      * @return the database connection
      * @throws SQLException if a database access error occurs
@@ -58,8 +72,18 @@ public interface Database {
      */
     void insert(String tableName, DataObject dataObject) throws SQLException;
 
+    /**
+     * Inserts several data objects into a table in batches, writing generated ids back to each object.
+     *
+     * @param tableName   the name of the table
+     * @param dataObjects the data objects to insert
+     * @throws SQLException if a database access error occurs
+     */
+    void insertAll(String tableName, Collection<? extends DataObject> dataObjects) throws SQLException;
+
     /**
      * Executes a query on the database.
+     * The result set must be closed to release its pooled connection.
      *
      * @param query  the query string
      * @param params the query parameters
@@ -89,6 +113,25 @@ public interface Database {
      */
     CompletableFuture<Void> delete(String tableName, String whereClause, Object... whereParams);
 
+    /**
+     * Updates the rows of a data object class matching all given conditions asynchronously.
+     *
+     * @param clazz      the class of the data objects
+     * @param data       the values to set by column
+     * @param conditions the conditions, joined with AND; none updates every row
+     * @return a CompletableFuture of the number of updated rows
+     */
+    CompletableFuture<Integer> update(Class<? extends DataObject> clazz, Map<String, Object> data, Condition... conditions);
+
+    /**
+     * Deletes the rows of a data object class matching all given conditions asynchronously.
+     *
+     * @param clazz      the class of the data objects
+     * @param conditions the conditions, joined with AND; none deletes every row
+     * @return a CompletableFuture of the number of deleted rows
+     */
+    CompletableFuture<Integer> delete(Class<? extends DataObject> clazz, Condition... conditions);
+
     /**
      * Creates a table with the specified columns.
      *
@@ -108,6 +151,16 @@ public interface Database {
      */
     boolean columnExists(String tableName, String columnName) throws SQLException;
 
+    /**
+     * Ensures a column exists in a table before a value is first stored in it.
+     *
+     * @param tableName  the name of the table
+     * @param columnName the name of the column
+     * @param value      the sample value to determine the column type
+     * @throws SQLException if a database access error occurs
+     */
+    void ensureColumnExists(String tableName, String columnName, Object value) throws SQLException;
+
     /**
      * Loads a data object from the database asynchronously.
      *
@@ -130,14 +183,153 @@ public interface Database {
      */
     <T extends DataObject> CompletableFuture<List<T>> loadAll(Class<T> clazz);
 
+    /**
+     * Reads a page of data objects in id order asynchronously, starting after the given id.
+     *
+     * @param clazz   the class of the data objects
+     * @param afterId the id to read after, or null to start at the first row
+     * @param limit   the maximum number of data objects on the page
+     * @param <T>     the type of the data objects
+     * @return a CompletableFuture of the page, whose cursor reads the following page
+     */
+    <T extends DataObject> CompletableFuture<PageCursor<T>> page(Class<T> clazz, Object afterId, int limit);
+
+    /**
+     * Streams all data objects of a class from the database asynchronously, one row at a time.
+     *
+     * @param clazz    the class of the data objects
+     * @param consumer the consumer receiving each data object on a storage thread
+     * @param <T>      the type of the data objects
+     * @return a CompletableFuture of the number of data objects streamed
+     */
+    <T extends DataObject> CompletableFuture<Long> stream(Class<T> clazz, Consumer<? super T> consumer);
+
+    /**
+     * Starts a query over the table of a data object class.
+     *
+     * @param clazz the class of the data objects
+     * @param <T>   the type of the data objects
+     * @return the query, run with {@link Query#list()}, {@link Query#first()} or {@link Query#count()}
+     */
+    default <T extends DataObject> Query<T> select(Class<T> clazz) {
+        return new Query<>(this, clazz);
+    }
+
+    /**
+     * Eagerly resolves relationships of a list of data objects of one class, with one query
+     * per relationship for the whole list rather than one per data object.
+     *
+     * @param dataObjects the data objects
+     * @param relations   the names of the {@link me.rages.reliableframework.data.annotations.ManyToOne}
+     *                    and {@link me.rages.reliableframework.data.annotations.OneToMany} fields to resolve
+     * @param <T>         the type of the data objects
+     * @return a CompletableFuture of the same list, completing once the relationships are set
+     */
+    default <T extends DataObject> CompletableFuture<List<T>> fetch(List<T> dataObjects, String... relations) {
+        return RelationFetcher.fetch(this, dataObjects, relations);
+    }
+
+    /**
+     * Runs a query asynchronously.
+     *
+     * @param query the query
+     * @param <T>   the type of the data objects
+     * @return a CompletableFuture of the matching data objects
+     */
+    <T extends DataObject> CompletableFuture<List<T>> find(Query<T> query);
+
+    /**
+     * Counts the rows matching the conditions of a query asynchronously.
+     *
+     * @param query the query
+     * @return a CompletableFuture of the number of matching rows
+     */
+    CompletableFuture<Long> count(Query<?> query);
+
+    /**
+     * Runs work in a transaction with the default isolation level.
+     *
+     * @param work the work to run; it must not wait on other futures of this database
+     * @param <R>  the type of the result
+     * @return a CompletableFuture of the result, completing once the transaction is committed
+     * @see #transaction(Transaction.Isolation, TransactionWork)
+     */
+    <R> CompletableFuture<R> transaction(TransactionWork<R> work);
+
+    /**
+     * Runs work in a transaction asynchronously. Every operation of the work runs on one
+     * connection and is committed at once when it returns, or rolled back if it throws.
+     *
+     * @param isolation the isolation level
+     * @param work      the work to run; it must not wait on other futures of this database
+     * @param <R>       the type of the result
+     * @return a CompletableFuture of the result, completing once the transaction is committed
+     */
+    <R> CompletableFuture<R> transaction(Transaction.Isolation isolation, TransactionWork<R> work);
+
     /**
      * Saves a data object to the database asynchronously.
      *
      * @param dataObject the data object to save
      * @return a CompletableFuture representing the save operation
-     * @throws SQLException if a database access error occurs
      */
-    <T extends DataObject> CompletableFuture<T> save(T dataObject) throws SQLException;
+    <T extends DataObject> CompletableFuture<T> save(T dataObject);
+
+    /**
+     * Saves a data object with a {@link me.rages.reliableframework.data.annotations.Version}
+     * column, resolving optimistic lock conflicts. When the save fails with an
+     * {@link OptimisticLockException} the stored row is loaded again, bypassing the cache,
+     * and handed to the resolver with the conflicting object; the object it returns is
+     * saved in turn, until a save succeeds or the attempts run out.
+     *
+     * @param dataObject  the data object to save
+     * @param resolver    merges the unsaved changes into the stored row
+     * @param maxAttempts the maximum number of saves, including the first one
+     * @param <T>         the type of the data object
+     * @return a CompletableFuture of the saved data object, which is the one returned by the
+     * resolver after a conflict
+     */
+    default <T extends DataObject> CompletableFuture<T> save(T dataObject, ConflictResolver<T> resolver, int maxAttempts) {
+        return save(dataObject).handle((saved, error) -> {
+            if (error == null) {
+                return CompletableFuture.completedFuture(saved);
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            OptimisticLockException conflict = OptimisticLockException.find(cause);
+            if (conflict == null || maxAttempts <= 1) {
+                return CompletableFuture.<T>failedFuture(cause);
+            }
+            return reload(dataObject).thenCompose(current -> {
+                T merged = resolver.resolve(dataObject, current);
+                return merged != null
+                        ? save(merged, resolver, maxAttempts - 1)
+                        : CompletableFuture.<T>failedFuture(cause);
+            });
+        }).thenCompose(Function.identity());
+    }
+
+    /**
+     * Saves several data objects to the database asynchronously in batches.
+     *
+     * @param dataObjects the data objects to save
+     * @param <T>         the type of the data objects
+     * @return a CompletableFuture of the saved data objects
+     */
+    <T extends DataObject> CompletableFuture<List<T>> saveAll(Collection<T> dataObjects);
+
+    /**
+     * Gets the cache of loaded data objects.
+     *
+     * @return the entity cache, or null if caching is disabled
+     */
+    EntityCache getCache();
+
+    /**
+     * Gets the executor running this storage's asynchronous operations.
+     *
+     * @return the storage executor
+     */
+    StorageExecutor getExecutor();
 
     /**
      * Gets the table name for a data object class.
@@ -146,4 +338,19 @@ public interface Database {
      * @return the table name
      */
     String getTableName(Class<? extends DataObject> clazz);
-}
\ No newline at end of file
+
+    /**
+     * Loads the stored row of a data object again, dropping the data object from the cache
+     * so the row is read from the database.
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends DataObject> CompletableFuture<T> reload(T dataObject) {
+        EntityCache cache = getCache();
+        if (cache != null) {
+            cache.invalidate(dataObject);
+        }
+        ColumnMetadata idColumn = EntityMetadata.of(dataObject).getIdColumn();
+        return load(Entity.of(idColumn.getName(), idColumn.get(dataObject)), (Class<T>) dataObject.getClass());
+    }
+
+}
@@ -0,0 +1,1589 @@
+package me.rages.reliableframework.storage;
+
+import me.rages.reliableframework.data.ChangeTracker;
+import me.rages.reliableframework.data.DataObject;
+import me.rages.reliableframework.data.Entity;
+import me.rages.reliableframework.data.metadata.ColumnMetadata;
+import me.rages.reliableframework.data.metadata.EntityMetadata;
+import me.rages.reliableframework.data.metadata.IndexMetadata;
+import me.rages.reliableframework.storage.cache.EntityCache;
+import me.rages.reliableframework.storage.executor.StorageExecutor;
+import me.rages.reliableframework.storage.kv.Mutation;
+import me.rages.reliableframework.storage.kv.RecordCodec;
+import me.rages.reliableframework.storage.kv.Values;
+import me.rages.reliableframework.storage.query.Condition;
+import me.rages.reliableframework.storage.query.Query;
+import me.rages.reliableframework.storage.query.QueryShape;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Abstract class for storages that keep every row in memory as a binary record keyed by
+ * its id, instead of in SQL tables.
+ * <p>
+ * Each table maps the normalized id of a row to its record encoded with {@link RecordCodec},
+ * in id order, plus a hash index from the values of every indexed column to the ids holding
+ * them. Records have no fixed columns, so dynamic data values are stored with the row without
+ * any schema change. Conditions, ordering, limits and projections of a {@link Query} are
+ * evaluated in memory, looking rows up by id or through an index for equality and IN
+ * conditions and scanning the table otherwise.
+ * <p>
+ * Writes run one at a time under a write lock. Each save, batch, update, delete or
+ * transaction collects its changes as {@link Mutation}s and hands them to
+ * {@link #persist(List)} in one call before readers can see them; if that fails they are
+ * undone. Raw where clauses of updates and deletes are evaluated as {@link Condition}s when
+ * they are simple comparisons joined with AND. Raw queries and the methods handing out
+ * connections throw {@link SQLFeatureNotSupportedException}.
+ */
+public abstract class KeyValueStorage implements Database {
+
+    protected final JavaPlugin plugin;
+    protected StorageExecutor executor;
+    protected Class<? extends DataObject>[] dataObjectClasses;
+
+    /**
+     * Guards the tables. Writers hold the write lock while they change the tables and persist
+     * the changes, readers hold the read lock while they look rows up.
+     */
+    protected final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Whether the storage is open for reads and writes.
+     */
+    protected volatile boolean connected;
+
+    private final Map<String, RecordTable> tables = new ConcurrentHashMap<>();
+    private final EntityCache cache;
+
+    /**
+     * Constructs a KeyValueStorage instance.
+     *
+     * @param plugin            the JavaPlugin instance
+     * @param dataObjectClasses the data object classes managed by this storage
+     */
+    @SafeVarargs
+    public KeyValueStorage(JavaPlugin plugin, Class<? extends DataObject>... dataObjectClasses) {
+        this.plugin = plugin;
+        this.dataObjectClasses = dataObjectClasses;
+        this.executor = StorageExecutor.fromConfig(
+                plugin.getName() + "-Storage",
+                plugin.getConfig().getConfigurationSection("storage.executor")
+        );
+        this.cache = EntityCache.fromConfig(plugin.getConfig().getConfigurationSection("storage.cache"));
+    }
+
+    /**
+     * Connects to the storage, loading its records.
+     *
+     * @return the KeyValueStorage instance
+     * @throws SQLException if the records cannot be loaded
+     */
+    @Override
+    public abstract KeyValueStorage connect() throws SQLException;
+
+    /**
+     * Replaces the executor if a previous {@link #disconnect()} shut it down. Called by
+     * {@link #connect()} implementations once the records are loaded.
+     */
+    protected void startWorkers() {
+        if (executor.isShutdown()) {
+            executor = StorageExecutor.fromConfig(
+                    plugin.getName() + "-Storage",
+                    plugin.getConfig().getConfigurationSection("storage.executor")
+            );
+        }
+    }
+
+    /**
+     * Disconnects from the storage once queued storage work has finished.
+     *
+     * @throws SQLException if the records cannot be stored
+     */
+    @Override
+    public void disconnect() throws SQLException {
+        if (!executor.shutdown()) {
+            plugin.getLogger().warning("Timed out waiting for storage tasks to finish, pending tasks were dropped");
+        }
+        lock.writeLock().lock();
+        try {
+            if (connected) {
+                connected = false;
+                closeStorage();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Called by {@link #disconnect()} with the write lock held, once queued storage work has
+     * finished, to release the resources of the implementation.
+     *
+     * @throws SQLException if the records cannot be stored
+     */
+    protected abstract void closeStorage() throws SQLException;
+
+    /**
+     * Makes the changes of a write durable. Called with the write lock held, once per save,
+     * batch, update, delete or transaction, before its changes become visible to readers.
+     *
+     * @param mutations the changes in the order they were made
+     * @throws SQLException if the changes cannot be stored, the write is then undone
+     */
+    protected abstract void persist(List<Mutation> mutations) throws SQLException;
+
+    /**
+     * Applies a stored change to the tables without persisting it, for implementations
+     * loading their records on connect.
+     *
+     * @param mutation the change
+     */
+    protected void restore(Mutation mutation) {
+        RecordTable table = tables.computeIfAbsent(mutation.getTable(), RecordTable::new);
+        try {
+            if (mutation.getType() == Mutation.Type.PUT) {
+                table.put(mutation.getKey(), mutation.getRecord(), null);
+            } else {
+                table.remove(mutation.getKey());
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to index record " + mutation.getKey() + " of " + mutation.getTable(), e);
+        }
+    }
+
+    /**
+     * Builds the indexes of the tables of the managed data object classes. Called on connect
+     * once the records are loaded; tables of other classes are indexed on first use.
+     *
+     * @throws SQLException if a stored record cannot be read
+     */
+    protected void registerTables() throws SQLException {
+        for (Class<? extends DataObject> clazz : dataObjectClasses) {
+            table(EntityMetadata.of(clazz));
+        }
+    }
+
+    /**
+     * Gets every stored record as a {@link Mutation.Type#PUT}, for implementations rewriting
+     * their files.
+     *
+     * @return the live records
+     */
+    protected List<Mutation> snapshot() {
+        lock.readLock().lock();
+        try {
+            List<Mutation> records = new ArrayList<>();
+            for (RecordTable table : tables.values()) {
+                for (Map.Entry<Object, byte[]> row : table.rows.entrySet()) {
+                    records.add(Mutation.put(table.name, row.getKey(), row.getValue()));
+                }
+            }
+            return records;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the encoded size of the stored records.
+     *
+     * @return the size in bytes
+     */
+    public long getLiveBytes() {
+        lock.readLock().lock();
+        try {
+            long bytes = 0;
+            for (RecordTable table : tables.values()) {
+                bytes += table.bytes;
+            }
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Checks whether the storage is connected.
+     *
+     * @return true if connected
+     */
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * Gets the executor running this storage's asynchronous operations.
+     *
+     * @return the storage executor
+     */
+    @Override
+    public StorageExecutor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Gets the cache of loaded data objects used by {@link #load(Entity.EntityEntry, Class)}.
+     *
+     * @return the entity cache, or null if caching is disabled
+     */
+    @Override
+    public EntityCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Not supported, this storage does not run SQL.
+     *
+     * @throws SQLFeatureNotSupportedException always
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * Not supported, this storage does not run SQL. Use {@link #select(Class)} instead.
+     *
+     * @throws SQLFeatureNotSupportedException always
+     */
+    @Override
+    public ResultSet query(String query, Object... params) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * Does nothing, records have no fixed columns.
+     *
+     * @param tableName        the name of the table
+     * @param columnDefinition the column definition
+     */
+    @Override
+    public void addColumn(String tableName, String columnDefinition) {
+    }
+
+    /**
+     * Does nothing, tables are created by their first write.
+     *
+     * @param tableName the name of the table
+     * @param columns   a map of column names and their data types
+     */
+    @Override
+    public void createTable(String tableName, Map<String, String> columns) {
+    }
+
+    /**
+     * Records have no fixed columns, so every column exists.
+     *
+     * @param tableName  the name of the table
+     * @param columnName the name of the column
+     * @return true
+     */
+    @Override
+    public boolean columnExists(String tableName, String columnName) {
+        return true;
+    }
+
+    /**
+     * Does nothing, records have no fixed columns.
+     *
+     * @param tableName  the name of the table
+     * @param columnName the name of the column
+     * @param value      the sample value to determine the column type
+     */
+    @Override
+    public void ensureColumnExists(String tableName, String columnName, Object value) {
+    }
+
+    /**
+     * Inserts a data object, generating its id if it has none.
+     *
+     * @param tableName  the name of the table
+     * @param dataObject the data object to insert
+     * @throws SQLException if a row with the same id exists or the object cannot be encoded
+     */
+    @Override
+    public void insert(String tableName, DataObject dataObject) throws SQLException {
+        execute(transaction -> transaction.write(tableName, dataObject, true));
+    }
+
+    /**
+     * Inserts several data objects at once, generating the ids of those that have none.
+     *
+     * @param tableName   the name of the table
+     * @param dataObjects the data objects to insert
+     * @throws SQLException if a row with the same id exists or an object cannot be encoded,
+     *                      none of the objects are inserted then
+     */
+    @Override
+    public void insertAll(String tableName, Collection<? extends DataObject> dataObjects) throws SQLException {
+        execute(transaction -> {
+            for (DataObject dataObject : dataObjects) {
+                transaction.write(tableName, dataObject, true);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Updates the records of a table matching a where clause. The clause is not run as SQL,
+     * it must be simple comparisons with placeholders joined with AND, see
+     * {@link Condition#parse(String, Object...)}.
+     *
+     * @param tableName   the name of the table
+     * @param data        the data to update
+     * @param whereClause the where clause to specify which rows to update
+     * @param whereParams the parameters for the where clause
+     * @return a CompletableFuture completing once the records are updated, failed with
+     * {@link SQLFeatureNotSupportedException} if the where clause has another form
+     */
+    @Override
+    public CompletableFuture<Void> update(String tableName, Map<String, Object> data, String whereClause, Object... whereParams) {
+        List<Condition> conditions;
+        try {
+            conditions = Condition.parse(whereClause, whereParams);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(new SQLFeatureNotSupportedException(e.getMessage(), e));
+        }
+        if (data.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        QueryShape.columnsOf(data);
+        return write(transaction -> {
+            transaction.update(tableName, data, conditions);
+            return null;
+        });
+    }
+
+    /**
+     * Deletes the records of a table matching a where clause. The clause is not run as SQL,
+     * it must be simple comparisons with placeholders joined with AND, see
+     * {@link Condition#parse(String, Object...)}.
+     *
+     * @param tableName   the name of the table
+     * @param whereClause the where clause to specify which rows to delete
+     * @param whereParams the parameters for the where clause
+     * @return a CompletableFuture completing once the records are deleted, failed with
+     * {@link SQLFeatureNotSupportedException} if the where clause has another form
+     */
+    @Override
+    public CompletableFuture<Void> delete(String tableName, String whereClause, Object... whereParams) {
+        List<Condition> conditions;
+        try {
+            conditions = Condition.parse(whereClause, whereParams);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(new SQLFeatureNotSupportedException(e.getMessage(), e));
+        }
+        return write(transaction -> {
+            transaction.delete(tableName, conditions);
+            return null;
+        });
+    }
+
+    /**
+     * Updates the rows of a data object class matching all given conditions.
+     *
+     * @param clazz      the class of the data objects
+     * @param data       the values to set by column
+     * @param conditions the conditions, joined with AND
+     * @return a CompletableFuture of the number of updated rows
+     */
+    @Override
+    public CompletableFuture<Integer> update(Class<? extends DataObject> clazz, Map<String, Object> data, Condition... conditions) {
+        if (data.isEmpty()) {
+            return CompletableFuture.completedFuture(0);
+        }
+        QueryShape.columnsOf(data);
+        return write(transaction -> transaction.update(clazz, data, conditions));
+    }
+
+    /**
+     * Deletes the rows of a data object class matching all given conditions.
+     *
+     * @param clazz      the class of the data objects
+     * @param conditions the conditions, joined with AND
+     * @return a CompletableFuture of the number of deleted rows
+     */
+    @Override
+    public CompletableFuture<Integer> delete(Class<? extends DataObject> clazz, Condition... conditions) {
+        return write(transaction -> transaction.delete(clazz, conditions));
+    }
+
+    /**
+     * Loads a data object asynchronously, by id or through an index if the column has one.
+     *
+     * @param entry the identifier to query the data object
+     * @param clazz the class of the data object
+     * @param <T>   the type of the data object
+     * @return a CompletableFuture of the data object, or of null if no row matched
+     */
+    @Override
+    public <T extends DataObject> CompletableFuture<T> load(Entity.EntityEntry entry, Class<T> clazz) {
+        if (cache != null) {
+            T cached = cache.get(clazz, entry.getColumnName(), entry.getValue());
+            if (cached != null) {
+                return CompletableFuture.completedFuture(cached);
+            }
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            if (entry.getValue() == null) {
+                return null;
+            }
+            EntityMetadata<T> metadata = EntityMetadata.of(clazz);
+            List<Condition> where = Collections.singletonList(Condition.eq(entry.getColumnName(), entry.getValue()));
+            try {
+                List<T> found = read(table(metadata), metadata, where, Collections.emptyList(),
+                        Collections.emptyList(), 1, 0);
+                if (found.isEmpty()) {
+                    return null;
+                }
+                T dataObject = found.get(0);
+                return cache != null ? cache.putIfAbsent(dataObject, entry.getColumnName(), entry.getValue()) : dataObject;
+            } catch (SQLException | IOException | ReflectiveOperationException e) {
+                throw new RuntimeException("Failed to load data object from " + metadata.getTableName(), e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Loads all data objects of a class asynchronously, in id order.
+     *
+     * @param clazz the class of the data objects
+     * @param <T>   the type of the data objects
+     * @return a CompletableFuture of a list of data objects
+     */
+    @Override
+    public <T extends DataObject> CompletableFuture<List<T>> loadAll(Class<T> clazz) {
+        return CompletableFuture.supplyAsync(() -> {
+            EntityMetadata<T> metadata = EntityMetadata.of(clazz);
+            try {
+                return read(table(metadata), metadata, Collections.emptyList(), Collections.emptyList(),
+                        Collections.emptyList(), -1, 0);
+            } catch (SQLException | IOException | ReflectiveOperationException e) {
+                throw new RuntimeException("Failed to load data objects from " + metadata.getTableName(), e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Reads a page of data objects in id order asynchronously.
+     *
+     * @param clazz   the class of the data objects
+     * @param afterId the id to read after, or null to start at the first row
+     * @param limit   the maximum number of data objects on the page
+     * @param <T>     the type of the data objects
+     * @return a CompletableFuture of the page
+     */
+    @Override
+    public <T extends DataObject> CompletableFuture<PageCursor<T>> page(Class<T> clazz, Object afterId, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Page limit must be positive: " + limit);
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            EntityMetadata<T> metadata = EntityMetadata.of(clazz);
+            if (metadata.getIdColumn() == null) {
+                throw new IllegalStateException("No @Id field found in " + clazz.getName());
+            }
+            List<T> items = new ArrayList<>(limit);
+            boolean hasNext;
+            try {
+                RecordTable table = table(metadata);
+                List<byte[]> records = new ArrayList<>(limit + 1);
+                lock.readLock().lock();
+                try {
+                    Map<Object, byte[]> rows = afterId != null ? table.rows.tailMap(Values.key(afterId), false) : table.rows;
+                    for (byte[] record : rows.values()) {
+                        records.add(record);
+                        if (records.size() > limit) {
+                            break;
+                        }
+                    }
+                } finally {
+                    lock.readLock().unlock();
+                }
+                hasNext = records.size() > limit;
+                for (byte[] record : records.subList(0, Math.min(limit, records.size()))) {
+                    items.add(toObject(metadata, RecordCodec.decode(record), Collections.emptyList()));
+                }
+            } catch (SQLException | IOException | ReflectiveOperationException e) {
+                throw new RuntimeException("Failed to load page of data objects", e);
+            }
+            Object lastId = items.isEmpty() ? afterId : metadata.getIdColumn().get(items.get(items.size() - 1));
+            return new PageCursor<>(this, clazz, limit, items, lastId, hasNext);
+        }, executor);
+    }
+
+    /**
+     * Streams every data object of a class asynchronously, in id order. The records are
+     * taken at once and decoded one at a time as they are handed to the consumer.
+     *
+     * @param clazz    the class of the data objects
+     * @param consumer the consumer receiving each data object
+     * @param <T>      the type of the data objects
+     * @return a CompletableFuture of the number of data objects streamed
+     */
+    @Override
+    public <T extends DataObject> CompletableFuture<Long> stream(Class<T> clazz, Consumer<? super T> consumer) {
+        return CompletableFuture.supplyAsync(() -> {
+            EntityMetadata<T> metadata = EntityMetadata.of(clazz);
+            long count = 0;
+            try {
+                RecordTable table = table(metadata);
+                List<byte[]> records;
+                lock.readLock().lock();
+                try {
+                    records = new ArrayList<>(table.rows.values());
+                } finally {
+                    lock.readLock().unlock();
+                }
+                for (byte[] record : records) {
+                    consumer.accept(toObject(metadata, RecordCodec.decode(record), Collections.emptyList()));
+                    count++;
+                }
+            } catch (SQLException | IOException | ReflectiveOperationException e) {
+                throw new RuntimeException("Failed to stream data objects", e);
+            }
+            return count;
+        }, executor);
+    }
+
+    /**
+     * Runs a query asynchronously. Full rows resolve to the cached instance of the same id
+     * if there is one, projected rows are returned as they are.
+     *
+     * @param query the query
+     * @param <T>   the type of the data objects
+     * @return a CompletableFuture of the matching data objects
+     */
+    @Override
+    public <T extends DataObject> CompletableFuture<List<T>> find(Query<T> query) {
+        checkOffset(query);
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return find(query, cache != null && !query.isProjected());
+            } catch (SQLException | IOException | ReflectiveOperationException e) {
+                throw new RuntimeException("Failed to run query on " + getTableName(query.getType()), e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Runs a query on the calling thread.
+     *
+     * @param query     the query
+     * @param cacheRows whether rows resolve to and are added to the cache
+     * @param <T>       the type of the data objects
+     * @return the matching data objects
+     */
+    private <T extends DataObject> List<T> find(Query<T> query, boolean cacheRows)
+            throws SQLException, IOException, ReflectiveOperationException {
+        EntityMetadata<T> metadata = EntityMetadata.of(query.getType());
+        List<T> items = read(table(metadata), metadata, query.getConditions(), query.getColumns(),
+                query.getOrders(), query.getLimit(), query.getOffset());
+        ColumnMetadata idColumn = metadata.getIdColumn();
+        if (cacheRows && idColumn != null) {
+            items.replaceAll(dataObject -> cache.putIfAbsent(dataObject, idColumn.getName(), idColumn.get(dataObject)));
+        }
+        return items;
+    }
+
+    /**
+     * Counts the rows matching the conditions of a query asynchronously.
+     *
+     * @param query the query
+     * @return a CompletableFuture of the number of matching rows
+     */
+    @Override
+    public CompletableFuture<Long> count(Query<?> query) {
+        return CompletableFuture.supplyAsync(() -> {
+            EntityMetadata<?> metadata = EntityMetadata.of(query.getType());
+            try {
+                RecordTable table = table(metadata);
+                lock.readLock().lock();
+                try {
+                    long count = 0;
+                    for (Object key : candidates(table, metadata, query.getConditions())) {
+                        byte[] record = table.rows.get(key);
+                        if (record != null && matches(RecordCodec.decode(record), query.getConditions())) {
+                            count++;
+                        }
+                    }
+                    return count;
+                } finally {
+                    lock.readLock().unlock();
+                }
+            } catch (SQLException | IOException e) {
+                throw new RuntimeException("Failed to run query on " + metadata.getTableName(), e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Saves a data object asynchronously, generating its id if it has none. Only the changed
+     * columns of a tracked data object are written over the stored record.
+     *
+     * @param dataObject the data object to save
+     * @return a CompletableFuture representing the save operation
+     */
+    @Override
+    public <T extends DataObject> CompletableFuture<T> save(T dataObject) {
+        if (cache != null) {
+            cache.put(dataObject);
+        }
+        return write(transaction -> transaction.save(dataObject));
+    }
+
+    /**
+     * Saves several data objects asynchronously as one write. A data object with a
+     * {@code @Version} column whose record was changed by another writer is left out, the
+     * other objects are still saved and the future then fails with the
+     * {@link OptimisticLockException} of the first conflict.
+     *
+     * @param dataObjects the data objects to save
+     * @param <T>         the type of the data objects
+     * @return a CompletableFuture of the saved data objects
+     */
+    @Override
+    public <T extends DataObject> CompletableFuture<List<T>> saveAll(Collection<T> dataObjects) {
+        List<T> saved = new ArrayList<>(dataObjects);
+        if (cache != null) {
+            saved.forEach(cache::put);
+        }
+        return this.<OptimisticLockException>write(transaction -> {
+            OptimisticLockException first = null;
+            for (T dataObject : saved) {
+                OptimisticLockException conflict = transaction.trySave(dataObject);
+                if (first == null) {
+                    first = conflict;
+                }
+            }
+            return first;
+        }).thenApply(conflict -> {
+            if (conflict != null) {
+                throw new CompletionException(conflict);
+            }
+            return saved;
+        });
+    }
+
+    /**
+     * Runs work in a transaction.
+     *
+     * @param work the work to run
+     * @param <R>  the type of the result
+     * @return a CompletableFuture of the result, completing once the transaction is committed
+     * @see #transaction(Transaction.Isolation, TransactionWork)
+     */
+    @Override
+    public <R> CompletableFuture<R> transaction(TransactionWork<R> work) {
+        return write(work::run);
+    }
+
+    /**
+     * Runs work in a transaction. The work holds the write lock from start to end, so
+     * transactions are always serializable and the isolation level is ignored. Its changes
+     * are persisted at once when it returns and undone if it throws.
+     *
+     * @param isolation the isolation level, ignored
+     * @param work      the work to run
+     * @param <R>       the type of the result
+     * @return a CompletableFuture of the result, completing once the transaction is committed
+     */
+    @Override
+    public <R> CompletableFuture<R> transaction(Transaction.Isolation isolation, TransactionWork<R> work) {
+        return write(work::run);
+    }
+
+    /**
+     * Gets the table name for a data object class.
+     *
+     * @param clazz the class of the data object
+     * @return the table name
+     * @throws IllegalArgumentException if the class does not have a @Table annotation
+     */
+    @Override
+    public String getTableName(Class<? extends DataObject> clazz) {
+        return EntityMetadata.of(clazz).getTableName();
+    }
+
+    /**
+     * Runs write work asynchronously, see {@link #execute(Write)}.
+     */
+    private <R> CompletableFuture<R> write(Write<R> work) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return execute(work);
+            } catch (SQLException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Runs write work on the calling thread under the write lock, persisting its changes if
+     * it returns and undoing them if it or {@link #persist(List)} throws.
+     *
+     * @param work the work to run
+     * @param <R>  the type of the result
+     * @return the result of the work
+     * @throws SQLException if the work fails or its changes cannot be persisted
+     */
+    private <R> R execute(Write<R> work) throws SQLException {
+        KeyValueTransaction transaction = new KeyValueTransaction();
+        lock.writeLock().lock();
+        try {
+            if (!connected) {
+                throw new SQLException("Storage is not connected");
+            }
+            R result;
+            transaction.active = true;
+            try {
+                result = work.run(transaction);
+                if (!transaction.mutations.isEmpty()) {
+                    persist(transaction.mutations);
+                }
+            } catch (SQLException | RuntimeException e) {
+                transaction.rolledBack(e);
+                throw e;
+            } finally {
+                transaction.active = false;
+            }
+            transaction.committed();
+            return result;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the table of a data object class, building its indexes on first use. Must not be
+     * called while holding only the read lock.
+     */
+    private RecordTable table(EntityMetadata<?> metadata) throws SQLException {
+        return table(metadata.getTableName(), metadata);
+    }
+
+    /**
+     * Gets a table by name, indexed for the managed data object class stored in it if there
+     * is one. Must not be called while holding only the read lock.
+     *
+     * @param name the name of the table
+     * @return the table, or null if it holds no records and no managed class uses it
+     */
+    private RecordTable table(String name) throws SQLException {
+        for (Class<? extends DataObject> clazz : dataObjectClasses) {
+            EntityMetadata<?> metadata = EntityMetadata.of(clazz);
+            if (metadata.getTableName().equalsIgnoreCase(name)) {
+                return table(metadata);
+            }
+        }
+        return tables.get(name);
+    }
+
+    private RecordTable table(String name, EntityMetadata<?> metadata) throws SQLException {
+        RecordTable table = tables.get(name);
+        if (table != null && table.metadata != null) {
+            return table;
+        }
+        lock.writeLock().lock();
+        try {
+            table = tables.computeIfAbsent(name, RecordTable::new);
+            if (table.metadata == null) {
+                table.attach(metadata);
+            }
+            return table;
+        } catch (IOException e) {
+            throw new SQLException("Failed to index table " + name, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the rows matching conditions and maps them to data objects.
+     */
+    private <T extends DataObject> List<T> read(RecordTable table, EntityMetadata<T> metadata, List<Condition> conditions,
+                                                List<String> columns, List<String> orders, int limit, int offset)
+            throws IOException, ReflectiveOperationException {
+        List<Map.Entry<Object, Map<String, Object>>> matches;
+        lock.readLock().lock();
+        try {
+            matches = match(table, metadata, conditions, orders, limit, offset);
+        } finally {
+            lock.readLock().unlock();
+        }
+        List<T> items = new ArrayList<>(matches.size());
+        for (Map.Entry<Object, Map<String, Object>> match : matches) {
+            items.add(toObject(metadata, match.getValue(), columns));
+        }
+        return items;
+    }
+
+    /**
+     * Finds the keys and decoded records of the rows matching conditions, in the given order
+     * or in id order. Must be called holding the read or write lock.
+     */
+    private List<Map.Entry<Object, Map<String, Object>>> match(RecordTable table, EntityMetadata<?> metadata,
+                                                               List<Condition> conditions, List<String> orders,
+                                                               int limit, int offset) throws IOException {
+        List<Map.Entry<Object, Map<String, Object>>> matches = new ArrayList<>();
+        boolean idOrder = orders.isEmpty();
+        int skip = idOrder ? offset : 0;
+        for (Object key : candidates(table, metadata, conditions)) {
+            if (idOrder && limit >= 0 && matches.size() >= limit) {
+                break;
+            }
+            byte[] bytes = table.rows.get(key);
+            if (bytes == null) {
+                continue;
+            }
+            Map<String, Object> record = RecordCodec.decode(bytes);
+            if (!matches(record, conditions)) {
+                continue;
+            }
+            if (skip > 0) {
+                skip--;
+                continue;
+            }
+            matches.add(new AbstractMap.SimpleImmutableEntry<>(key, record));
+        }
+        if (idOrder) {
+            return matches;
+        }
+        matches.sort(comparator(orders));
+        int from = Math.min(offset, matches.size());
+        int to = limit >= 0 ? Math.min(matches.size(), from + limit) : matches.size();
+        return new ArrayList<>(matches.subList(from, to));
+    }
+
+    /**
+     * Gets the keys of the rows that can match conditions, in id order: the rows named by the
+     * first equality or IN condition on the id or an indexed column, or every row.
+     */
+    private static Collection<Object> candidates(RecordTable table, EntityMetadata<?> metadata, List<Condition> conditions) {
+        ColumnMetadata idColumn = metadata != null ? metadata.getIdColumn() : null;
+        for (Condition condition : conditions) {
+            if (condition.getOperator() != Condition.Operator.EQ && condition.getOperator() != Condition.Operator.IN) {
+                continue;
+            }
+            boolean byId = idColumn != null && idColumn.getName().equalsIgnoreCase(condition.getColumn());
+            Map<Object, Set<Object>> index = byId ? null : table.indexes.get(condition.getColumn());
+            if (!byId && index == null) {
+                continue;
+            }
+            NavigableSet<Object> keys = new TreeSet<>(Values::compare);
+            for (Object value : condition.getValues()) {
+                Object key = Values.key(value);
+                if (byId) {
+                    if (table.rows.containsKey(key)) {
+                        keys.add(key);
+                    }
+                } else if (index.containsKey(key)) {
+                    keys.addAll(index.get(key));
+                }
+            }
+            return keys;
+        }
+        return table.rows.keySet();
+    }
+
+    private static boolean matches(Map<String, Object> record, List<Condition> conditions) {
+        for (Condition condition : conditions) {
+            if (!matches(record, condition)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Evaluates a condition like SQL would: comparisons with a missing or null value never match.
+     */
+    private static boolean matches(Map<String, Object> record, Condition condition) {
+        Object value = record.get(condition.getColumn());
+        switch (condition.getOperator()) {
+            case IS_NULL:
+                return value == null;
+            case IS_NOT_NULL:
+                return value != null;
+            case IN:
+                if (value != null) {
+                    for (Object candidate : condition.getValues()) {
+                        if (Values.compare(value, candidate) == 0) {
+                            return true;
+                        }
+                    }
+                }
+                return false;
+            default:
+                break;
+        }
+        if (value == null) {
+            return false;
+        }
+        int comparison = Values.compare(value, condition.getValues().get(0));
+        switch (condition.getOperator()) {
+            case EQ:
+                return comparison == 0;
+            case NE:
+                return comparison != 0;
+            case GT:
+                return comparison > 0;
+            case GE:
+                return comparison >= 0;
+            case LT:
+                return comparison < 0;
+            case LE:
+                return comparison <= 0;
+            default:
+                throw new IllegalArgumentException("Unsupported operator " + condition.getOperator());
+        }
+    }
+
+    /**
+     * Builds the ordering of a query. {@link Query} keeps each order as a column followed by
+     * {@code ASC} or {@code DESC}; nulls sort first ascending and last descending.
+     */
+    private static Comparator<Map.Entry<Object, Map<String, Object>>> comparator(List<String> orders) {
+        Comparator<Map.Entry<Object, Map<String, Object>>> comparator = null;
+        for (String order : orders) {
+            int space = order.lastIndexOf(' ');
+            String column = order.substring(0, space);
+            Comparator<Map.Entry<Object, Map<String, Object>>> next =
+                    (a, b) -> Values.compare(a.getValue().get(column), b.getValue().get(column));
+            if (order.endsWith(" DESC")) {
+                next = next.reversed();
+            }
+            comparator = comparator == null ? next : comparator.thenComparing(next);
+        }
+        return comparator;
+    }
+
+    /**
+     * Creates a data object from a record. Mapped columns are written to their fields,
+     * converted to the field type where needed, every other column is put into the data map.
+     *
+     * @param metadata the entity metadata
+     * @param record   the decoded record
+     * @param columns  the projected columns, or an empty list for every column
+     */
+    private <T extends DataObject> T toObject(EntityMetadata<T> metadata, Map<String, Object> record, List<String> columns)
+            throws ReflectiveOperationException {
+        T dataObject = metadata.newInstance(this);
+        for (Map.Entry<String, Object> value : record.entrySet()) {
+            if (!columns.isEmpty() && columns.stream().noneMatch(value.getKey()::equalsIgnoreCase)) {
+                continue;
+            }
+            ColumnMetadata column = metadata.getColumn(value.getKey());
+            if (column != null) {
+                column.set(dataObject, Values.coerce(value.getValue(), column.getType()));
+            } else {
+                dataObject.getData().put(value.getKey(), value.getValue());
+            }
+        }
+        if (!metadata.getRelations().isEmpty()) {
+            RelationFetcher.attach(this, dataObject);
+        }
+        if (dataObject.getChangeTracker() != null) {
+            toRow(dataObject).markPersisted();
+        }
+        return dataObject;
+    }
+
+    /**
+     * Collects the mapped column values and the dynamic data values of a data object.
+     */
+    private static Row toRow(DataObject dataObject) {
+        EntityMetadata<DataObject> metadata = EntityMetadata.of(dataObject);
+        List<String> columns = new ArrayList<>(metadata.getColumns().size() + dataObject.getData().size());
+        List<Object> values = new ArrayList<>(metadata.getColumns().size() + dataObject.getData().size());
+        for (ColumnMetadata column : metadata.getColumns()) {
+            columns.add(column.getName());
+            values.add(column.get(dataObject));
+        }
+        for (Map.Entry<String, Object> data : dataObject.getData().entrySet()) {
+            if (!metadata.isMapped(data.getKey())) {
+                columns.add(data.getKey());
+                values.add(data.getValue());
+            }
+        }
+        return new Row(dataObject, metadata, columns, values);
+    }
+
+    private SQLFeatureNotSupportedException unsupported() {
+        return new SQLFeatureNotSupportedException(getClass().getSimpleName() + " does not run SQL");
+    }
+
+    private static void checkOffset(Query<?> query) {
+        if (query.getOffset() > 0 && query.getLimit() < 0) {
+            throw new IllegalStateException("An offset requires a limit");
+        }
+    }
+
+    /**
+     * Work run under the write lock by {@link #execute(Write)}.
+     */
+    @FunctionalInterface
+    private interface Write<R> {
+
+        R run(KeyValueTransaction transaction) throws SQLException;
+
+    }
+
+    /**
+     * The records of one table in id order and the hash indexes over them.
+     */
+    private static final class RecordTable {
+
+        private final String name;
+        private final NavigableMap<Object, byte[]> rows = new TreeMap<>(Values::compare);
+
+        /**
+         * The ids of the rows holding each normalized value, by indexed column.
+         */
+        private final Map<String, Map<Object, Set<Object>>> indexes = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+        /**
+         * The class the table was first used with, null until its indexes are built.
+         */
+        private volatile EntityMetadata<?> metadata;
+        private long lastId;
+        private long bytes;
+
+        private RecordTable(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Builds the indexes declared by a data object class over the stored records.
+         */
+        private void attach(EntityMetadata<?> metadata) throws IOException {
+            for (IndexMetadata index : metadata.getIndexes()) {
+                indexes.putIfAbsent(index.getColumns().get(0), new HashMap<>());
+            }
+            if (!indexes.isEmpty()) {
+                for (Map.Entry<Object, byte[]> row : rows.entrySet()) {
+                    index(row.getKey(), RecordCodec.decode(row.getValue()), true);
+                }
+            }
+            this.metadata = metadata;
+        }
+
+        /**
+         * Stores a record, replacing the previous one of the same key.
+         *
+         * @param key    the normalized key
+         * @param record the encoded record
+         * @param values the decoded record, or null to decode it if the table has indexes
+         * @return the previous record, or null if there was none
+         */
+        private byte[] put(Object key, byte[] record, Map<String, Object> values) throws IOException {
+            byte[] previous = rows.put(key, record);
+            bytes += record.length - (previous != null ? previous.length : 0);
+            if (key instanceof Long) {
+                lastId = Math.max(lastId, (Long) key);
+            }
+            if (!indexes.isEmpty()) {
+                if (previous != null) {
+                    index(key, RecordCodec.decode(previous), false);
+                }
+                index(key, values != null ? values : RecordCodec.decode(record), true);
+            }
+            return previous;
+        }
+
+        /**
+         * Removes a record.
+         *
+         * @param key the normalized key
+         * @return the removed record, or null if there was none
+         */
+        private byte[] remove(Object key) throws IOException {
+            byte[] previous = rows.remove(key);
+            if (previous != null) {
+                bytes -= previous.length;
+                if (!indexes.isEmpty()) {
+                    index(key, RecordCodec.decode(previous), false);
+                }
+            }
+            return previous;
+        }
+
+        private void index(Object key, Map<String, Object> values, boolean add) {
+            for (Map.Entry<String, Map<Object, Set<Object>>> index : indexes.entrySet()) {
+                Object value = values.get(index.getKey());
+                if (value == null) {
+                    continue;
+                }
+                Object indexKey = Values.key(value);
+                if (add) {
+                    index.getValue().computeIfAbsent(indexKey, k -> new HashSet<>()).add(key);
+                } else {
+                    Set<Object> ids = index.getValue().get(indexKey);
+                    if (ids != null && ids.remove(key) && ids.isEmpty()) {
+                        index.getValue().remove(indexKey);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Gets the next generated id, after the highest numeric id stored so far.
+         */
+        private long nextId() {
+            return ++lastId;
+        }
+
+    }
+
+    /**
+     * A previous record of a key, put back if the write changing it is undone.
+     */
+    private static final class Undo {
+
+        private final RecordTable table;
+        private final Object key;
+        private final byte[] previous;
+
+        private Undo(RecordTable table, Object key, byte[] previous) {
+            this.table = table;
+            this.key = key;
+            this.previous = previous;
+        }
+
+        private void apply() throws IOException {
+            if (previous != null) {
+                table.put(key, previous, null);
+            } else {
+                table.remove(key);
+            }
+        }
+
+    }
+
+    /**
+     * The columns and values of a data object as they are written to its record.
+     */
+    private static final class Row {
+
+        private final DataObject object;
+        private final EntityMetadata<DataObject> metadata;
+        private final List<String> columns;
+        private final List<Object> values;
+
+        /**
+         * The columns written over the stored record, pending again if the write is undone.
+         */
+        private Collection<String> changed;
+
+        /**
+         * The position of the @Version column in the values, once the write checked it.
+         */
+        private int versionPosition = -1;
+        private Object previousVersion;
+        private boolean versionChanged;
+
+        private Row(DataObject object, EntityMetadata<DataObject> metadata, List<String> columns, List<Object> values) {
+            this.object = object;
+            this.metadata = metadata;
+            this.columns = columns;
+            this.values = values;
+        }
+
+        /**
+         * Records the values of this row as stored.
+         */
+        private void markPersisted() {
+            ChangeTracker tracker = object.getChangeTracker();
+            if (tracker != null) {
+                tracker.markPersisted(columns, values);
+            }
+        }
+
+        /**
+         * Marks the written columns of this row as changed again after the write was undone.
+         */
+        private void markChanged() {
+            ChangeTracker tracker = object.getChangeTracker();
+            if (tracker != null && changed != null) {
+                tracker.markDirty(changed);
+            }
+        }
+
+        private void setVersion(Object version) {
+            if (!versionChanged) {
+                previousVersion = values.get(versionPosition);
+                versionChanged = true;
+            }
+            values.set(versionPosition, version);
+            metadata.getVersionColumn().set(object, version);
+        }
+
+        /**
+         * Puts the version the data object had back after the write was undone.
+         */
+        private void restoreVersion() {
+            if (versionChanged) {
+                values.set(versionPosition, previousVersion);
+                metadata.getVersionColumn().set(object, previousVersion);
+                versionChanged = false;
+            }
+        }
+
+    }
+
+    /**
+     * The changes of one write, applied to the tables as they are made so the write reads
+     * its own changes, and persisted or undone once it ends.
+     */
+    private final class KeyValueTransaction implements Transaction {
+
+        private final List<Mutation> mutations = new ArrayList<>();
+        private final List<Undo> undo = new ArrayList<>();
+        private final List<Row> written = new ArrayList<>();
+        private final List<Row> changes = new ArrayList<>();
+        private final List<Row> inserted = new ArrayList<>();
+        private final List<DataObject> deleted = new ArrayList<>();
+        private final Set<String> updatedTables = new HashSet<>();
+        private boolean active;
+
+        @Override
+        public <T extends DataObject> T save(T dataObject) throws SQLException {
+            write(EntityMetadata.of(dataObject).getTableName(), dataObject, false);
+            return dataObject;
+        }
+
+        /**
+         * Saves a data object, returning its version conflict instead of throwing it. The
+         * version is checked before the record is written, so a conflicting save changes
+         * nothing and the rest of the write can go on.
+         *
+         * @param dataObject the data object
+         * @return the conflict, or null if the data object was saved
+         * @throws SQLException if the data object cannot be written
+         */
+        private OptimisticLockException trySave(DataObject dataObject) throws SQLException {
+            int changeCount = changes.size();
+            int insertCount = inserted.size();
+            try {
+                save(dataObject);
+                return null;
+            } catch (OptimisticLockException e) {
+                while (changes.size() > changeCount) {
+                    changes.remove(changes.size() - 1).markChanged();
+                }
+                while (inserted.size() > insertCount) {
+                    Row row = inserted.remove(inserted.size() - 1);
+                    row.metadata.getIdColumn().set(row.object, null);
+                }
+                return e;
+            }
+        }
+
+        /**
+         * Writes a data object to its record, generating its id if it has none. An existing
+         * record keeps the columns the object does not write.
+         *
+         * @param tableName  the table to write to
+         * @param dataObject the data object
+         * @param insert     whether an existing record of the same id is an error
+         * @return null
+         * @throws SQLException if the object has no id column, a record exists on insert or
+         *                      a value cannot be encoded
+         */
+        private Void write(String tableName, DataObject dataObject, boolean insert) throws SQLException {
+            checkActive();
+            Row row = toRow(dataObject);
+            ColumnMetadata idColumn = row.metadata.getIdColumn();
+            if (idColumn == null) {
+                throw new SQLException("No @Id field found in data object");
+            }
+            RecordTable table = table(tableName, row.metadata);
+            int idPosition = row.metadata.getColumns().indexOf(idColumn);
+            Object id = row.values.get(idPosition);
+            if (id == null) {
+                id = generateId(table, dataObject, idColumn);
+                row.values.set(idPosition, id);
+                inserted.add(row);
+            }
+
+            Object key = Values.key(id);
+            byte[] existing = table.rows.get(key);
+            if (existing != null && insert) {
+                throw new SQLException("Duplicate id " + id + " in " + tableName);
+            }
+            ChangeTracker tracker = dataObject.getChangeTracker();
+            boolean tracked = tracker != null && tracker.isTracked();
+            Set<String> changedColumns = tracker != null ? tracker.drainChanges(row.columns, row.values) : null;
+            ColumnMetadata versionColumn = row.metadata.getVersionColumn();
+            if (versionColumn != null && changedColumns != null) {
+                changedColumns.remove(versionColumn.getName());
+            }
+            if (existing != null && changedColumns != null && changedColumns.isEmpty()) {
+                return null;
+            }
+            row.changed = existing != null && changedColumns != null ? changedColumns : row.columns;
+            changes.add(row);
+            try {
+                Map<String, Object> record = existing != null ? RecordCodec.decode(existing) : RecordCodec.newRecord();
+                if (versionColumn != null) {
+                    checkVersion(row, tableName, id, record, existing != null, tracked);
+                }
+                for (int i = 0; i < row.columns.size(); i++) {
+                    if (existing == null || changedColumns == null || changedColumns.contains(row.columns.get(i))) {
+                        record.put(row.columns.get(i), row.values.get(i));
+                    }
+                }
+                if (versionColumn != null) {
+                    record.put(versionColumn.getName(), row.values.get(row.versionPosition));
+                }
+                put(table, key, record);
+            } catch (IOException e) {
+                throw new SQLException("Failed to encode " + dataObject.getClass().getSimpleName() + " " + id, e);
+            }
+            written.add(row);
+            return null;
+        }
+
+        /**
+         * Checks that the stored row is at the version of a data object with a {@code @Version}
+         * column and moves the data object to the next version. A data object without a
+         * version that was never loaded or saved is new and starts at the first version.
+         *
+         * @throws OptimisticLockException if the row was changed or deleted by another writer,
+         *                                 or a new data object's id is taken
+         */
+        private void checkVersion(Row row, String tableName, Object id, Map<String, Object> stored,
+                                  boolean exists, boolean tracked) throws SQLException {
+            ColumnMetadata versionColumn = row.metadata.getVersionColumn();
+            row.versionPosition = row.metadata.getColumns().indexOf(versionColumn);
+            Object version = row.values.get(row.versionPosition);
+            Object expected = version != null ? version : 0;
+            boolean isNew = Values.compare(expected, 0) == 0 && !tracked;
+            boolean conflict;
+            if (isNew) {
+                conflict = exists;
+            } else {
+                Object storedVersion = stored.get(versionColumn.getName());
+                conflict = !exists || Values.compare(storedVersion != null ? storedVersion : 0, expected) != 0;
+            }
+            if (conflict) {
+                throw new OptimisticLockException(row.object, tableName, id, expected);
+            }
+            row.setVersion(versionColumn.nextVersion(isNew ? null : expected));
+        }
+
+        /**
+         * Generates the next id of a table and sets it on a data object.
+         */
+        private Object generateId(RecordTable table, DataObject dataObject, ColumnMetadata idColumn) throws SQLException {
+            Class<?> type = idColumn.getType();
+            if (type != Integer.class && type != int.class && type != Long.class && type != long.class) {
+                throw new SQLException("No id set on " + dataObject.getClass().getSimpleName()
+                        + " and ids of type " + type.getSimpleName() + " cannot be generated");
+            }
+            Object id = Values.coerce(table.nextId(), type);
+            try {
+                idColumn.set(dataObject, id);
+            } catch (IllegalStateException e) {
+                throw new SQLException("Failed to set @Id field value", e);
+            }
+            return id;
+        }
+
+        @Override
+        public boolean delete(DataObject dataObject) throws SQLException {
+            checkActive();
+            EntityMetadata<DataObject> metadata = EntityMetadata.of(dataObject);
+            if (metadata.getIdColumn() == null) {
+                throw new SQLException("No @Id field found in data object");
+            }
+            Object id = metadata.getIdColumn().get(dataObject);
+            if (id == null) {
+                return false;
+            }
+            deleted.add(dataObject);
+            try {
+                return remove(table(metadata), Values.key(id));
+            } catch (IOException e) {
+                throw new SQLException("Failed to index " + metadata.getTableName(), e);
+            }
+        }
+
+        @Override
+        public int update(Class<? extends DataObject> clazz, Map<String, Object> data, Condition... conditions) throws SQLException {
+            checkActive();
+            if (data.isEmpty()) {
+                return 0;
+            }
+            EntityMetadata<?> metadata = EntityMetadata.of(clazz);
+            ColumnMetadata versionColumn = metadata.getVersionColumn();
+            boolean bumpVersion = versionColumn != null
+                    && data.keySet().stream().noneMatch(versionColumn.getName()::equalsIgnoreCase);
+            return update(table(metadata), metadata, data, Arrays.asList(conditions), bumpVersion);
+        }
+
+        /**
+         * Updates the records of a table by name, see {@link #table(String)}. Like the SQL
+         * statement it stands in for, it only sets the given columns and leaves versions as
+         * they are.
+         */
+        private int update(String tableName, Map<String, Object> data, List<Condition> conditions) throws SQLException {
+            checkActive();
+            RecordTable table = table(tableName);
+            return table != null ? update(table, table.metadata, data, conditions, false) : 0;
+        }
+
+        /**
+         * Updates the records of a table matching all conditions.
+         *
+         * @param metadata    the class stored in the table, or null if it is not known
+         * @param bumpVersion whether to move the records to their next version
+         */
+        private int update(RecordTable table, EntityMetadata<?> metadata, Map<String, Object> data,
+                           List<Condition> conditions, boolean bumpVersion) throws SQLException {
+            ColumnMetadata idColumn = metadata != null ? metadata.getIdColumn() : null;
+            ColumnMetadata versionColumn = metadata != null ? metadata.getVersionColumn() : null;
+            updatedTables.add(table.name);
+            try {
+                List<Map.Entry<Object, Map<String, Object>>> matches = match(table, metadata, conditions,
+                        Collections.emptyList(), -1, 0);
+                for (Map.Entry<Object, Map<String, Object>> match : matches) {
+                    Map<String, Object> record = match.getValue();
+                    record.putAll(data);
+                    if (bumpVersion) {
+                        Object version = record.get(versionColumn.getName());
+                        record.put(versionColumn.getName(), versionColumn.nextVersion(version != null ? version : 0));
+                    }
+                    Object key = idColumn != null ? Values.key(record.get(idColumn.getName())) : match.getKey();
+                    if (Values.compare(key, match.getKey()) != 0) {
+                        if (key == null || table.rows.containsKey(key)) {
+                            throw new SQLException("Cannot change id " + match.getKey() + " of " + table.name + " to " + key);
+                        }
+                        remove(table, match.getKey());
+                    }
+                    put(table, key, record);
+                }
+                return matches.size();
+            } catch (IOException e) {
+                throw new SQLException("Failed to update " + table.name, e);
+            }
+        }
+
+        @Override
+        public int delete(Class<? extends DataObject> clazz, Condition... conditions) throws SQLException {
+            checkActive();
+            EntityMetadata<?> metadata = EntityMetadata.of(clazz);
+            return delete(table(metadata), metadata, Arrays.asList(conditions));
+        }
+
+        /**
+         * Deletes the records of a table by name, see {@link #table(String)}.
+         */
+        private int delete(String tableName, List<Condition> conditions) throws SQLException {
+            checkActive();
+            RecordTable table = table(tableName);
+            return table != null ? delete(table, table.metadata, conditions) : 0;
+        }
+
+        /**
+         * Deletes the records of a table matching all conditions.
+         *
+         * @param metadata the class stored in the table, or null if it is not known
+         */
+        private int delete(RecordTable table, EntityMetadata<?> metadata, List<Condition> conditions) throws SQLException {
+            updatedTables.add(table.name);
+            try {
+                List<Map.Entry<Object, Map<String, Object>>> matches = match(table, metadata, conditions,
+                        Collections.emptyList(), -1, 0);
+                for (Map.Entry<Object, Map<String, Object>> match : matches) {
+                    remove(table, match.getKey());
+                }
+                return matches.size();
+            } catch (IOException e) {
+                throw new SQLException("Failed to delete from " + table.name, e);
+            }
+        }
+
+        @Override
+        public <T extends DataObject> List<T> find(Query<T> query) throws SQLException {
+            checkActive();
+            checkOffset(query);
+            try {
+                return KeyValueStorage.this.find(query, false);
+            } catch (IOException | ReflectiveOperationException e) {
+                throw new SQLException("Failed to run query on " + getTableName(query.getType()), e);
+            }
+        }
+
+        private void put(RecordTable table, Object key, Map<String, Object> record) throws IOException {
+            byte[] bytes = RecordCodec.encode(record);
+            undo.add(new Undo(table, key, table.put(key, bytes, record)));
+            mutations.add(Mutation.put(table.name, key, bytes));
+        }
+
+        private boolean remove(RecordTable table, Object key) throws IOException {
+            byte[] previous = table.remove(key);
+            if (previous == null) {
+                return false;
+            }
+            undo.add(new Undo(table, key, previous));
+            mutations.add(Mutation.delete(table.name, key));
+            return true;
+        }
+
+        private void checkActive() {
+            if (!active) {
+                throw new IllegalStateException("Transaction is not active");
+            }
+        }
+
+        /**
+         * Records written rows as stored and updates the cache once the changes are persisted.
+         */
+        private void committed() {
+            written.forEach(Row::markPersisted);
+            if (cache != null) {
+                written.forEach(row -> cache.put(row.object));
+                deleted.forEach(cache::invalidate);
+                updatedTables.forEach(cache::invalidateTable);
+            }
+        }
+
+        /**
+         * Puts the previous records back, marks the changes of written rows as pending again,
+         * restores their versions and clears generated ids.
+         *
+         * @param cause the failure the write is undone for, gets any failure to undo added
+         */
+        private void rolledBack(Exception cause) {
+            for (int i = undo.size() - 1; i >= 0; i--) {
+                try {
+                    undo.get(i).apply();
+                } catch (IOException e) {
+                    cause.addSuppressed(e);
+                }
+            }
+            changes.forEach(Row::markChanged);
+            changes.forEach(Row::restoreVersion);
+            for (Row row : inserted) {
+                row.metadata.getIdColumn().set(row.object, null);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,73 @@
+package me.rages.reliableframework.storage;
+
+import lombok.Getter;
+import me.rages.reliableframework.data.DataObject;
+
+import java.sql.SQLException;
+
+/**
+ * Thrown when a data object with a {@link me.rages.reliableframework.data.annotations.Version}
+ * column is saved over a row that another writer changed or deleted since the object was
+ * loaded. Nothing of the save is written and the changes of the object stay pending.
+ *
+ * @see Database#save(DataObject, ConflictResolver, int)
+ */
+@Getter
+public class OptimisticLockException extends SQLException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The data object whose save conflicted.
+     */
+    private final transient DataObject dataObject;
+
+    private final String tableName;
+
+    /**
+     * The id of the conflicting row.
+     */
+    private final transient Object id;
+
+    /**
+     * The version the data object expected the stored row to have.
+     */
+    private final transient Object expectedVersion;
+
+    /**
+     * Constructs an OptimisticLockException.
+     *
+     * @param dataObject      the data object whose save conflicted
+     * @param tableName       the table of the row
+     * @param id              the id of the row
+     * @param expectedVersion the version the data object expected
+     */
+    public OptimisticLockException(DataObject dataObject, String tableName, Object id, Object expectedVersion) {
+        super("Row " + id + " of " + tableName + " is no longer at version " + expectedVersion
+                + ", it was changed or deleted by another writer");
+        this.dataObject = dataObject;
+        this.tableName = tableName;
+        this.id = id;
+        this.expectedVersion = expectedVersion;
+    }
+
+    /**
+     * Finds the OptimisticLockException in the cause chain of a failure, such as the
+     * CompletionException of a failed future or an exception wrapping it.
+     *
+     * @param error the failure
+     * @return the conflict, or null if the failure was not caused by one
+     */
+    public static OptimisticLockException find(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof OptimisticLockException) {
+                return (OptimisticLockException) cause;
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return null;
+    }
+
+}
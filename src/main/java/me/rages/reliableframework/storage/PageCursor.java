@@ -0,0 +1,81 @@
+package me.rages.reliableframework.storage;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import me.rages.reliableframework.data.DataObject;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A page of data objects read in id order, and the position to read the next page from.
+ * <p>
+ * Pages are read with {@code WHERE id > ? ORDER BY id LIMIT ?}, so reading any page costs
+ * the same no matter how deep into the table it is.
+ *
+ * @param <T> the type of the data objects
+ */
+@Getter
+public class PageCursor<T extends DataObject> {
+
+    private final Database database;
+    private final Class<T> type;
+    private final int limit;
+
+    /**
+     * The data objects of this page, at most {@link #getLimit()} of them.
+     */
+    private final List<T> items;
+
+    /**
+     * The id of the last data object on this page, or the id this page started after if it is empty.
+     */
+    private final Object lastId;
+
+    @Getter(AccessLevel.NONE)
+    private final boolean hasNext;
+
+    /**
+     * Constructs a page.
+     *
+     * @param database the database the page was read from
+     * @param type     the class of the data objects
+     * @param limit    the page size
+     * @param items    the data objects of this page
+     * @param lastId   the id to read the next page after
+     * @param hasNext  whether more rows follow this page
+     */
+    public PageCursor(Database database, Class<T> type, int limit, List<T> items, Object lastId, boolean hasNext) {
+        this.database = database;
+        this.type = type;
+        this.limit = limit;
+        this.items = items;
+        this.lastId = lastId;
+        this.hasNext = hasNext;
+    }
+
+    /**
+     * Checks whether more rows follow this page.
+     *
+     * @return true if there is a next page
+     */
+    public boolean hasNext() {
+        return hasNext;
+    }
+
+    /**
+     * Reads the page following this one.
+     *
+     * @return a CompletableFuture of the next page, empty if this was the last page
+     */
+    public CompletableFuture<PageCursor<T>> next() {
+        if (!hasNext) {
+            return CompletableFuture.completedFuture(
+                    new PageCursor<>(database, type, limit, Collections.emptyList(), lastId, false)
+            );
+        }
+        return database.page(type, lastId, limit);
+    }
+
+}
@@ -0,0 +1,207 @@
+package me.rages.reliableframework.storage;
+
+import me.rages.reliableframework.data.DataObject;
+import me.rages.reliableframework.data.LazyList;
+import me.rages.reliableframework.data.LazyReference;
+import me.rages.reliableframework.data.metadata.ColumnMetadata;
+import me.rages.reliableframework.data.metadata.EntityMetadata;
+import me.rages.reliableframework.data.metadata.RelationMetadata;
+import me.rages.reliableframework.storage.codec.UuidCodec;
+import me.rages.reliableframework.storage.query.Condition;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Resolves the {@link me.rages.reliableframework.data.annotations.ManyToOne} and
+ * {@link me.rages.reliableframework.data.annotations.OneToMany} relationships of data objects.
+ * <p>
+ * Loaded data objects get lazy references and lists that run one query each on first use.
+ * An eager fetch instead resolves a relationship for a whole list of parents at once, with
+ * one {@code WHERE column IN (...)} query per relationship, split into chunks of
+ * {@value #MAX_IN_VALUES} values, instead of one query per parent.
+ */
+public final class RelationFetcher {
+
+    /**
+     * The maximum number of values in one IN list, below the bound parameter limit of SQLite.
+     */
+    public static final int MAX_IN_VALUES = 500;
+
+    private RelationFetcher() {
+    }
+
+    /**
+     * Fills the relationship fields of a freshly loaded data object with unloaded lazy
+     * references and lists. Many-to-one fields holding the related object itself are left
+     * alone, they are only set by an eager fetch.
+     *
+     * @param database   the database the object was loaded from
+     * @param dataObject the data object
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public static void attach(Database database, DataObject dataObject) {
+        EntityMetadata<DataObject> metadata = EntityMetadata.of(dataObject);
+        for (RelationMetadata relation : metadata.getRelations()) {
+            if (relation.getKind() == RelationMetadata.Kind.ONE_TO_MANY) {
+                ColumnMetadata idColumn = metadata.getIdColumn();
+                Object parentId = idColumn != null ? idColumn.get(dataObject) : null;
+                relation.set(dataObject, new LazyList(database, relation.getTarget(), foreignKey(relation), parentId));
+            } else if (relation.isReference()) {
+                Object id = columnValue(dataObject, relation.getColumn());
+                relation.set(dataObject, new LazyReference(database, relation.getTarget(), id));
+            }
+        }
+    }
+
+    /**
+     * Eagerly resolves relationships of a list of data objects of one class.
+     *
+     * @param database    the database to load from
+     * @param dataObjects the parent data objects
+     * @param relations   the names of the relationship fields to resolve
+     * @param <T>         the type of the parent data objects
+     * @return a CompletableFuture of the same list, completing once every relationship is set
+     * @throws IllegalArgumentException if a name is not a relationship of the class
+     */
+    public static <T extends DataObject> CompletableFuture<List<T>> fetch(Database database, List<T> dataObjects,
+                                                                           String... relations) {
+        if (dataObjects.isEmpty() || relations.length == 0) {
+            return CompletableFuture.completedFuture(dataObjects);
+        }
+        EntityMetadata<T> metadata = EntityMetadata.of(dataObjects.get(0));
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[relations.length];
+        for (int i = 0; i < relations.length; i++) {
+            RelationMetadata relation = metadata.getRelation(relations[i]);
+            if (relation == null) {
+                throw new IllegalArgumentException(metadata.getType().getName() + " has no relationship " + relations[i]);
+            }
+            futures[i] = relation.getKind() == RelationMetadata.Kind.MANY_TO_ONE
+                    ? fetchManyToOne(database, dataObjects, relation)
+                    : fetchOneToMany(database, dataObjects, metadata, relation);
+        }
+        return CompletableFuture.allOf(futures).thenApply(ignored -> dataObjects);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static CompletableFuture<Void> fetchManyToOne(Database database, List<? extends DataObject> parents,
+                                                          RelationMetadata relation) {
+        ColumnMetadata targetId = EntityMetadata.of(relation.getTarget()).getIdColumn();
+        if (targetId == null) {
+            throw new IllegalStateException("No @Id field found in " + relation.getTarget().getName());
+        }
+        Map<Object, Object> ids = new LinkedHashMap<>();
+        for (DataObject parent : parents) {
+            Object id = columnValue(parent, relation.getColumn());
+            if (id != null) {
+                ids.putIfAbsent(key(id), id);
+            }
+        }
+        return selectIn(database, relation.getTarget(), targetId.getName(), ids.values()).thenAccept(targets -> {
+            Map<Object, DataObject> byId = new HashMap<>();
+            for (DataObject target : targets) {
+                byId.put(key(targetId.get(target)), target);
+            }
+            for (DataObject parent : parents) {
+                Object id = columnValue(parent, relation.getColumn());
+                DataObject target = id != null ? byId.get(key(id)) : null;
+                relation.set(parent, relation.isReference()
+                        ? LazyReference.resolved(database, (Class) relation.getTarget(), id, target)
+                        : target);
+            }
+        });
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static CompletableFuture<Void> fetchOneToMany(Database database, List<? extends DataObject> parents,
+                                                          EntityMetadata<?> metadata, RelationMetadata relation) {
+        ColumnMetadata idColumn = metadata.getIdColumn();
+        if (idColumn == null) {
+            throw new IllegalStateException("No @Id field found in " + metadata.getType().getName());
+        }
+        String foreignKey = foreignKey(relation);
+        Map<Object, Object> ids = new LinkedHashMap<>();
+        for (DataObject parent : parents) {
+            Object id = idColumn.get(parent);
+            if (id != null) {
+                ids.putIfAbsent(key(id), id);
+            }
+        }
+        return selectIn(database, relation.getTarget(), foreignKey, ids.values()).thenAccept(children -> {
+            Map<Object, List<DataObject>> byParent = new HashMap<>();
+            for (DataObject child : children) {
+                Object parentId = columnValue(child, foreignKey);
+                if (parentId != null) {
+                    byParent.computeIfAbsent(key(parentId), k -> new ArrayList<>()).add(child);
+                }
+            }
+            for (DataObject parent : parents) {
+                Object id = idColumn.get(parent);
+                List<DataObject> group = id != null ? byParent.get(key(id)) : null;
+                relation.set(parent, LazyList.resolved(database, (Class) relation.getTarget(), foreignKey, id,
+                        group != null ? group : Collections.emptyList()));
+            }
+        });
+    }
+
+    /**
+     * Selects every row of a class whose column is one of the values, in chunks.
+     */
+    private static CompletableFuture<List<DataObject>> selectIn(Database database, Class<? extends DataObject> type,
+                                                                String column, Collection<Object> values) {
+        List<Object> all = new ArrayList<>(values);
+        List<CompletableFuture<? extends List<? extends DataObject>>> chunks = new ArrayList<>();
+        for (int from = 0; from < all.size(); from += MAX_IN_VALUES) {
+            List<Object> chunk = all.subList(from, Math.min(all.size(), from + MAX_IN_VALUES));
+            chunks.add(database.select(type).where(Condition.in(column, chunk)).list());
+        }
+        return CompletableFuture.allOf(chunks.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            List<DataObject> rows = new ArrayList<>();
+            for (CompletableFuture<? extends List<? extends DataObject>> chunk : chunks) {
+                rows.addAll(chunk.join());
+            }
+            return rows;
+        });
+    }
+
+    /**
+     * Gets the column of the related table a one-to-many refers to the parent with:
+     * the join column if {@code mappedBy} names a many-to-one field, otherwise
+     * {@code mappedBy} itself.
+     */
+    private static String foreignKey(RelationMetadata relation) {
+        RelationMetadata inverse = EntityMetadata.of(relation.getTarget()).getRelation(relation.getColumn());
+        return inverse != null && inverse.getKind() == RelationMetadata.Kind.MANY_TO_ONE
+                ? inverse.getColumn()
+                : relation.getColumn();
+    }
+
+    /**
+     * Reads a column of a data object, from its field if mapped, otherwise from its data map.
+     */
+    private static Object columnValue(DataObject dataObject, String column) {
+        ColumnMetadata mapped = EntityMetadata.of(dataObject).getColumn(column);
+        return mapped != null ? mapped.get(dataObject) : dataObject.getData().get(column);
+    }
+
+    /**
+     * Normalizes an id so the same value compares equal however the driver returned it.
+     */
+    private static Object key(Object id) {
+        if (id instanceof Number) {
+            return ((Number) id).longValue();
+        }
+        if (id instanceof byte[] && ((byte[]) id).length == UuidCodec.BYTES) {
+            return UuidCodec.fromBytes((byte[]) id).toString();
+        }
+        return id instanceof UUID ? id.toString() : id;
+    }
+
+}
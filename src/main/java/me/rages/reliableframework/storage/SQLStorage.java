@@ -1,17 +1,34 @@
 package me.rages.reliableframework.storage;
 
+import me.rages.reliableframework.data.ChangeTracker;
 import me.rages.reliableframework.data.DataObject;
 import me.rages.reliableframework.data.Entity;
-import me.rages.reliableframework.data.annotations.Column;
-import me.rages.reliableframework.data.annotations.Id;
-import me.rages.reliableframework.data.annotations.Table;
+import me.rages.reliableframework.data.metadata.ColumnMetadata;
+import me.rages.reliableframework.data.metadata.EntityMetadata;
+import me.rages.reliableframework.data.metadata.IndexMetadata;
+import me.rages.reliableframework.storage.cache.EntityCache;
+import me.rages.reliableframework.storage.codec.TypeCodec;
+import me.rages.reliableframework.storage.codec.TypeCodecRegistry;
+import me.rages.reliableframework.storage.executor.StorageExecutor;
+import me.rages.reliableframework.storage.pool.ConnectionPool;
+import me.rages.reliableframework.storage.query.Condition;
+import me.rages.reliableframework.storage.query.Query;
+import me.rages.reliableframework.storage.query.QueryShape;
+import me.rages.reliableframework.storage.schema.SchemaRegistry;
+import me.rages.reliableframework.storage.sql.Dialect;
+import me.rages.reliableframework.storage.sql.EntityMapper;
+import me.rages.reliableframework.storage.sql.EntitySql;
 import org.bukkit.plugin.java.JavaPlugin;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.sql.*;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.logging.Level;
 import java.util.stream.Collectors;
 
 /**
@@ -22,8 +39,22 @@ import java.util.stream.Collectors;
 public abstract class SQLStorage implements Database {
 
     protected final JavaPlugin plugin;
-    protected Connection connection;
+    protected ConnectionPool pool;
+    protected ConnectionPool readPool;
+    protected StorageExecutor executor;
+    protected final int batchSize;
+    protected final int fetchSize;
+    protected final boolean binaryUuids;
+    protected final TypeCodecRegistry codecs;
     protected Class<? extends DataObject>[] dataObjectClasses;
+    private final Map<Class<? extends DataObject>, EntitySql> entitySql = new ConcurrentHashMap<>();
+    private WriteBehindQueue writeBehind;
+    private final EntityCache cache;
+    protected final SchemaRegistry schema = new SchemaRegistry();
+    private final boolean warnUnindexedLoads;
+    private final Set<String> unindexedLoads = ConcurrentHashMap.newKeySet();
+    private final Map<LoadKey, CompletableFuture<?>> inFlightLoads = new ConcurrentHashMap<>();
+    private final Transaction.Isolation defaultIsolation;
 
     /**
      * Constructs an SQLStorage instance.
@@ -35,6 +66,19 @@ public abstract class SQLStorage implements Database {
     public SQLStorage(JavaPlugin plugin, Class<? extends DataObject>... dataObjectClasses) {
         this.plugin = plugin;
         this.dataObjectClasses = dataObjectClasses;
+        this.executor = StorageExecutor.fromConfig(
+                plugin.getName() + "-Storage",
+                plugin.getConfig().getConfigurationSection("storage.executor")
+        );
+        this.batchSize = Math.max(1, plugin.getConfig().getInt("storage.batch-size", 500));
+        this.fetchSize = Math.max(1, plugin.getConfig().getInt("storage.fetch-size", 1000));
+        this.binaryUuids = plugin.getConfig().getBoolean("storage.binary-uuids", false);
+        this.codecs = TypeCodecRegistry.defaults(getDialect(), binaryUuids);
+        this.warnUnindexedLoads = plugin.getConfig().getBoolean("storage.warn-unindexed-loads", true);
+        this.defaultIsolation = Transaction.Isolation.valueOf(
+                plugin.getConfig().getString("storage.transaction-isolation", "DEFAULT").toUpperCase(Locale.ROOT)
+        );
+        this.cache = EntityCache.fromConfig(plugin.getConfig().getConfigurationSection("storage.cache"));
     }
 
 
@@ -47,533 +91,2167 @@ public abstract class SQLStorage implements Database {
     @Override
     public abstract SQLStorage connect() throws SQLException;
 
+    /**
+     * Starts the background work of the storage: replaces the executor if a previous
+     * {@link #disconnect()} shut it down and starts the write-behind queue if it is enabled.
+     * Called by {@link #connect()} implementations once the connection pools are open.
+     */
+    protected void startWorkers() {
+        if (executor.isShutdown()) {
+            executor = StorageExecutor.fromConfig(
+                    plugin.getName() + "-Storage",
+                    plugin.getConfig().getConfigurationSection("storage.executor")
+            );
+        }
+        if (writeBehind == null) {
+            writeBehind = WriteBehindQueue.fromConfig(
+                    this, plugin.getConfig().getConfigurationSection("storage.write-behind")
+            );
+        }
+    }
+
 
     /**
-     * Disconnects from the database.
+     * Disconnects from the database, first flushing queued saves and waiting for
+     * queued storage work to finish.
      *
      * @throws SQLException if a database access error occurs
      */
     @Override
     public void disconnect() throws SQLException {
-        if (connection != null && !connection.isClosed()) {
-            connection.close();
+        if (writeBehind != null) {
+            writeBehind.close();
+            writeBehind = null;
+        }
+        if (!executor.shutdown()) {
+            plugin.getLogger().warning("Timed out waiting for storage tasks to finish, pending tasks were dropped");
+        }
+        beforePoolsClose();
+        if (readPool != null && readPool != pool) {
+            readPool.close();
+        }
+        if (pool != null) {
+            pool.close();
+        }
+        readPool = null;
+        pool = null;
+        if (cache != null) {
+            cache.clear();
         }
     }
 
     /**
-     * Gets the current database connection.
-     *
-     * @return the database connection
+     * Called by {@link #disconnect()} once queued storage work has finished and before the
+     * connection pools are closed, for implementations that run their own writers.
      */
-    @Override
-    public Connection getConnection() {
-        return connection;
+    protected void beforePoolsClose() {
     }
 
     /**
-     * Adds a new column to a table.
+     * Checks whether the storage currently holds an open connection pool.
      *
-     * @param tableName        the name of the table
-     * @param columnDefinition the column definition
-     * @throws SQLException if a database access error occurs
+     * @return true if connected
      */
-    @Override
-    public void addColumn(String tableName, String columnDefinition) throws SQLException {
-        String sql = "ALTER TABLE " + tableName + " ADD COLUMN " + columnDefinition;
-        try (Statement stmt = connection.createStatement()) {
-            stmt.execute(sql);
-        }
+    public boolean isConnected() {
+        return pool != null && !pool.isClosed();
     }
 
     /**
-     * Checks if a column exists in a table.
+     * Gets the executor running this storage's asynchronous operations.
      *
-     * @param tableName  the name of the table
-     * @param columnName the name of the column
-     * @return true if the column exists, false otherwise
-     * @throws SQLException if a database access error occurs
+     * @return the storage executor
      */
     @Override
-    public boolean columnExists(String tableName, String columnName) throws SQLException {
-        String query = "PRAGMA table_info(" + tableName + ")";
-        try (ResultSet rs = query(query)) {
-            while (rs.next()) {
-                if (rs.getString("name").equalsIgnoreCase(columnName)) {
-                    return true;
-                }
-            }
-        }
-        return false;
+    public StorageExecutor getExecutor() {
+        return executor;
     }
 
     /**
-     * Inserts a data object into a table.
+     * Gets the write-behind queue used by {@link #save(DataObject)}.
      *
-     * @param tableName  the name of the table
-     * @param dataObject the data object to insert
-     * @throws SQLException if a database access error occurs
+     * @return the write-behind queue, or null if write-behind is disabled or not connected
      */
-    public void insert(String tableName, DataObject dataObject) throws SQLException {
-        StringBuilder columns = new StringBuilder();
-        StringBuilder values = new StringBuilder();
-        List<Object> params = new ArrayList<>();
-
-        // Insert fields annotated with @Column
-        for (Field field : dataObject.getClass().getDeclaredFields()) {
-            if (field.isAnnotationPresent(Column.class)) {
-                Column column = field.getAnnotation(Column.class);
-                field.setAccessible(true);
-                columns.append(column.name()).append(",");
-                values.append("?,");
-                try {
-                    Object value = field.get(dataObject);
-                    if (value instanceof UUID) {
-                        value = value.toString();  // Convert UUID to string representation
-                    }
-                    params.add(value);
-                } catch (IllegalAccessException e) {
-                    throw new SQLException("Failed to access field value", e);
-                }
-            }
-        }
-
-        // Insert extra data values
-        for (Map.Entry<String, Object> data : dataObject.getData().entrySet()) {
-            columns.append(data.getKey()).append(",");
-            values.append("?,");
-            Object value = data.getValue();
-            if (value instanceof UUID) {
-                value = value.toString();  // Convert UUID to string representation
-            }
-            params.add(value);
-        }
-
-        // Remove the last comma from columns and values
-        if (columns.length() > 0 && values.length() > 0) {
-            columns.deleteCharAt(columns.length() - 1);
-            values.deleteCharAt(values.length() - 1);
-        }
-
-        String sql = "INSERT INTO " + tableName + " (" + columns + ") VALUES (" + values + ")";
-        try (PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            int index = 1;
-            for (Object value : params) {
-                preparedStatement.setObject(index++, value);
-            }
-            preparedStatement.executeUpdate();
-
-            // Retrieve the generated keys
-            try (ResultSet generatedKeys = preparedStatement.getGeneratedKeys()) {
-                if (generatedKeys.next()) {
-                    // Get the generated ID
-                    Object generatedId = generatedKeys.getObject(1);
-                    setIdField(dataObject, generatedId);
-                }
-            }
-        }
-    }
-
-    /**
-     * Sets the value of the @Id annotated field in the data object.
-     *
-     * @param dataObject the data object
-     * @param value      the value to set
-     * @throws SQLException if a database access error occurs
-     */
-    private void setIdField(DataObject dataObject, Object value) throws SQLException {
-        for (Field field : dataObject.getClass().getDeclaredFields()) {
-            if (field.isAnnotationPresent(Id.class)) {
-                field.setAccessible(true);
-                try {
-                    if (value != null) {
-                        if (field.getType() == Long.class || field.getType() == long.class) {
-                            field.set(dataObject, ((Number) value).longValue());
-                        } else if (field.getType() == Integer.class || field.getType() == int.class) {
-                            field.set(dataObject, ((Number) value).intValue());
-                        }
-                    }
-                } catch (IllegalAccessException e) {
-                    throw new SQLException("Failed to set @Id field value", e);
-                }
-                break;
-            }
-        }
+    public WriteBehindQueue getWriteBehindQueue() {
+        return writeBehind;
     }
 
-
     /**
-     * Executes a query on the database.
+     * Gets the cache of loaded data objects used by {@link #load(Entity.EntityEntry, Class)}.
      *
-     * @param query  the query string
-     * @param params the query parameters
-     * @return the result set of the query
-     * @throws SQLException if a database access error occurs
+     * @return the entity cache, or null if caching is disabled
      */
     @Override
-    public ResultSet query(String query, Object... params) throws SQLException {
-        PreparedStatement ps = connection.prepareStatement(query);
-        for (int i = 0; i < params.length; i++) {
-            ps.setObject(i + 1, params[i]);
-        }
-        return ps.executeQuery();
+    public EntityCache getCache() {
+        return cache;
     }
 
     /**
-     * Updates data in a table.
+     * Gets the codecs mapping field types to columns. Codecs for custom types must be
+     * registered before the storage connects.
      *
-     * @param tableName   the name of the table
-     * @param data        the data to update
-     * @param whereClause the where clause to specify which rows to update
-     * @param whereParams the parameters for the where clause
-     * @throws SQLException if a database access error occurs
+     * @return the type codec registry
      */
-    @Override
-    public CompletableFuture<Void> update(String tableName, Map<String, Object> data, String whereClause, Object... whereParams) {
-        return CompletableFuture.runAsync(() -> {
-            String setClause = String.join(" = ?, ", data.keySet()) + " = ?";
-            String sql = "UPDATE " + tableName + " SET " + setClause + " WHERE " + whereClause;
-            try (PreparedStatement ps = connection.prepareStatement(sql)) {
-                int index = 1;
-                for (Object value : data.values()) {
-                    ps.setObject(index++, value);
-                }
-                for (Object param : whereParams) {
-                    ps.setObject(index++, param);
-                }
-                ps.executeUpdate();
-            } catch (SQLException e) {
-                throw new RuntimeException(e);
-            }
-        });
+    public TypeCodecRegistry getCodecs() {
+        return codecs;
     }
 
     /**
-     * Deletes data from a table.
+     * Gets the connection pool used for writes.
      *
-     * @param tableName   the name of the table
-     * @param whereClause the where clause to specify which rows to delete
-     * @param whereParams the parameters for the where clause
-     * @throws SQLException if a database access error occurs
+     * @return the connection pool, or null if not connected
      */
-    @Override
-    public CompletableFuture<Void> delete(String tableName, String whereClause, Object... whereParams) {
-        return CompletableFuture.runAsync(() -> {
-            String sql = "DELETE FROM " + tableName + " WHERE " + whereClause;
-            try (PreparedStatement ps = connection.prepareStatement(sql)) {
-                for (int i = 0; i < whereParams.length; i++) {
-                    ps.setObject(i + 1, whereParams[i]);
-                }
-                ps.executeUpdate();
-            } catch (SQLException e) {
-                throw new RuntimeException(e);
-            }
-        });
+    public ConnectionPool getConnectionPool() {
+        return pool;
     }
 
-
     /**
-     * Creates a table with the specified columns.
+     * Gets the connection pool used for reads, which may be the same as the write pool.
      *
-     * @param tableName the name of the table
-     * @param columns   a map of column names and their data types
-     * @throws SQLException if a database access error occurs
+     * @return the read connection pool, or null if not connected
      */
-    @Override
-    public void createTable(String tableName, Map<String, String> columns) throws SQLException {
-        String columnDefinitions = columns.entrySet().stream()
-                .map(entry -> entry.getKey() + " " + entry.getValue())
-                .collect(Collectors.joining(", "));
-        String sql = "CREATE TABLE IF NOT EXISTS " + tableName + " (" + columnDefinitions + ")";
-        try (Statement stmt = connection.createStatement()) {
-            stmt.execute(sql);
-        }
+    public ConnectionPool getReadConnectionPool() {
+        return readPool != null ? readPool : pool;
     }
 
     /**
-     * Ensures a column exists in a table. If it doesn't, it adds the column.
+     * Gets the pre-generated statements for a data object class.
      *
-     * @param tableName  the name of the table
-     * @param columnName the name of the column
-     * @param value      the sample value to determine the column type
-     * @throws SQLException if a database access error occurs
+     * @param clazz the class of the data object
+     * @return the entity statements
      */
-    public void ensureColumnExists(String tableName, String columnName, Object value) throws SQLException {
-        if (!columnExists(tableName, columnName)) {
-            String columnType = getColumnType(value.getClass());
-            addColumn(tableName, columnName + " " + columnType);
-        }
+    protected EntitySql getEntitySql(Class<? extends DataObject> clazz) {
+        return entitySql.computeIfAbsent(clazz, type -> new EntitySql(EntityMetadata.of(type), this::getUpsertClause, codecs));
     }
 
     /**
-     * Loads a data object from the database asynchronously.
+     * Borrows a connection from the pool. The connection must be closed to return it.
      *
-     * @param entry      the identifier to query the data object
-     * @param clazz      the class of the data object
-     * @param <T>        the type of the data object
-     * @return a CompletableFuture of the data object
+     * @return a pooled database connection
+     * @throws SQLException if no connection could be obtained
      */
     @Override
-    public <T extends DataObject> CompletableFuture<T> load(
-            Entity.EntityEntry entry,
-            Class<T> clazz
-    ) {
-        return CompletableFuture.supplyAsync(() -> {
-            String tableName = getTableName(clazz);
-            String sql = "SELECT * FROM " + tableName + " WHERE " + entry.getColumnName() + " = ?";
-            try (ResultSet rs = query(sql, entry.getValue())) {
-                if (rs.next()) {
-                    T dataObject = createDataObjectInstance(clazz);
-                    for (Field field : clazz.getDeclaredFields()) {
-                        if (field.isAnnotationPresent(Column.class)) {
-                            Column column = field.getAnnotation(Column.class);
-                            Object value = rs.getObject(column.name());
-                            if (field.getType() == UUID.class && value instanceof String) {
-                                value = UUID.fromString((String) value);
-                            } else if (field.getType() == Boolean.class) {
-                                value = (Integer) value != 0;
-                            }
-                            field.setAccessible(true);
-                            field.set(dataObject, value);
-                        }
-                    }
-                    fillDataObjectFromResultSet(dataObject, rs);
-                    return dataObject;
-                }
-            } catch (SQLException | ReflectiveOperationException e) {
-                e.printStackTrace();
-            }
-            return null;
-        });
+    public Connection getConnection() throws SQLException {
+        if (pool == null) {
+            throw new SQLException("Storage is not connected");
+        }
+        return pool.borrow();
     }
 
     /**
-     * Loads all data objects from the database asynchronously.
+     * Borrows a connection for read-only work. Implementations with a separate read pool
+     * hand out one of its connections, otherwise this is the same as {@link #getConnection()}.
+     * The connection must be closed to return it.
      *
-     * @param clazz the class of the data objects
-     * @param <T>   the type of the data objects
-     * @return a CompletableFuture of a list of data objects
+     * @return a pooled database connection
+     * @throws SQLException if no connection could be obtained
      */
-    @Override
-    public <T extends DataObject> CompletableFuture<List<T>> loadAll(Class<T> clazz) {
-        return CompletableFuture.supplyAsync(() -> {
-            List<T> dataObjects = new ArrayList<>();
-            String tableName = getTableName(clazz);
-            String sql = "SELECT * FROM " + tableName;
-            try (ResultSet rs = query(sql)) {
-                while (rs.next()) {
-                    T dataObject = createDataObjectInstance(clazz);
-                    for (Field field : clazz.getDeclaredFields()) {
-                        if (field.isAnnotationPresent(Column.class)) {
-                            Column column = field.getAnnotation(Column.class);
-                            Object value = rs.getObject(column.name());
-
-                            // Handle UUID conversion
-                            if (field.getType() == UUID.class && value instanceof String) {
-                                value = UUID.fromString((String) value);
-                            }
-                            // Handle Boolean conversion
-                            else if (field.getType() == Boolean.class && value instanceof Integer) {
-                                value = (Integer) value != 0;
-                            }
-                            // Handle Long conversion
-                            else if (field.getType() == Long.class && value instanceof Integer) {
-                                value = ((Integer) value).longValue();
-                            }
-
-                            field.setAccessible(true);
-                            field.set(dataObject, value);
-                        }
-                    }
-                    fillDataObjectFromResultSet(dataObject, rs);
-                    dataObjects.add(dataObject);
-                }
-            } catch (SQLException | ReflectiveOperationException e) {
-                e.printStackTrace();
-            }
-            return dataObjects;
-        });
+    protected Connection getReadConnection() throws SQLException {
+        return readPool != null ? readPool.borrow() : getConnection();
     }
 
     /**
-     * Saves a data object to the database asynchronously.
+     * Runs write work asynchronously on a write connection. Saves, updates and deletes all
+     * go through here, so implementations can route them to a dedicated writer.
      *
-     * @param dataObject the data object to save
-     * @return a CompletableFuture representing the save operation
+     * @param work the work to run
+     * @param <R>  the type of the result
+     * @return a CompletableFuture of the result, failing with the work's exception
      */
-    public <T extends DataObject> CompletableFuture<T> save(T dataObject) {
+    protected <R> CompletableFuture<R> write(SqlWork<R> work) {
         return CompletableFuture.supplyAsync(() -> {
-            try {
-                Map<String, Object> data = dataObject.getData();
-                Entity.EntityEntry entry = getIdField(dataObject);
-
-                if (entry == null) {
-                    throw new SQLException("No @Id field found in data object");
-                }
-
-                for (Field field : dataObject.getClass().getDeclaredFields()) {
-                    if (field.isAnnotationPresent(Column.class)) {
-                        Column column = field.getAnnotation(Column.class);
-                        field.setAccessible(true); // Ensure the field is accessible
-                        try {
-                            Object value = field.get(dataObject);
-                            data.put(column.name(), value);
-                        } catch (IllegalAccessException e) {
-                            throw new RuntimeException(e);
-                        }
-                    }
-                }
-
-                // Update the data
-                int rowsAffected = 0;
-                if (!data.isEmpty()) {
-                    rowsAffected = updateAndReturnAffectedRows(
-                            getTableName(dataObject.getClass()),
-                            data, entry.getColumnName() + " = ?", entry.getValue()
-                    );
-                }
-
-                // If no rows were affected, insert new data
-                if (rowsAffected == 0) {
-                    insert(getTableName(dataObject.getClass()), dataObject);
-                }
-
+            try (Connection connection = getConnection()) {
+                return work.execute(connection);
             } catch (SQLException e) {
-                throw new RuntimeException("Failed to save data object", e);
+                throw new CompletionException(e);
             }
-            return dataObject;
-        });
+        }, executor);
     }
 
     /**
-     * Creates an instance of a data object.
+     * Runs work in a transaction, committing it if it succeeds and rolling it back if it
+     * fails. If the connection is already inside a transaction the work joins it and the
+     * owner of that transaction decides whether it commits.
      *
-     * @param clazz the class of the data object
-     * @param <D>   the type of the data object
-     * @return the data object instance
-     * @throws ReflectiveOperationException if an error occurs during instantiation
+     * @param connection the connection to use
+     * @param work       the work to run
+     * @param <R>        the type of the result
+     * @return the result of the work
+     * @throws SQLException if a database access error occurs
      */
-    private <D extends DataObject> D createDataObjectInstance(Class<D> clazz) throws ReflectiveOperationException {
-        Constructor<D> constructor = clazz.getConstructor(SQLStorage.class);
-        return constructor.newInstance(this);
+    protected <R> R inTransaction(Connection connection, SqlWork<R> work) throws SQLException {
+        return inTransaction(connection, Transaction.Isolation.DEFAULT, work);
     }
 
     /**
-     * Fills a data object with data from a result set.
+     * Runs work in a transaction with the given isolation level, committing it if it succeeds
+     * and rolling it back if it fails. If the connection is already inside a transaction the
+     * work joins it, keeping that transaction's isolation level.
      *
-     * @param dataObject the data object to fill
-     * @param rs         the result set
+     * @param connection the connection to use
+     * @param isolation  the isolation level of a new transaction
+     * @param work       the work to run
+     * @param <R>        the type of the result
+     * @return the result of the work
      * @throws SQLException if a database access error occurs
      */
-    private void fillDataObjectFromResultSet(DataObject dataObject, ResultSet rs) throws SQLException {
-        ResultSetMetaData metaData = rs.getMetaData();
-        int columnCount = metaData.getColumnCount();
-        for (int i = 1; i <= columnCount; i++) {
-            String columnName = metaData.getColumnName(i);
-            dataObject.set(columnName, rs.getObject(columnName));
+    protected <R> R inTransaction(Connection connection, Transaction.Isolation isolation, SqlWork<R> work) throws SQLException {
+        if (!connection.getAutoCommit()) {
+            return work.execute(connection);
+        }
+        int previousIsolation = connection.getTransactionIsolation();
+        boolean changeIsolation = isolation.getLevel() >= 0 && isolation.getLevel() != previousIsolation;
+        if (changeIsolation) {
+            connection.setTransactionIsolation(isolation.getLevel());
+        }
+        connection.setAutoCommit(false);
+        try {
+            R result = work.execute(connection);
+            connection.commit();
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+            if (changeIsolation) {
+                connection.setTransactionIsolation(previousIsolation);
+            }
         }
     }
 
     /**
-     * Gets the ID field from a data object.
+     * Adds a new column to a table.
      *
-     * @param dataObject the data object
-     * @param <D>        the type of the data object
-     * @return the ID field as a map entry
+     * @param tableName        the name of the table
+     * @param columnDefinition the column definition
      * @throws SQLException if a database access error occurs
      */
-    private <D extends DataObject> Entity.EntityEntry getIdField(D dataObject) throws SQLException {
-        for (Field field : dataObject.getClass().getDeclaredFields()) {
-            if (field.isAnnotationPresent(Id.class)) {
-                field.setAccessible(true);
-                try {
-                    return Entity.of(field.getName(), field.get(dataObject));
-                } catch (IllegalAccessException e) {
-                    throw new SQLException("Failed to access @Id field value", e);
-                }
-            }
+    @Override
+    public void addColumn(String tableName, String columnDefinition) throws SQLException {
+        String sql = "ALTER TABLE " + tableName + " ADD COLUMN " + columnDefinition;
+        try (Connection connection = getConnection(); Statement stmt = connection.createStatement()) {
+            stmt.execute(sql);
         }
-        return null;
+        schema.registerColumn(tableName, columnDefinition.trim().split("\\s+", 2)[0]);
     }
 
     /**
-     * Updates data and returns the number of affected rows.
+     * Adds several columns to a table, one statement per column.
      *
-     * @param tableName   the name of the table
-     * @param data        the data to update
-     * @param whereClause the where clause to specify which rows to update
-     * @param whereParams the parameters for the where clause
-     * @return the number of affected rows
+     * @param connection        the connection to use
+     * @param tableName         the name of the table
+     * @param columnDefinitions the column definitions
      * @throws SQLException if a database access error occurs
      */
-    private int updateAndReturnAffectedRows(String tableName, Map<String, Object> data, String whereClause, Object... whereParams) throws SQLException {
-        String setClause = data.keySet().stream().map(key -> key + " = ?").collect(Collectors.joining(", "));
-        String sql = "UPDATE " + tableName + " SET " + setClause + " WHERE " + whereClause;
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
-            int index = 1;
-            for (Object value : data.values()) {
-                if (value instanceof UUID) {
-                    value = value.toString();  // Convert UUID to string representation
-                }
-                ps.setObject(index++, value);
-            }
-            for (Object param : whereParams) {
-                ps.setObject(index++, param);
+    protected void addColumns(Connection connection, String tableName, Collection<String> columnDefinitions) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            for (String columnDefinition : columnDefinitions) {
+                stmt.addBatch("ALTER TABLE " + tableName + " ADD COLUMN " + columnDefinition);
             }
-            return ps.executeUpdate();
+            stmt.executeBatch();
         }
     }
 
     /**
-     * Gets the table name for a data object class.
+     * Checks if a column exists in a table by querying the database.
      *
-     * @param clazz the class of the data object
-     * @return the table name
-     * @throws IllegalArgumentException if the class does not have a @Table annotation
+     * @param tableName  the name of the table
+     * @param columnName the name of the column
+     * @return true if the column exists, false otherwise
+     * @throws SQLException if a database access error occurs
      */
     @Override
-    public String getTableName(Class<? extends DataObject> clazz) {
-        if (clazz.isAnnotationPresent(Table.class)) {
-            Table table = clazz.getAnnotation(Table.class);
-            return table.name();
+    public boolean columnExists(String tableName, String columnName) throws SQLException {
+        try (Connection connection = getReadConnection()) {
+            return getColumns(connection, tableName).contains(SchemaRegistry.normalize(columnName));
         }
-        throw new IllegalArgumentException("No @Table annotation found on class: " + clazz.getName());
     }
 
+    /**
+     * Reads the columns of a table from the database.
+     *
+     * @param connection the connection to use
+     * @param tableName  the name of the table
+     * @return the column names in lower case
+     * @throws SQLException if a database access error occurs
+     */
+    protected abstract Set<String> getColumns(Connection connection, String tableName) throws SQLException;
 
     /**
-     * Creates tables for the specified data object classes.
+     * Loads the columns of a table into the schema registry.
      *
-     * @param dataObjectClasses the data object classes
+     * @param tableName the name of the table
      * @throws SQLException if a database access error occurs
      */
-    @SafeVarargs
-    public final void createTablesForDataObjects(Class<? extends DataObject>... dataObjectClasses) throws SQLException {
-        for (Class<? extends DataObject> dataObjectClass : dataObjectClasses) {
-            String tableName = getTableName(dataObjectClass);
-            Map<String, String> columns = new LinkedHashMap<>();
-            for (Field field : dataObjectClass.getDeclaredFields()) {
-                if (field.isAnnotationPresent(Column.class)) {
-                    Column column = field.getAnnotation(Column.class);
-                    if (field.isAnnotationPresent(Id.class)) {
-                        Id id = field.getAnnotation(Id.class);
-                        String key = id.autoIncrement() ? " PRIMARY KEY AUTOINCREMENT" : " PRIMARY KEY";
-                        columns.put(column.name(), getColumnType(field.getType()) + key);
-                    } else {
-                        columns.put(column.name(), getColumnType(field.getType()));
-                    }
-                }
-            }
-            createTable(tableName, columns);
+    protected void loadSchema(String tableName) throws SQLException {
+        try (Connection connection = getReadConnection()) {
+            schema.register(tableName, getColumns(connection, tableName));
         }
     }
 
     /**
-     * Gets the SQL column type for a Java class.
+     * Adds every pending column of a table in one go. The columns are read from the database
+     * first so columns added by another server in the meantime are skipped.
+     * <p>
+     * Inside a transaction the columns are added but stay pending, since a rollback would
+     * remove them again. They are registered by the next call outside of a transaction,
+     * which finds them in the database once the transaction has committed.
      *
-     * @param type the Java class
-     * @return the SQL column type
-     * @throws IllegalArgumentException if the data type is unsupported
+     * @param connection the connection to use, must not be inside a transaction on databases
+     *                   where schema changes commit implicitly
+     * @param tableName  the name of the table
+     * @throws SQLException if a database access error occurs, the columns stay pending
      */
-    public abstract String getColumnType(Class<?> type);
+    protected void applyPendingColumns(Connection connection, String tableName) throws SQLException {
+        if (!schema.hasPending(tableName)) {
+            return;
+        }
+        if (!connection.getAutoCommit()) {
+            if (!supportsTransactionalSchemaChanges()) {
+                throw new SQLException("Cannot add columns to " + tableName + " inside a transaction, "
+                        + "set new data keys before the transaction starts");
+            }
+            synchronized (schema.lock(tableName)) {
+                Set<String> columns = getColumns(connection, tableName);
+                List<String> definitions = new ArrayList<>();
+                schema.getPending(tableName).forEach((column, definition) -> {
+                    if (!columns.contains(column)) {
+                        definitions.add(definition);
+                    }
+                });
+                if (!definitions.isEmpty()) {
+                    addColumns(connection, tableName, definitions);
+                }
+            }
+            return;
+        }
+        synchronized (schema.lock(tableName)) {
+            Map<String, String> pending = schema.drainPending(tableName);
+            if (pending.isEmpty()) {
+                return;
+            }
+            try {
+                Set<String> columns = new HashSet<>(getColumns(connection, tableName));
+                List<String> definitions = new ArrayList<>();
+                for (Map.Entry<String, String> column : pending.entrySet()) {
+                    if (columns.add(column.getKey())) {
+                        definitions.add(column.getValue());
+                    }
+                }
+                if (!definitions.isEmpty()) {
+                    addColumns(connection, tableName, definitions);
+                }
+                schema.register(tableName, columns);
+            } catch (SQLException | RuntimeException e) {
+                pending.forEach((column, definition) -> {
+                    String[] parts = definition.split(" ", 2);
+                    schema.addPending(tableName, parts[0], parts[1]);
+                });
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Adds the pending columns of every table.
+     *
+     * @param connection the connection to use, outside of a transaction
+     * @throws SQLException if a database access error occurs
+     */
+    protected void applyPendingColumns(Connection connection) throws SQLException {
+        for (String tableName : schema.getPendingTables()) {
+            applyPendingColumns(connection, tableName);
+        }
+    }
+
+    /**
+     * Checks whether schema changes can run inside a transaction without committing it.
+     *
+     * @return true if columns can be added inside a transaction
+     */
+    protected boolean supportsTransactionalSchemaChanges() {
+        return true;
+    }
+
+    /**
+     * Inserts a data object into a table.
+     *
+     * @param tableName  the name of the table
+     * @param dataObject the data object to insert
+     * @throws SQLException if a database access error occurs
+     */
+    public void insert(String tableName, DataObject dataObject) throws SQLException {
+        try (Connection connection = getConnection()) {
+            insert(connection, tableName, dataObject);
+        }
+    }
+
+    /**
+     * Inserts a data object into a table using the given connection.
+     *
+     * @param connection the connection to use
+     * @param tableName  the name of the table
+     * @param dataObject the data object to insert
+     * @throws SQLException if a database access error occurs
+     */
+    protected void insert(Connection connection, String tableName, DataObject dataObject) throws SQLException {
+        applyPendingColumns(connection, tableName);
+        EntityRow row = toRow(dataObject);
+        try {
+            insertRow(connection, tableName, row);
+        } catch (SQLException | RuntimeException e) {
+            row.restoreVersion();
+            throw e;
+        }
+        persisted(row);
+    }
+
+    /**
+     * Inserts a row and writes a generated key back to the data object.
+     *
+     * @param connection the connection to use
+     * @param tableName  the name of the table
+     * @param row        the row to insert
+     * @throws SQLException if a database access error occurs
+     */
+    private void insertRow(Connection connection, String tableName, EntityRow row) throws SQLException {
+        row.initVersion();
+        String sql = insertSql(tableName, row);
+        try (PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            bindRow(preparedStatement, row);
+            preparedStatement.executeUpdate();
+
+            // Retrieve the generated keys
+            try (ResultSet generatedKeys = preparedStatement.getGeneratedKeys()) {
+                if (generatedKeys.next()) {
+                    // Get the generated ID
+                    Object generatedId = generatedKeys.getObject(1);
+                    setGeneratedId(row, generatedId);
+                }
+            }
+        }
+    }
+
+    /**
+     * Inserts rows as JDBC batches of at most {@link #batchSize} rows, grouped by statement.
+     * Generated keys are read back from each batch if the driver reports them per row,
+     * otherwise rows without an id are inserted one by one.
+     *
+     * @param connection the connection to use
+     * @param tableName  the name of the table
+     * @param rows       the rows to insert
+     * @throws SQLException if a database access error occurs
+     */
+    private void insertRows(Connection connection, String tableName, List<EntityRow> rows) throws SQLException {
+        Map<String, List<EntityRow>> explicitIds = new LinkedHashMap<>();
+        Map<String, List<EntityRow>> generatedIds = new LinkedHashMap<>();
+        for (EntityRow row : rows) {
+            row.initVersion();
+            if (row.id != null) {
+                explicitIds.computeIfAbsent(insertSql(tableName, row), key -> new ArrayList<>()).add(row);
+            } else if (supportsBatchGeneratedKeys()) {
+                generatedIds.computeIfAbsent(insertSql(tableName, row), key -> new ArrayList<>()).add(row);
+            } else {
+                insertRow(connection, tableName, row);
+            }
+        }
+
+        for (Map.Entry<String, List<EntityRow>> group : explicitIds.entrySet()) {
+            try (PreparedStatement ps = connection.prepareStatement(group.getKey())) {
+                executeBatches(ps, group.getValue(), false);
+            }
+        }
+        for (Map.Entry<String, List<EntityRow>> group : generatedIds.entrySet()) {
+            try (PreparedStatement ps = connection.prepareStatement(group.getKey(), Statement.RETURN_GENERATED_KEYS)) {
+                executeBatches(ps, group.getValue(), true);
+            }
+        }
+    }
+
+    /**
+     * Binds every row to a statement and executes it in batches of at most {@link #batchSize} rows.
+     *
+     * @param ps                the statement
+     * @param rows              the rows to bind
+     * @param readGeneratedKeys whether to write the generated key of each row back to its data object
+     * @throws SQLException if a database access error occurs
+     */
+    private void executeBatches(PreparedStatement ps, List<EntityRow> rows, boolean readGeneratedKeys) throws SQLException {
+        for (int start = 0; start < rows.size(); start += batchSize) {
+            List<EntityRow> chunk = rows.subList(start, Math.min(rows.size(), start + batchSize));
+            for (EntityRow row : chunk) {
+                bindRow(ps, row);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+            if (readGeneratedKeys) {
+                try (ResultSet generatedKeys = ps.getGeneratedKeys()) {
+                    for (EntityRow row : chunk) {
+                        if (!generatedKeys.next()) {
+                            break;
+                        }
+                        setGeneratedId(row, generatedKeys.getObject(1));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the insert statement for a row, reusing the pre-generated one for the entity's own table.
+     *
+     * @param tableName the name of the table
+     * @param row       the row to insert
+     * @return the insert statement
+     */
+    private String insertSql(String tableName, EntityRow row) {
+        return tableName.equals(row.metadata.getTableName())
+                ? getEntitySql(row.metadata.getType()).insert(row.columns)
+                : "INSERT INTO " + tableName + " (" + String.join(", ", row.columns) + ") VALUES ("
+                + EntitySql.placeholders(row.columns.size()) + ")";
+    }
+
+    /**
+     * Checks whether the driver returns one generated key per row of an executed batch.
+     *
+     * @return true if generated keys can be read back from batches
+     */
+    protected boolean supportsBatchGeneratedKeys() {
+        return false;
+    }
+
+    /**
+     * Inserts several data objects into a table in one transaction.
+     *
+     * @param tableName   the name of the table
+     * @param dataObjects the data objects to insert
+     * @throws SQLException if a database access error occurs, the transaction is rolled back
+     */
+    @Override
+    public void insertAll(String tableName, Collection<? extends DataObject> dataObjects) throws SQLException {
+        if (dataObjects.isEmpty()) {
+            return;
+        }
+        List<EntityRow> rows = new ArrayList<>(dataObjects.size());
+        for (DataObject dataObject : dataObjects) {
+            rows.add(toRow(dataObject));
+        }
+        try (Connection connection = getConnection()) {
+            applyPendingColumns(connection, tableName);
+            inTransaction(connection, tx -> {
+                insertRows(tx, tableName, rows);
+                return null;
+            });
+        } catch (SQLException | RuntimeException e) {
+            rows.forEach(EntityRow::restoreVersion);
+            throw e;
+        }
+        rows.forEach(this::persisted);
+    }
+
+    /**
+     * Records a written row as the stored state of its data object and caches the object.
+     *
+     * @param row the written row
+     */
+    private void persisted(EntityRow row) {
+        row.markPersisted();
+        if (cache != null) {
+            cache.put(row.object);
+        }
+    }
+
+    /**
+     * Collects the mapped column values and the dynamic data values of a data object.
+     *
+     * @param dataObject the data object
+     * @return the row to write
+     */
+    private EntityRow toRow(DataObject dataObject) {
+        EntityMetadata<DataObject> metadata = EntityMetadata.of(dataObject);
+        EntitySql sql = getEntitySql(metadata.getType());
+        List<String> mappedColumns = sql.getMappedColumns();
+        List<String> columns = mappedColumns;
+        List<TypeCodec<?>> rowCodecs = sql.getMappedCodecs();
+        List<Object> values = new ArrayList<>(columns.size() + dataObject.getData().size());
+
+        // Fields annotated with @Column
+        EntityMapper<DataObject> mapper = sql.getMapper();
+        if (mapper != null) {
+            for (int i = 0; i < mappedColumns.size(); i++) {
+                values.add(mapper.get(dataObject, i));
+            }
+        } else {
+            for (ColumnMetadata column : metadata.getColumns()) {
+                values.add(column.get(dataObject));
+            }
+        }
+
+        // Extra data values
+        for (Map.Entry<String, Object> data : dataObject.getData().entrySet()) {
+            if (metadata.isMapped(data.getKey())) {
+                continue;
+            }
+            if (columns == mappedColumns) {
+                columns = new ArrayList<>(mappedColumns);
+                rowCodecs = new ArrayList<>(rowCodecs);
+            }
+            Object value = data.getValue();
+            columns.add(data.getKey());
+            values.add(value);
+            rowCodecs.add(value != null ? codecs.get(value.getClass()) : null);
+        }
+
+        ColumnMetadata idColumn = metadata.getIdColumn();
+        EntityRow row = new EntityRow(dataObject, metadata, columns, values, rowCodecs,
+                idColumn != null ? values.get(sql.getPosition(idColumn)) : null);
+        if (metadata.getVersionColumn() != null) {
+            row.versionPosition = sql.getPosition(metadata.getVersionColumn());
+        }
+        return row;
+    }
+
+    /**
+     * Narrows a row to the columns an update has to write: every column except the id and
+     * version, or only the changed ones if the data object tracks its changes. A set of
+     * changed columns the entity has no room left to keep statements for is widened to
+     * every column, see {@link EntitySql#acceptsPartialUpdate(List)}.
+     *
+     * @param row the full row
+     * @return the columns and values to update, empty if nothing changed
+     */
+    private EntityRow changedRow(EntityRow row) {
+        ChangeTracker tracker = row.object.getChangeTracker();
+        Set<String> changed = tracker != null ? tracker.drainChanges(row.columns, row.values) : null;
+        EntityRow changes = columnsRow(row, changed);
+        int updatable = row.columns.size() - (row.isVersioned() ? 2 : 1);
+        if (!changes.columns.isEmpty() && changes.columns.size() < updatable && !row.isNew()
+                && !getEntitySql(row.metadata.getType()).acceptsPartialUpdate(changes.columns)) {
+            return columnsRow(row, null);
+        }
+        return changes;
+    }
+
+    /**
+     * Narrows a row to the given columns, always leaving out the id and version.
+     *
+     * @param row     the full row
+     * @param changed the columns to keep, or null to keep every column
+     * @return the narrowed row
+     */
+    private EntityRow columnsRow(EntityRow row, Set<String> changed) {
+        String idName = row.metadata.getIdColumn().getName();
+        String versionName = row.isVersioned() ? row.metadata.getVersionColumn().getName() : null;
+        int size = changed != null ? changed.size() : row.columns.size();
+        List<String> columns = new ArrayList<>(size);
+        List<Object> values = new ArrayList<>(size);
+        List<TypeCodec<?>> rowCodecs = new ArrayList<>(size);
+        for (int i = 0; i < row.columns.size(); i++) {
+            String column = row.columns.get(i);
+            if (column.equals(idName) || column.equals(versionName) || (changed != null && !changed.contains(column))) {
+                continue;
+            }
+            columns.add(column);
+            values.add(row.values.get(i));
+            rowCodecs.add(row.codecs.get(i));
+        }
+        return new EntityRow(row.object, row.metadata, columns, values, rowCodecs, row.id);
+    }
+
+    /**
+     * Binds a full row from {@link #toRow(DataObject)} starting at the first parameter. The
+     * mapped columns are bound by the entity's generated mapper if it has one, the dynamic
+     * data values after them with their codecs. Values are bound as collected in the row,
+     * never re-read from the data object, so the row recorded as stored once the write
+     * commits is exactly the one written.
+     *
+     * @param ps  the statement
+     * @param row the row to bind, holding every mapped column in declaration order first
+     * @throws SQLException if a database access error occurs
+     */
+    private void bindRow(PreparedStatement ps, EntityRow row) throws SQLException {
+        EntityMapper<DataObject> mapper = getEntitySql(row.metadata.getType()).getMapper();
+        if (mapper == null) {
+            bindParameters(ps, 1, row);
+            return;
+        }
+        int index = mapper.bind(ps, row.values);
+        for (int i = mapper.getColumns().size(); i < row.values.size(); i++) {
+            bind(ps, index++, row.codecs.get(i), row.values.get(i));
+        }
+    }
+
+    /**
+     * Binds the values of a row to consecutive statement parameters with their column codecs.
+     *
+     * @param ps    the statement
+     * @param index the first parameter index
+     * @param row   the row to bind
+     * @return the index after the last bound parameter
+     * @throws SQLException if a database access error occurs
+     */
+    private int bindParameters(PreparedStatement ps, int index, EntityRow row) throws SQLException {
+        for (int i = 0; i < row.values.size(); i++) {
+            bind(ps, index++, row.codecs.get(i), row.values.get(i));
+        }
+        return index;
+    }
+
+    /**
+     * Binds a single statement parameter with the codec of its type, or as a plain object
+     * if the type has no codec.
+     *
+     * @param ps    the statement
+     * @param index the parameter index
+     * @param value the value to bind
+     * @throws SQLException if a database access error occurs
+     */
+    protected void setParameter(PreparedStatement ps, int index, Object value) throws SQLException {
+        bind(ps, index, value != null ? codecs.get(value.getClass()) : null, value);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void bind(PreparedStatement ps, int index, TypeCodec<?> codec, Object value) throws SQLException {
+        if (value == null || codec == null) {
+            ps.setObject(index, value);
+        } else {
+            ((TypeCodec<Object>) codec).bind(ps, index, value);
+        }
+    }
+
+    /**
+     * Sets a generated key as the id of an inserted row and of its data object.
+     *
+     * @param row   the inserted row
+     * @param value the generated key
+     * @throws SQLException if a database access error occurs
+     */
+    private void setGeneratedId(EntityRow row, Object value) throws SQLException {
+        ColumnMetadata idColumn = row.metadata.getIdColumn();
+        if (idColumn == null || value == null) {
+            return;
+        }
+        Class<?> type = idColumn.getType();
+        Object id;
+        if (type == Long.class || type == long.class) {
+            id = ((Number) value).longValue();
+        } else if (type == Integer.class || type == int.class) {
+            id = ((Number) value).intValue();
+        } else {
+            return;
+        }
+        try {
+            idColumn.set(row.object, id);
+        } catch (IllegalStateException e) {
+            throw new SQLException("Failed to set @Id field value", e);
+        }
+        row.values.set(getEntitySql(row.metadata.getType()).getPosition(idColumn), id);
+    }
+
+
+    /**
+     * Executes a query on the database. The statement and the borrowed connection
+     * are released when the returned result set is closed.
+     *
+     * @param query  the query string
+     * @param params the query parameters
+     * @return the result set of the query
+     * @throws SQLException if a database access error occurs
+     */
+    @Override
+    public ResultSet query(String query, Object... params) throws SQLException {
+        Connection connection = getReadConnection();
+        try {
+            PreparedStatement ps = connection.prepareStatement(query);
+            for (int i = 0; i < params.length; i++) {
+                setParameter(ps, i + 1, params[i]);
+            }
+            return closingWith(ps.executeQuery(), ps, connection);
+        } catch (SQLException | RuntimeException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Executes a query on the given connection. Closing the returned result set
+     * also closes its statement, the connection stays open.
+     *
+     * @param connection the connection to use
+     * @param query      the query string
+     * @param params     the query parameters
+     * @return the result set of the query
+     * @throws SQLException if a database access error occurs
+     */
+    protected ResultSet executeQuery(Connection connection, String query, Object... params) throws SQLException {
+        PreparedStatement ps = connection.prepareStatement(query);
+        try {
+            for (int i = 0; i < params.length; i++) {
+                setParameter(ps, i + 1, params[i]);
+            }
+            return closingWith(ps.executeQuery(), ps);
+        } catch (SQLException | RuntimeException e) {
+            ps.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Wraps a result set so closing it also closes the given resources, in reverse order.
+     * Used instead of {@link Statement#closeOnCompletion()} so cached statements are
+     * returned to the statement cache rather than closed.
+     *
+     * @param rs        the result set
+     * @param resources the statement and optionally the borrowed connection
+     * @return the wrapped result set
+     */
+    private static ResultSet closingWith(ResultSet rs, AutoCloseable... resources) {
+        return (ResultSet) Proxy.newProxyInstance(
+                SQLStorage.class.getClassLoader(),
+                new Class<?>[]{ResultSet.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("close")) {
+                        try {
+                            rs.close();
+                        } finally {
+                            for (int i = resources.length - 1; i >= 0; i--) {
+                                resources[i].close();
+                            }
+                        }
+                        return null;
+                    }
+                    try {
+                        return method.invoke(rs, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                }
+        );
+    }
+
+    /**
+     * Updates data in a table.
+     *
+     * @param tableName   the name of the table
+     * @param data        the data to update
+     * @param whereClause the where clause to specify which rows to update
+     * @param whereParams the parameters for the where clause
+     * @throws SQLException if a database access error occurs
+     */
+    @Override
+    public CompletableFuture<Void> update(String tableName, Map<String, Object> data, String whereClause, Object... whereParams) {
+        String setClause = String.join(" = ?, ", data.keySet()) + " = ?";
+        String sql = "UPDATE " + tableName + " SET " + setClause + " WHERE " + whereClause;
+        return write(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                int index = 1;
+                for (Object value : data.values()) {
+                    setParameter(ps, index++, value);
+                }
+                for (Object param : whereParams) {
+                    setParameter(ps, index++, param);
+                }
+                ps.executeUpdate();
+            }
+            if (cache != null) {
+                cache.invalidateTable(tableName);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Deletes data from a table.
+     *
+     * @param tableName   the name of the table
+     * @param whereClause the where clause to specify which rows to delete
+     * @param whereParams the parameters for the where clause
+     * @throws SQLException if a database access error occurs
+     */
+    @Override
+    public CompletableFuture<Void> delete(String tableName, String whereClause, Object... whereParams) {
+        String sql = "DELETE FROM " + tableName + " WHERE " + whereClause;
+        return write(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                for (int i = 0; i < whereParams.length; i++) {
+                    setParameter(ps, i + 1, whereParams[i]);
+                }
+                ps.executeUpdate();
+            }
+            if (cache != null) {
+                cache.invalidateTable(tableName);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Updates the rows of a data object class matching all given conditions. The statement
+     * is compiled once per set of columns and condition shapes.
+     *
+     * @param clazz      the class of the data objects
+     * @param data       the values to set by column
+     * @param conditions the conditions, joined with AND
+     * @return a CompletableFuture of the number of updated rows
+     */
+    @Override
+    public CompletableFuture<Integer> update(Class<? extends DataObject> clazz, Map<String, Object> data, Condition... conditions) {
+        if (data.isEmpty()) {
+            return CompletableFuture.completedFuture(0);
+        }
+        List<Condition> where = Arrays.asList(conditions);
+        String sql = getEntitySql(clazz).query(QueryShape.of(QueryShape.Kind.UPDATE, QueryShape.columnsOf(data), where));
+        List<Object> values = new ArrayList<>(data.values());
+        return write(connection -> {
+            int updated = executeWhere(connection, sql, values, where);
+            if (cache != null) {
+                cache.invalidateTable(getTableName(clazz));
+            }
+            return updated;
+        });
+    }
+
+    /**
+     * Deletes the rows of a data object class matching all given conditions.
+     *
+     * @param clazz      the class of the data objects
+     * @param conditions the conditions, joined with AND
+     * @return a CompletableFuture of the number of deleted rows
+     */
+    @Override
+    public CompletableFuture<Integer> delete(Class<? extends DataObject> clazz, Condition... conditions) {
+        List<Condition> where = Arrays.asList(conditions);
+        String sql = getEntitySql(clazz).query(QueryShape.of(QueryShape.Kind.DELETE, Collections.emptyList(), where));
+        return write(connection -> {
+            int deleted = executeWhere(connection, sql, Collections.emptyList(), where);
+            if (cache != null) {
+                cache.invalidateTable(getTableName(clazz));
+            }
+            return deleted;
+        });
+    }
+
+    /**
+     * Runs an update or delete compiled from a {@link QueryShape}.
+     *
+     * @param connection the connection to use
+     * @param sql        the statement
+     * @param values     the values bound before the conditions
+     * @param conditions the conditions
+     * @return the number of affected rows
+     * @throws SQLException if a database access error occurs
+     */
+    private int executeWhere(Connection connection, String sql, List<Object> values, List<Condition> conditions)
+            throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            int index = 1;
+            for (Object value : values) {
+                setParameter(ps, index++, value);
+            }
+            bindConditions(ps, index, conditions);
+            return ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Binds the values of conditions to consecutive statement parameters.
+     *
+     * @param ps         the statement
+     * @param index      the first parameter index
+     * @param conditions the conditions
+     * @throws SQLException if a database access error occurs
+     */
+    private void bindConditions(PreparedStatement ps, int index, List<Condition> conditions) throws SQLException {
+        for (Condition condition : conditions) {
+            for (Object value : condition.getValues()) {
+                setParameter(ps, index++, value);
+            }
+        }
+    }
+
+    /**
+     * Creates a table with the specified columns.
+     *
+     * @param tableName the name of the table
+     * @param columns   a map of column names and their data types
+     * @throws SQLException if a database access error occurs
+     */
+    @Override
+    public void createTable(String tableName, Map<String, String> columns) throws SQLException {
+        String columnDefinitions = columns.entrySet().stream()
+                .map(entry -> entry.getKey() + " " + entry.getValue())
+                .collect(Collectors.joining(", "));
+        String sql = "CREATE TABLE IF NOT EXISTS " + tableName + " (" + columnDefinitions + ")";
+        try (Connection connection = getConnection(); Statement stmt = connection.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    /**
+     * Ensures a column exists in a table. Known columns are checked in memory; a missing
+     * column is queued and added before the next write to the table.
+     *
+     * @param tableName  the name of the table
+     * @param columnName the name of the column
+     * @param value      the sample value to determine the column type
+     * @throws SQLException if a database access error occurs
+     */
+    @Override
+    public void ensureColumnExists(String tableName, String columnName, Object value) throws SQLException {
+        if (!schema.isLoaded(tableName)) {
+            loadSchema(tableName);
+        }
+        if (!schema.hasColumn(tableName, columnName)) {
+            schema.addPending(tableName, columnName, getColumnType(value.getClass()));
+        }
+    }
+
+    /**
+     * Loads a data object from the database asynchronously. Concurrent loads of the same
+     * class, column and value share a single query and resolve to the same object.
+     *
+     * @param entry      the identifier to query the data object
+     * @param clazz      the class of the data object
+     * @param <T>        the type of the data object
+     * @return a CompletableFuture of the data object
+     */
+    @Override
+    public <T extends DataObject> CompletableFuture<T> load(
+            Entity.EntityEntry entry,
+            Class<T> clazz
+    ) {
+        if (cache != null) {
+            T cached = cache.get(clazz, entry.getColumnName(), entry.getValue());
+            if (cached != null) {
+                return CompletableFuture.completedFuture(cached);
+            }
+        }
+
+        if (warnUnindexedLoads && !EntityMetadata.of(clazz).isIndexed(entry.getColumnName())
+                && unindexedLoads.add(clazz.getName() + "#" + SchemaRegistry.normalize(entry.getColumnName()))) {
+            plugin.getLogger().warning("Loading " + clazz.getSimpleName() + " by unindexed column "
+                    + entry.getColumnName() + ", consider adding @Indexed to it");
+        }
+
+        LoadKey key = new LoadKey(clazz, entry.getColumnName(), entry.getValue());
+        CompletableFuture<T> shared = new CompletableFuture<>();
+        @SuppressWarnings("unchecked")
+        CompletableFuture<T> inFlight = (CompletableFuture<T>) inFlightLoads.putIfAbsent(key, shared);
+        if (inFlight != null) {
+            return inFlight.copy();
+        }
+        try {
+            loadRow(entry, clazz).whenComplete((dataObject, ex) -> {
+                inFlightLoads.remove(key, shared);
+                if (ex != null) {
+                    shared.completeExceptionally(ex);
+                } else {
+                    shared.complete(dataObject);
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlightLoads.remove(key, shared);
+            throw e;
+        }
+        return shared.copy();
+    }
+
+    /**
+     * Queries a single data object and caches it.
+     *
+     * @param entry the identifier to query the data object
+     * @param clazz the class of the data object
+     * @param <T>   the type of the data object
+     * @return a CompletableFuture of the data object, or of null if no row matched, failing
+     * if the row cannot be read
+     */
+    private <T extends DataObject> CompletableFuture<T> loadRow(Entity.EntityEntry entry, Class<T> clazz) {
+        return CompletableFuture.supplyAsync(() -> {
+            EntityMetadata<T> metadata = EntityMetadata.of(clazz);
+            String sql = getEntitySql(clazz).selectWhere(entry.getColumnName());
+            try (Connection connection = getReadConnection();
+                 ResultSet rs = executeQuery(connection, sql, entry.getValue())) {
+                if (rs.next()) {
+                    T dataObject = mapRow(metadata, rs, columnPlan(metadata, rs));
+                    return cache != null ? cache.putIfAbsent(dataObject, entry.getColumnName(), entry.getValue()) : dataObject;
+                }
+                return null;
+            } catch (SQLException | ReflectiveOperationException e) {
+                throw new RuntimeException("Failed to load data object from " + metadata.getTableName(), e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Loads all data objects from the database asynchronously.
+     *
+     * @param clazz the class of the data objects
+     * @param <T>   the type of the data objects
+     * @return a CompletableFuture of a list of data objects
+     */
+    @Override
+    public <T extends DataObject> CompletableFuture<List<T>> loadAll(Class<T> clazz) {
+        return CompletableFuture.supplyAsync(() -> {
+            List<T> dataObjects = new ArrayList<>();
+            EntityMetadata<T> metadata = EntityMetadata.of(clazz);
+            String sql = getEntitySql(clazz).selectAll();
+            try (Connection connection = getReadConnection(); ResultSet rs = executeQuery(connection, sql)) {
+                ColumnPlan plan = columnPlan(metadata, rs);
+                while (rs.next()) {
+                    dataObjects.add(mapRow(metadata, rs, plan));
+                }
+            } catch (SQLException | ReflectiveOperationException e) {
+                plugin.getLogger().log(Level.SEVERE, "Failed to load data objects from " + metadata.getTableName(), e);
+                throw new RuntimeException("Failed to load data objects from " + metadata.getTableName(), e);
+            }
+            return dataObjects;
+        }, executor);
+    }
+
+    /**
+     * Reads a page of data objects in id order asynchronously.
+     *
+     * @param clazz   the class of the data objects
+     * @param afterId the id to read after, or null to start at the first row
+     * @param limit   the maximum number of data objects on the page
+     * @param <T>     the type of the data objects
+     * @return a CompletableFuture of the page
+     */
+    @Override
+    public <T extends DataObject> CompletableFuture<PageCursor<T>> page(Class<T> clazz, Object afterId, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Page limit must be positive: " + limit);
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            EntityMetadata<T> metadata = EntityMetadata.of(clazz);
+            String sql = getEntitySql(clazz).selectPage(afterId != null);
+            Object[] params = afterId != null ? new Object[]{afterId, limit + 1} : new Object[]{limit + 1};
+            List<T> items = new ArrayList<>(limit);
+            boolean hasNext = false;
+            try (Connection connection = getReadConnection(); ResultSet rs = executeQuery(connection, sql, params)) {
+                ColumnPlan plan = columnPlan(metadata, rs);
+                while (rs.next()) {
+                    if (items.size() == limit) {
+                        hasNext = true;
+                        break;
+                    }
+                    items.add(mapRow(metadata, rs, plan));
+                }
+            } catch (SQLException | ReflectiveOperationException e) {
+                throw new RuntimeException("Failed to load page of data objects", e);
+            }
+            Object lastId = items.isEmpty() ? afterId : metadata.getIdColumn().get(items.get(items.size() - 1));
+            return new PageCursor<>(this, clazz, limit, items, lastId, hasNext);
+        }, executor);
+    }
+
+    /**
+     * Streams every data object of a class from the database asynchronously. Rows are read
+     * {@link #fetchSize} at a time and handed to the consumer one by one on a storage thread,
+     * so memory use does not grow with the size of the table.
+     *
+     * @param clazz    the class of the data objects
+     * @param consumer the consumer receiving each data object
+     * @param <T>      the type of the data objects
+     * @return a CompletableFuture of the number of data objects streamed
+     */
+    @Override
+    public <T extends DataObject> CompletableFuture<Long> stream(Class<T> clazz, Consumer<? super T> consumer) {
+        return CompletableFuture.supplyAsync(() -> {
+            long count = 0;
+            EntityMetadata<T> metadata = EntityMetadata.of(clazz);
+            String sql = getEntitySql(clazz).selectAll();
+            try (Connection connection = getReadConnection();
+                 PreparedStatement ps = connection.prepareStatement(sql)) {
+                // The statement is cached per connection, its fetch size must not carry over
+                int previousFetchSize = ps.getFetchSize();
+                ps.setFetchSize(fetchSize);
+                try (ResultSet rs = ps.executeQuery()) {
+                    ColumnPlan plan = columnPlan(metadata, rs);
+                    while (rs.next()) {
+                        consumer.accept(mapRow(metadata, rs, plan));
+                        count++;
+                    }
+                } finally {
+                    ps.setFetchSize(previousFetchSize);
+                }
+            } catch (SQLException | ReflectiveOperationException e) {
+                throw new RuntimeException("Failed to stream data objects", e);
+            }
+            return count;
+        }, executor);
+    }
+
+    /**
+     * Runs a query asynchronously. Rows are mapped like {@link #loadAll(Class)}; full rows
+     * resolve to the cached instance of the same id if there is one, projected rows are
+     * returned as they are.
+     *
+     * @param query the query
+     * @param <T>   the type of the data objects
+     * @return a CompletableFuture of the matching data objects
+     */
+    @Override
+    public <T extends DataObject> CompletableFuture<List<T>> find(Query<T> query) {
+        String sql = getEntitySql(query.getType()).query(query.getShape(QueryShape.Kind.SELECT));
+        Object[] params = query.getParameters(QueryShape.Kind.SELECT).toArray();
+        return CompletableFuture.supplyAsync(() -> {
+            try (Connection connection = getReadConnection()) {
+                return readQuery(connection, query, sql, params, cache != null && !query.isProjected());
+            } catch (SQLException | ReflectiveOperationException e) {
+                throw new RuntimeException("Failed to run query " + sql, e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Runs a query on the given connection and maps its rows.
+     *
+     * @param connection the connection to use
+     * @param query      the query
+     * @param sql        the compiled statement
+     * @param params     the statement parameters
+     * @param cacheRows  whether rows resolve to and are added to the cache
+     * @param <T>        the type of the data objects
+     * @return the matching data objects
+     * @throws SQLException                 if a database access error occurs
+     * @throws ReflectiveOperationException if a data object cannot be created
+     */
+    private <T extends DataObject> List<T> readQuery(Connection connection, Query<T> query, String sql, Object[] params,
+                                                     boolean cacheRows) throws SQLException, ReflectiveOperationException {
+        EntityMetadata<T> metadata = EntityMetadata.of(query.getType());
+        ColumnMetadata idColumn = metadata.getIdColumn();
+        List<T> items = new ArrayList<>(query.getLimit() >= 0 ? Math.min(query.getLimit(), fetchSize) : 16);
+        try (ResultSet rs = executeQuery(connection, sql, params)) {
+            ColumnPlan plan = columnPlan(metadata, rs);
+            while (rs.next()) {
+                T dataObject = mapRow(metadata, rs, plan);
+                if (cacheRows && idColumn != null) {
+                    dataObject = cache.putIfAbsent(dataObject, idColumn.getName(), idColumn.get(dataObject));
+                }
+                items.add(dataObject);
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Counts the rows matching the conditions of a query asynchronously.
+     *
+     * @param query the query
+     * @return a CompletableFuture of the number of matching rows
+     */
+    @Override
+    public CompletableFuture<Long> count(Query<?> query) {
+        String sql = getEntitySql(query.getType()).query(query.getShape(QueryShape.Kind.COUNT));
+        Object[] params = query.getParameters(QueryShape.Kind.COUNT).toArray();
+        return CompletableFuture.supplyAsync(() -> {
+            try (Connection connection = getReadConnection(); ResultSet rs = executeQuery(connection, sql, params)) {
+                return rs.next() ? rs.getLong(1) : 0L;
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to run query " + sql, e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Saves a data object to the database asynchronously. With write-behind enabled the
+     * save is queued and the future completes once the batch holding it is committed.
+     *
+     * @param dataObject the data object to save
+     * @return a CompletableFuture representing the save operation
+     */
+    public <T extends DataObject> CompletableFuture<T> save(T dataObject) {
+        if (cache != null) {
+            cache.put(dataObject);
+        }
+        if (writeBehind != null) {
+            return writeBehind.enqueue(dataObject);
+        }
+        WrittenRows rows = new WrittenRows();
+        return this.<T>write(connection -> {
+            rows.save(connection, dataObject);
+            return dataObject;
+        }).whenComplete(rows::completed);
+    }
+
+    /**
+     * Saves several data objects asynchronously in one transaction, sending their rows as
+     * JDBC batches. With write-behind enabled the objects are queued and flushed at once.
+     * <p>
+     * A data object with a {@code @Version} column whose row was changed by another writer
+     * is left out of the transaction, the other objects are still saved and the future then
+     * fails with the {@link OptimisticLockException} of the first conflict.
+     *
+     * @param dataObjects the data objects to save
+     * @param <T>         the type of the data objects
+     * @return a CompletableFuture of the saved data objects
+     */
+    @Override
+    public <T extends DataObject> CompletableFuture<List<T>> saveAll(Collection<T> dataObjects) {
+        List<T> saved = new ArrayList<>(dataObjects);
+        if (cache != null) {
+            saved.forEach(cache::put);
+        }
+        if (writeBehind != null) {
+            List<CompletableFuture<T>> futures = new ArrayList<>(saved.size());
+            for (T dataObject : saved) {
+                futures.add(writeBehind.enqueue(dataObject));
+            }
+            writeBehind.flush();
+            return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> saved);
+        }
+        return writeBatch(saved).thenApply(conflicts -> {
+            if (!conflicts.isEmpty()) {
+                throw new CompletionException(conflicts.values().iterator().next());
+            }
+            return saved;
+        });
+    }
+
+    /**
+     * Saves several data objects in one transaction through {@link #write(SqlWork)}. The rows
+     * are recorded as stored and cached only once the write is committed.
+     *
+     * @param dataObjects the data objects to save
+     * @return a CompletableFuture of the version conflicts by data object, completing once the
+     * other rows are committed
+     */
+    protected CompletableFuture<Map<DataObject, OptimisticLockException>> writeBatch(Collection<? extends DataObject> dataObjects) {
+        WrittenRows rows = new WrittenRows();
+        return this.<Map<DataObject, OptimisticLockException>>write(connection -> saveBatch(connection, dataObjects, rows))
+                .whenComplete(rows::completed);
+    }
+
+    /**
+     * Runs work in a transaction with the configured default isolation level.
+     *
+     * @param work the work to run
+     * @param <R>  the type of the result
+     * @return a CompletableFuture of the result, completing once the transaction is committed
+     */
+    @Override
+    public <R> CompletableFuture<R> transaction(TransactionWork<R> work) {
+        return transaction(defaultIsolation, work);
+    }
+
+    /**
+     * Runs work in a transaction on one write connection. The transaction commits if the
+     * work returns and rolls back if it throws. Pending columns are added before it starts,
+     * and data objects saved inside it are recorded as stored and cached only after the commit.
+     * <p>
+     * With group commit the transaction runs under a savepoint inside the writer's group and
+     * commits with it, keeping the isolation level of the group.
+     *
+     * @param isolation the isolation level
+     * @param work      the work to run
+     * @param <R>       the type of the result
+     * @return a CompletableFuture of the result, completing once the transaction is committed
+     */
+    @Override
+    public <R> CompletableFuture<R> transaction(Transaction.Isolation isolation, TransactionWork<R> work) {
+        SqlTransaction transaction = new SqlTransaction();
+        return this.<R>write(connection -> {
+            if (connection.getAutoCommit()) {
+                applyPendingColumns(connection);
+            }
+            return inTransaction(connection, isolation, tx -> transaction.run(tx, work));
+        }).whenComplete((result, e) -> {
+            if (e == null) {
+                transaction.committed();
+            } else {
+                transaction.rolledBack();
+            }
+        });
+    }
+
+    /**
+     * Writes a data object in a single statement. Rows without an id are inserted and get
+     * their generated key, rows with an id are upserted, overwriting only the changed
+     * columns if the row already exists. Nothing is written if a tracked data object has
+     * no changes.
+     * <p>
+     * Rows with a {@code @Version} column are only updated if the stored version matches
+     * the data object's, which then moves to the incremented version. The row is not
+     * recorded as stored, callers do so once their transaction commits.
+     *
+     * @param connection the connection to use
+     * @param row        the row to save
+     * @return the written changes, or null if nothing had to be written
+     * @throws OptimisticLockException if a versioned row was changed or deleted by another writer
+     * @throws SQLException            if a database access error occurs, the changes stay pending
+     */
+    private EntityRow writeRow(Connection connection, EntityRow row) throws SQLException {
+        if (row.metadata.getIdColumn() == null) {
+            throw new SQLException("No @Id field found in data object");
+        }
+
+        boolean isNew = row.isNew();
+        EntityRow changes = changedRow(row);
+        if (!isNew && changes.columns.isEmpty()) {
+            return null;
+        }
+        try {
+            applyPendingColumns(connection, row.metadata.getTableName());
+            if (row.id == null || (isNew && row.isVersioned())) {
+                insertRow(connection, row.metadata.getTableName(), row);
+            } else if (row.isVersioned()) {
+                updateVersioned(connection, row, changes);
+            } else {
+                upsertRow(connection, row, changes);
+            }
+        } catch (SQLException | RuntimeException e) {
+            changes.markChanged();
+            row.restoreVersion();
+            throw e;
+        }
+        return changes;
+    }
+
+    /**
+     * Inserts a row, or overwrites the changed columns if its id already exists.
+     *
+     * @param connection the connection to use
+     * @param row        the full row
+     * @param changes    the columns to overwrite on an existing row
+     * @throws SQLException if a database access error occurs
+     */
+    private void upsertRow(Connection connection, EntityRow row, EntityRow changes) throws SQLException {
+        String sql = getEntitySql(row.metadata.getType()).upsert(row.columns, changes.columns);
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            bindRow(ps, row);
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Updates the changed columns of a versioned row if its stored version is still the
+     * expected one, and moves the data object to the next version.
+     *
+     * @param connection the connection to use
+     * @param row        the full row
+     * @param changes    the columns to overwrite
+     * @throws OptimisticLockException if the row was changed or deleted by another writer
+     * @throws SQLException            if a database access error occurs
+     */
+    private void updateVersioned(Connection connection, EntityRow row, EntityRow changes) throws SQLException {
+        String sql = getEntitySql(row.metadata.getType()).versionedUpdate(changes.columns);
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            int index = bindParameters(ps, 1, changes);
+            setParameter(ps, index++, row.id);
+            setParameter(ps, index, row.getVersion());
+            if (ps.executeUpdate() == 0) {
+                throw new OptimisticLockException(row.object, row.metadata.getTableName(), row.id, row.getVersion());
+            }
+        }
+        row.advanceVersion();
+    }
+
+    /**
+     * Saves several data objects in one transaction. Upserts and inserts are grouped by
+     * statement and sent as JDBC batches of at most {@link #batchSize} rows, generated keys
+     * are written back to rows that had no id. Rows with a {@code @Version} column are
+     * updated one statement at a time, a row that was changed by another writer is not
+     * updated and only its own changes stay pending.
+     *
+     * @param connection  the connection to use
+     * @param dataObjects the data objects to save
+     * @param rows        collects the written rows, to be recorded as stored once committed
+     * @return the version conflicts by data object, empty if every row was written
+     * @throws SQLException if a database access error occurs, the transaction is rolled back
+     */
+    private Map<DataObject, OptimisticLockException> saveBatch(Connection connection, Collection<? extends DataObject> dataObjects,
+                                                              WrittenRows rows) throws SQLException {
+        Map<String, List<EntityRow>> upserts = new LinkedHashMap<>();
+        Map<String, List<EntityRow>> newRows = new LinkedHashMap<>();
+        Map<EntityRow, EntityRow> versionedUpdates = new LinkedHashMap<>();
+        // Build and check every row before draining any change tracker, draining discards
+        // the dirty marks of in-place changes unless they are put back on failure
+        List<EntityRow> built = new ArrayList<>(dataObjects.size());
+        for (DataObject dataObject : dataObjects) {
+            EntityRow row = toRow(dataObject);
+            if (row.metadata.getIdColumn() == null) {
+                throw new SQLException("No @Id field found in data object");
+            }
+            built.add(row);
+        }
+        WrittenRows batch = new WrittenRows();
+        for (EntityRow row : built) {
+            boolean isNew = row.isNew();
+            EntityRow changes = changedRow(row);
+            if (row.id == null || (isNew && row.isVersioned())) {
+                newRows.computeIfAbsent(row.metadata.getTableName(), key -> new ArrayList<>()).add(row);
+            } else {
+                if (changes.columns.isEmpty()) {
+                    continue;
+                }
+                if (row.isVersioned()) {
+                    versionedUpdates.put(row, changes);
+                } else {
+                    String sql = getEntitySql(row.metadata.getType()).upsert(row.columns, changes.columns);
+                    upserts.computeIfAbsent(sql, key -> new ArrayList<>()).add(row);
+                }
+            }
+            batch.add(row, changes, row.id == null);
+        }
+        if (batch.written.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        Map<DataObject, OptimisticLockException> conflicts;
+        try {
+            Set<String> tables = new HashSet<>();
+            for (EntityRow row : batch.written) {
+                if (tables.add(row.metadata.getTableName())) {
+                    applyPendingColumns(connection, row.metadata.getTableName());
+                }
+            }
+            conflicts = inTransaction(connection, tx -> {
+                for (Map.Entry<String, List<EntityRow>> group : upserts.entrySet()) {
+                    try (PreparedStatement ps = tx.prepareStatement(group.getKey())) {
+                        executeBatches(ps, group.getValue(), false);
+                    }
+                }
+
+                // A conflicting update matches no row and changes nothing, so the rest of
+                // the transaction can go on without it
+                Map<DataObject, OptimisticLockException> conflicted = new IdentityHashMap<>();
+                for (Map.Entry<EntityRow, EntityRow> update : versionedUpdates.entrySet()) {
+                    try {
+                        updateVersioned(tx, update.getKey(), update.getValue());
+                    } catch (OptimisticLockException e) {
+                        conflicted.put(update.getKey().object, e);
+                    }
+                }
+
+                for (Map.Entry<String, List<EntityRow>> group : newRows.entrySet()) {
+                    insertRows(tx, group.getKey(), group.getValue());
+                }
+                return conflicted;
+            });
+        } catch (SQLException | RuntimeException e) {
+            batch.rolledBack();
+            throw e;
+        }
+        if (!conflicts.isEmpty()) {
+            batch.discard(conflicts.keySet());
+        }
+        rows.addAll(batch);
+        return conflicts;
+    }
+
+    /**
+     * Resolves each column of a result set to its mapped field, once per result set.
+     *
+     * @param metadata the entity metadata
+     * @param rs       the result set
+     * @return the column plan
+     * @throws SQLException if a database access error occurs
+     */
+    private ColumnPlan columnPlan(EntityMetadata<?> metadata, ResultSet rs) throws SQLException {
+        ResultSetMetaData metaData = rs.getMetaData();
+        EntitySql sql = getEntitySql(metadata.getType());
+        int count = metaData.getColumnCount();
+        ColumnPlan plan = new ColumnPlan(new String[count], new ColumnMetadata[count], new TypeCodec<?>[count],
+                new int[count], sql.getMapper());
+        for (int i = 0; i < count; i++) {
+            plan.labels[i] = metaData.getColumnLabel(i + 1);
+            plan.columns[i] = metadata.getColumn(plan.labels[i]);
+            if (plan.columns[i] != null) {
+                plan.codecs[i] = sql.getCodec(plan.columns[i]);
+                plan.positions[i] = sql.getPosition(plan.columns[i]);
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * Creates a data object from the current row of a result set. Mapped columns are written
+     * to their fields, through the generated mapper if there is one, every other column is
+     * put into the data map. Relationship fields get unloaded lazy references and lists.
+     *
+     * @param metadata the entity metadata
+     * @param rs       the result set positioned on a row
+     * @param plan     the column plan from {@link #columnPlan(EntityMetadata, ResultSet)}
+     * @param <T>      the type of the data object
+     * @return the data object
+     * @throws SQLException                 if a database access error occurs
+     * @throws ReflectiveOperationException if the data object cannot be created
+     */
+    private <T extends DataObject> T mapRow(EntityMetadata<T> metadata, ResultSet rs, ColumnPlan plan)
+            throws SQLException, ReflectiveOperationException {
+        EntityMapper<T> mapper = plan.getMapper();
+        T dataObject = mapper != null ? mapper.create(this) : metadata.newInstance(this);
+        for (int i = 0; i < plan.columns.length; i++) {
+            ColumnMetadata column = plan.columns[i];
+            if (column != null && mapper != null) {
+                mapper.read(rs, i + 1, plan.positions[i], dataObject);
+            } else if (column != null) {
+                column.set(dataObject, plan.codecs[i].read(rs, i + 1));
+            } else {
+                dataObject.getData().put(plan.labels[i], rs.getObject(i + 1));
+            }
+        }
+        if (!metadata.getRelations().isEmpty()) {
+            RelationFetcher.attach(this, dataObject);
+        }
+        if (dataObject.getChangeTracker() != null) {
+            toRow(dataObject).markPersisted();
+        }
+        return dataObject;
+    }
+
+    /**
+     * Gets the ID field from a data object.
+     *
+     * @param dataObject the data object
+     * @param <D>        the type of the data object
+     * @return the ID field as a map entry
+     * @throws SQLException if a database access error occurs
+     */
+    private <D extends DataObject> Entity.EntityEntry getIdField(D dataObject) throws SQLException {
+        ColumnMetadata idColumn = EntityMetadata.of(dataObject).getIdColumn();
+        if (idColumn == null) {
+            return null;
+        }
+        try {
+            return Entity.of(idColumn.getName(), idColumn.get(dataObject));
+        } catch (IllegalStateException e) {
+            throw new SQLException("Failed to access @Id field value", e);
+        }
+    }
+
+    /**
+     * Gets the table name for a data object class.
+     *
+     * @param clazz the class of the data object
+     * @return the table name
+     * @throws IllegalArgumentException if the class does not have a @Table annotation
+     */
+    @Override
+    public String getTableName(Class<? extends DataObject> clazz) {
+        return EntityMetadata.of(clazz).getTableName();
+    }
+
+
+    /**
+     * Creates tables for the specified data object classes.
+     *
+     * @param dataObjectClasses the data object classes
+     * @throws SQLException if a database access error occurs
+     */
+    @SafeVarargs
+    public final void createTablesForDataObjects(Class<? extends DataObject>... dataObjectClasses) throws SQLException {
+        for (Class<? extends DataObject> dataObjectClass : dataObjectClasses) {
+            EntityMetadata<?> metadata = EntityMetadata.of(dataObjectClass);
+            Map<String, String> columns = new LinkedHashMap<>();
+            for (ColumnMetadata column : metadata.getColumns()) {
+                if (column.isId()) {
+                    columns.put(column.getName(), getColumnType(column.getType()) + getPrimaryKeyDefinition(column.isAutoIncrement()));
+                } else if (column.isVersion()) {
+                    columns.put(column.getName(), getColumnType(column.getType()) + " NOT NULL DEFAULT 0");
+                } else {
+                    columns.put(column.getName(), getColumnType(column.getType()));
+                }
+            }
+            createTable(metadata.getTableName(), columns);
+            if (binaryUuids) {
+                migrateUuidColumns(dataObjectClass);
+            }
+            loadSchema(metadata.getTableName());
+            createIndexes(metadata);
+        }
+    }
+
+    /**
+     * Converts the UUID columns of a data object class that still hold UUIDs as text to the
+     * binary form, in place. Runs on connect when binary UUIDs are enabled; columns that are
+     * already binary are left alone, so it is safe to run more than once.
+     *
+     * @param clazz the class of the data object
+     * @throws SQLException if a database access error occurs
+     */
+    public void migrateUuidColumns(Class<? extends DataObject> clazz) throws SQLException {
+        EntityMetadata<?> metadata = EntityMetadata.of(clazz);
+        try (Connection connection = getConnection()) {
+            for (ColumnMetadata column : metadata.getColumns()) {
+                if (column.getType() != UUID.class) {
+                    continue;
+                }
+                int converted = convertUuidColumn(connection, metadata.getTableName(), column.getName());
+                if (converted > 0) {
+                    plugin.getLogger().info("Converted " + converted + " UUIDs in " + metadata.getTableName()
+                            + "." + column.getName() + " to binary");
+                }
+            }
+        }
+    }
+
+    /**
+     * Converts a column holding UUIDs as text to 16-byte binary values.
+     *
+     * @param connection the connection to use
+     * @param tableName  the name of the table
+     * @param column     the name of the column
+     * @return the number of converted values
+     * @throws SQLException if a database access error occurs
+     */
+    protected abstract int convertUuidColumn(Connection connection, String tableName, String column) throws SQLException;
+
+    /**
+     * Creates the declared indexes of a data object class that do not exist yet. An index
+     * that cannot be created, for example a unique index over duplicate values, is logged
+     * and skipped.
+     *
+     * @param metadata the entity metadata
+     * @throws SQLException if the existing indexes cannot be read
+     */
+    protected void createIndexes(EntityMetadata<?> metadata) throws SQLException {
+        if (metadata.getIndexes().isEmpty()) {
+            return;
+        }
+        try (Connection connection = getConnection()) {
+            Set<String> existing = getIndexes(connection, metadata.getTableName());
+            for (IndexMetadata index : metadata.getIndexes()) {
+                if (existing.contains(SchemaRegistry.normalize(index.getName()))) {
+                    continue;
+                }
+                String sql = "CREATE " + (index.isUnique() ? "UNIQUE " : "") + "INDEX " + index.getName()
+                        + " ON " + metadata.getTableName() + " (" + String.join(", ", index.getColumns()) + ")";
+                try (Statement stmt = connection.createStatement()) {
+                    stmt.execute(sql);
+                } catch (SQLException e) {
+                    plugin.getLogger().log(Level.WARNING, "Failed to create index " + index.getName()
+                            + " on " + metadata.getTableName(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the index names of a table from the database.
+     *
+     * @param connection the connection to use
+     * @param tableName  the name of the table
+     * @return the index names in lower case
+     * @throws SQLException if a database access error occurs
+     */
+    protected abstract Set<String> getIndexes(Connection connection, String tableName) throws SQLException;
+
+    /**
+     * Gets the SQL column type for a Java class from its codec.
+     *
+     * @param type the Java class
+     * @return the SQL column type
+     * @throws IllegalArgumentException if the data type is unsupported
+     */
+    public String getColumnType(Class<?> type) {
+        return codecs.resolve(type).getColumnType(getDialect());
+    }
+
+    /**
+     * Gets the SQL dialect of this storage. Called from the constructor, so implementations
+     * must return a constant.
+     *
+     * @return the dialect
+     */
+    protected abstract Dialect getDialect();
+
+    /**
+     * Gets the primary key constraint appended to the type of an @Id column.
+     *
+     * @param autoIncrement whether the database generates the key
+     * @return the primary key definition
+     */
+    protected String getPrimaryKeyDefinition(boolean autoIncrement) {
+        return autoIncrement ? " PRIMARY KEY AUTOINCREMENT" : " PRIMARY KEY";
+    }
+
+    /**
+     * Gets the clause appended to an insert that updates the existing row instead when
+     * the id is already taken.
+     *
+     * @param idColumn      the id column
+     * @param updateColumns the columns to overwrite on the existing row, may be empty
+     * @return the conflict clause
+     */
+    protected abstract String getUpsertClause(String idColumn, List<String> updateColumns);
+
+    /**
+     * The result set column labels and the mapped field of each column, null for columns
+     * that are kept in the data map, with the column positions for the generated mapper.
+     */
+    private static final class ColumnPlan {
+
+        private final String[] labels;
+        private final ColumnMetadata[] columns;
+        private final TypeCodec<?>[] codecs;
+        private final int[] positions;
+        private final EntityMapper<?> mapper;
+
+        private ColumnPlan(String[] labels, ColumnMetadata[] columns, TypeCodec<?>[] codecs,
+                           int[] positions, EntityMapper<?> mapper) {
+            this.labels = labels;
+            this.columns = columns;
+            this.codecs = codecs;
+            this.positions = positions;
+            this.mapper = mapper;
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T extends DataObject> EntityMapper<T> getMapper() {
+            return (EntityMapper<T>) mapper;
+        }
+
+    }
+
+    /**
+     * The class, column and value of a load, used to find an identical load already in flight.
+     */
+    private static final class LoadKey {
+
+        private final Class<?> type;
+        private final String column;
+        private final Object value;
+
+        private LoadKey(Class<?> type, String column, Object value) {
+            this.type = type;
+            this.column = column.toLowerCase(Locale.ROOT);
+            this.value = value instanceof UUID ? value.toString() : value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof LoadKey)) {
+                return false;
+            }
+            LoadKey key = (LoadKey) o;
+            return type == key.type && column.equals(key.column) && Objects.equals(value, key.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, column, value);
+        }
+
+    }
+
+    /**
+     * A transaction running on a borrowed write connection. The connection is available
+     * through {@link #getConnection()} for statements the transaction does not cover.
+     */
+    public final class SqlTransaction implements Transaction {
+
+        private Connection connection;
+        private final WrittenRows rows = new WrittenRows();
+        private final List<DataObject> deleted = new ArrayList<>();
+        private final Set<String> updatedTables = new HashSet<>();
+
+        private SqlTransaction() {
+        }
+
+        /**
+         * Gets the connection of the transaction. It must not be closed, committed or rolled back.
+         *
+         * @return the connection
+         * @throws IllegalStateException if the transaction is over
+         */
+        public Connection getConnection() {
+            if (connection == null) {
+                throw new IllegalStateException("Transaction is not active");
+            }
+            return connection;
+        }
+
+        @Override
+        public <T extends DataObject> T save(T dataObject) throws SQLException {
+            rows.save(getConnection(), dataObject);
+            return dataObject;
+        }
+
+        @Override
+        public boolean delete(DataObject dataObject) throws SQLException {
+            EntityMetadata<DataObject> metadata = EntityMetadata.of(dataObject);
+            if (metadata.getIdColumn() == null) {
+                throw new SQLException("No @Id field found in data object");
+            }
+            Object id = metadata.getIdColumn().get(dataObject);
+            if (id == null) {
+                return false;
+            }
+            String sql = getEntitySql(metadata.getType()).deleteWhere(metadata.getIdColumn().getName());
+            try (PreparedStatement ps = getConnection().prepareStatement(sql)) {
+                setParameter(ps, 1, id);
+                deleted.add(dataObject);
+                return ps.executeUpdate() > 0;
+            }
+        }
+
+        @Override
+        public int update(Class<? extends DataObject> clazz, Map<String, Object> data, Condition... conditions) throws SQLException {
+            if (data.isEmpty()) {
+                return 0;
+            }
+            List<Condition> where = Arrays.asList(conditions);
+            String sql = getEntitySql(clazz).query(QueryShape.of(QueryShape.Kind.UPDATE, QueryShape.columnsOf(data), where));
+            updatedTables.add(getTableName(clazz));
+            return executeWhere(getConnection(), sql, new ArrayList<>(data.values()), where);
+        }
+
+        @Override
+        public int delete(Class<? extends DataObject> clazz, Condition... conditions) throws SQLException {
+            List<Condition> where = Arrays.asList(conditions);
+            String sql = getEntitySql(clazz).query(QueryShape.of(QueryShape.Kind.DELETE, Collections.emptyList(), where));
+            updatedTables.add(getTableName(clazz));
+            return executeWhere(getConnection(), sql, Collections.emptyList(), where);
+        }
+
+        @Override
+        public <T extends DataObject> List<T> find(Query<T> query) throws SQLException {
+            String sql = getEntitySql(query.getType()).query(query.getShape(QueryShape.Kind.SELECT));
+            try {
+                return readQuery(getConnection(), query, sql, query.getParameters(QueryShape.Kind.SELECT).toArray(), false);
+            } catch (ReflectiveOperationException e) {
+                throw new SQLException("Failed to create data object", e);
+            }
+        }
+
+        private <R> R run(Connection connection, TransactionWork<R> work) throws SQLException {
+            this.connection = connection;
+            try {
+                return work.run(this);
+            } finally {
+                this.connection = null;
+            }
+        }
+
+        /**
+         * Records saved rows as stored and updates the cache once the transaction committed.
+         */
+        private void committed() {
+            rows.committed();
+            if (cache != null) {
+                deleted.forEach(cache::invalidate);
+                updatedTables.forEach(cache::invalidateTable);
+            }
+        }
+
+        private void rolledBack() {
+            rows.rolledBack();
+        }
+
+    }
+
+    /**
+     * The rows written by one write, recorded as stored once it is committed. A write can
+     * still be rolled back after its statements ran, for example when the group commit it
+     * is part of fails, so the change trackers must keep the changes until then.
+     */
+    private final class WrittenRows {
+
+        private final List<EntityRow> written = new ArrayList<>();
+        private final List<EntityRow> changes = new ArrayList<>();
+        private final List<EntityRow> inserted = new ArrayList<>();
+
+        /**
+         * Writes a data object with {@link #writeRow(Connection, EntityRow)} and remembers its
+         * row if anything was written.
+         */
+        private void save(Connection connection, DataObject dataObject) throws SQLException {
+            EntityRow row = toRow(dataObject);
+            boolean generated = row.id == null;
+            EntityRow rowChanges = writeRow(connection, row);
+            if (rowChanges != null) {
+                add(row, rowChanges, generated);
+            }
+        }
+
+        private void add(EntityRow row, EntityRow rowChanges, boolean generated) {
+            written.add(row);
+            changes.add(rowChanges);
+            if (generated) {
+                inserted.add(row);
+            }
+        }
+
+        private void addAll(WrittenRows rows) {
+            written.addAll(rows.written);
+            changes.addAll(rows.changes);
+            inserted.addAll(rows.inserted);
+        }
+
+        /**
+         * Drops the rows of data objects that were not written, putting their changes back
+         * as pending.
+         */
+        private void discard(Set<DataObject> dataObjects) {
+            for (int i = written.size() - 1; i >= 0; i--) {
+                if (dataObjects.contains(written.get(i).object)) {
+                    written.remove(i);
+                    changes.remove(i).markChanged();
+                }
+            }
+        }
+
+        /**
+         * Completes the write, for use with {@link CompletableFuture#whenComplete}.
+         */
+        private void completed(Object result, Throwable error) {
+            if (error == null) {
+                committed();
+            } else {
+                rolledBack();
+            }
+        }
+
+        /**
+         * Records the written rows as stored and caches their data objects.
+         */
+        private void committed() {
+            written.forEach(SQLStorage.this::persisted);
+        }
+
+        /**
+         * Puts the changes of written rows back as pending, restores their versions and clears
+         * ids generated by inserts that were rolled back.
+         */
+        private void rolledBack() {
+            changes.forEach(EntityRow::markChanged);
+            written.forEach(EntityRow::restoreVersion);
+            for (EntityRow row : inserted) {
+                ColumnMetadata idColumn = row.metadata.getIdColumn();
+                if (idColumn.isAutoIncrement()) {
+                    idColumn.set(row.object, null);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * The columns and values of a data object as they are written to its table.
+     */
+    private static final class EntityRow {
+
+        private final DataObject object;
+        private final EntityMetadata<DataObject> metadata;
+        private final List<String> columns;
+        private final List<Object> values;
+        private final List<TypeCodec<?>> codecs;
+        private final Object id;
+
+        /**
+         * The position of the @Version column in the values, or -1 if the row has none.
+         */
+        private int versionPosition = -1;
+
+        /**
+         * The version the data object had before this row changed it.
+         */
+        private Object previousVersion;
+        private boolean versionChanged;
+
+        private EntityRow(DataObject object, EntityMetadata<DataObject> metadata, List<String> columns,
+                          List<Object> values, List<TypeCodec<?>> codecs, Object id) {
+            this.object = object;
+            this.metadata = metadata;
+            this.columns = columns;
+            this.values = values;
+            this.codecs = codecs;
+            this.id = id;
+        }
+
+        /**
+         * Records the values of this row as stored in the database.
+         */
+        private void markPersisted() {
+            ChangeTracker tracker = object.getChangeTracker();
+            if (tracker != null) {
+                tracker.markPersisted(columns, values);
+            }
+        }
+
+        /**
+         * Marks the columns of this row as changed again after a failed write.
+         */
+        private void markChanged() {
+            ChangeTracker tracker = object.getChangeTracker();
+            if (tracker != null) {
+                tracker.markDirty(columns);
+            }
+        }
+
+        private boolean isVersioned() {
+            return versionPosition >= 0;
+        }
+
+        /**
+         * Gets the version the stored row is expected to have, 0 if the data object has none.
+         */
+        private Object getVersion() {
+            Object version = values.get(versionPosition);
+            return version != null ? version : 0;
+        }
+
+        /**
+         * Checks whether the row is new to the database: it has no id, or it has a version
+         * column, no version yet and was never loaded or saved.
+         */
+        private boolean isNew() {
+            if (id == null) {
+                return true;
+            }
+            if (!isVersioned()) {
+                return false;
+            }
+            Object version = values.get(versionPosition);
+            ChangeTracker tracker = object.getChangeTracker();
+            return (version == null || ((Number) version).longValue() == 0)
+                    && (tracker == null || !tracker.isTracked());
+        }
+
+        /**
+         * Sets the version of a row about to be inserted to the first version, if it has none.
+         */
+        private void initVersion() {
+            if (isVersioned()) {
+                Object version = values.get(versionPosition);
+                if (version == null || ((Number) version).longValue() == 0) {
+                    setVersion(metadata.getVersionColumn().nextVersion(null));
+                }
+            }
+        }
+
+        /**
+         * Moves the data object to the version after the one just written over.
+         */
+        private void advanceVersion() {
+            setVersion(metadata.getVersionColumn().nextVersion(getVersion()));
+        }
+
+        /**
+         * Puts the version the data object had back after the write was rolled back.
+         */
+        private void restoreVersion() {
+            if (versionChanged) {
+                values.set(versionPosition, previousVersion);
+                metadata.getVersionColumn().set(object, previousVersion);
+                versionChanged = false;
+            }
+        }
+
+        private void setVersion(Object version) {
+            if (!versionChanged) {
+                previousVersion = values.get(versionPosition);
+                versionChanged = true;
+            }
+            values.set(versionPosition, version);
+            metadata.getVersionColumn().set(object, version);
+        }
+
+    }
 
-}
\ No newline at end of file
+}
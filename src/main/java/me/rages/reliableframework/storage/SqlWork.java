@@ -0,0 +1,23 @@
+package me.rages.reliableframework.storage;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Database work run on a borrowed connection.
+ *
+ * @param <R> the type of the result
+ */
+@FunctionalInterface
+public interface SqlWork<R> {
+
+    /**
+     * Runs the work. The connection is owned by the caller and must not be closed.
+     *
+     * @param connection the connection to use
+     * @return the result
+     * @throws SQLException if a database access error occurs
+     */
+    R execute(Connection connection) throws SQLException;
+
+}
@@ -0,0 +1,102 @@
+package me.rages.reliableframework.storage;
+
+import me.rages.reliableframework.data.DataObject;
+import me.rages.reliableframework.storage.query.Condition;
+import me.rages.reliableframework.storage.query.Query;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The operations available inside {@link Database#transaction(TransactionWork)}.
+ * <p>
+ * Everything runs synchronously on the transaction's connection and is committed together
+ * once the work returns, or rolled back if it throws. Saved data objects only count as
+ * stored, and are only cached, after the commit; if the transaction rolls back their
+ * changes stay pending for the next save.
+ */
+public interface Transaction {
+
+    /**
+     * The isolation level of a transaction.
+     */
+    enum Isolation {
+        /**
+         * Keep the level the connection already has.
+         */
+        DEFAULT(-1),
+        READ_UNCOMMITTED(Connection.TRANSACTION_READ_UNCOMMITTED),
+        READ_COMMITTED(Connection.TRANSACTION_READ_COMMITTED),
+        REPEATABLE_READ(Connection.TRANSACTION_REPEATABLE_READ),
+        SERIALIZABLE(Connection.TRANSACTION_SERIALIZABLE);
+
+        private final int level;
+
+        Isolation(int level) {
+            this.level = level;
+        }
+
+        /**
+         * Gets the JDBC isolation level.
+         *
+         * @return the {@link Connection} constant, or -1 for {@link #DEFAULT}
+         */
+        public int getLevel() {
+            return level;
+        }
+    }
+
+    /**
+     * Saves a data object, inserting it if it has no id yet.
+     *
+     * @param dataObject the data object
+     * @param <T>        the type of the data object
+     * @return the data object, with its generated id if it was inserted
+     * @throws SQLException if a database access error occurs
+     */
+    <T extends DataObject> T save(T dataObject) throws SQLException;
+
+    /**
+     * Deletes the row of a data object by its id.
+     *
+     * @param dataObject the data object
+     * @return true if a row was deleted
+     * @throws SQLException if a database access error occurs
+     */
+    boolean delete(DataObject dataObject) throws SQLException;
+
+    /**
+     * Updates the rows of a data object class matching all given conditions.
+     *
+     * @param clazz      the class of the data objects
+     * @param data       the values to set by column
+     * @param conditions the conditions, joined with AND
+     * @return the number of updated rows
+     * @throws SQLException if a database access error occurs
+     */
+    int update(Class<? extends DataObject> clazz, Map<String, Object> data, Condition... conditions) throws SQLException;
+
+    /**
+     * Deletes the rows of a data object class matching all given conditions.
+     *
+     * @param clazz      the class of the data objects
+     * @param conditions the conditions, joined with AND
+     * @return the number of deleted rows
+     * @throws SQLException if a database access error occurs
+     */
+    int delete(Class<? extends DataObject> clazz, Condition... conditions) throws SQLException;
+
+    /**
+     * Runs a query inside the transaction, seeing its uncommitted changes. Relationships
+     * named with {@link Query#fetch(String...)} are not resolved.
+     *
+     * @param query the query
+     * @param <T>   the type of the data objects
+     * @return the matching data objects
+     * @throws SQLException if a database access error occurs
+     */
+    <T extends DataObject> List<T> find(Query<T> query) throws SQLException;
+
+}
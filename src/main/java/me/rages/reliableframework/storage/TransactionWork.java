@@ -0,0 +1,22 @@
+package me.rages.reliableframework.storage;
+
+import java.sql.SQLException;
+
+/**
+ * Work run inside a {@link Transaction}.
+ *
+ * @param <R> the type of the result
+ */
+@FunctionalInterface
+public interface TransactionWork<R> {
+
+    /**
+     * Runs the work. Throwing rolls the transaction back.
+     *
+     * @param transaction the transaction
+     * @return the result
+     * @throws SQLException if a database access error occurs
+     */
+    R run(Transaction transaction) throws SQLException;
+
+}
@@ -0,0 +1,272 @@
+package me.rages.reliableframework.storage;
+
+import me.rages.reliableframework.data.DataObject;
+import me.rages.reliableframework.data.metadata.ColumnMetadata;
+import me.rages.reliableframework.data.metadata.EntityMetadata;
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.logging.Level;
+
+/**
+ * Queues saves and writes them in batches.
+ * <p>
+ * Saving an object that is already queued does not add a second write, both callers
+ * wait on the same pending write. Pending objects are written on a fixed interval or as
+ * soon as the batch size is reached, in one transaction per flush. Flushes run one after
+ * another so a later save of the same object can never be overtaken by an earlier one.
+ * <p>
+ * A flush that fails puts its objects back to be written with the next one, unless they
+ * were queued again in the meantime, and only fails their saves once they are out of
+ * retries. A version conflict is not retried and only fails the saves of the conflicting
+ * object.
+ */
+public class WriteBehindQueue {
+
+    private final SQLStorage storage;
+    private final int batchSize;
+    private final int maxRetries;
+    private final Map<Object, PendingWrite> pending = new LinkedHashMap<>();
+    private CompletableFuture<Void> lastFlush = CompletableFuture.completedFuture(null);
+    private BukkitTask task;
+
+    /**
+     * Constructs a write-behind queue retrying failed writes 3 times and starts its flush timer.
+     *
+     * @param storage   the storage to write to
+     * @param interval  the time between flushes, in milliseconds
+     * @param batchSize the number of pending objects that triggers an early flush
+     */
+    public WriteBehindQueue(SQLStorage storage, long interval, int batchSize) {
+        this(storage, interval, batchSize, 3);
+    }
+
+    /**
+     * Constructs a write-behind queue and starts its flush timer.
+     *
+     * @param storage    the storage to write to
+     * @param interval   the time between flushes, in milliseconds
+     * @param batchSize  the number of pending objects that triggers an early flush
+     * @param maxRetries the number of later flushes a failed write is retried with
+     */
+    public WriteBehindQueue(SQLStorage storage, long interval, int batchSize, int maxRetries) {
+        this.storage = storage;
+        this.batchSize = batchSize;
+        this.maxRetries = maxRetries;
+        long ticks = Math.max(1L, interval / 50L);
+        this.task = Bukkit.getScheduler().runTaskTimerAsynchronously(storage.plugin, this::flush, ticks, ticks);
+    }
+
+    /**
+     * Creates a write-behind queue from a configuration section.
+     *
+     * @param storage the storage to write to
+     * @param section the {@code storage.write-behind} section, may be null
+     * @return the write-behind queue, or null if write-behind is disabled
+     */
+    public static WriteBehindQueue fromConfig(SQLStorage storage, ConfigurationSection section) {
+        if (section == null || !section.getBoolean("enabled", false)) {
+            return null;
+        }
+        return new WriteBehindQueue(
+                storage,
+                section.getLong("interval", 1000L),
+                Math.max(1, section.getInt("batch-size", 500)),
+                Math.max(0, section.getInt("max-retries", 3))
+        );
+    }
+
+    /**
+     * Queues a data object to be saved with the next flush.
+     *
+     * @param dataObject the data object to save
+     * @param <T>        the type of the data object
+     * @return a future completing once the object's row is committed
+     */
+    public synchronized <T extends DataObject> CompletableFuture<T> enqueue(T dataObject) {
+        Object key = keyOf(dataObject);
+        PendingWrite write = pending.get(key);
+        if (write == null) {
+            write = new PendingWrite(dataObject);
+            pending.put(key, write);
+        } else {
+            write.dataObject = dataObject;
+        }
+        CompletableFuture<T> result = write.future.thenApply(ignored -> dataObject);
+        if (pending.size() >= batchSize) {
+            flush();
+        }
+        return result;
+    }
+
+    /**
+     * Writes every pending object now.
+     *
+     * @return a future completing once the flush is committed
+     */
+    public synchronized CompletableFuture<Void> flush() {
+        if (pending.isEmpty()) {
+            return lastFlush;
+        }
+        List<PendingWrite> batch = new ArrayList<>(pending.values());
+        pending.clear();
+        lastFlush = lastFlush
+                .handle((ignored, ex) -> null)
+                .thenCompose(ignored -> write(batch))
+                .whenComplete((conflicts, ex) -> {
+                    if (ex != null) {
+                        retry(batch, ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex);
+                        return;
+                    }
+                    for (PendingWrite write : batch) {
+                        OptimisticLockException conflict = conflicts.get(write.dataObject);
+                        if (conflict != null) {
+                            write.future.completeExceptionally(conflict);
+                        } else {
+                            write.future.complete(null);
+                        }
+                    }
+                })
+                .thenApply(conflicts -> null);
+        return lastFlush;
+    }
+
+    /**
+     * Puts the writes of a failed flush back to be retried with the next one. A write whose
+     * object was queued again since then completes with the newer write, which saves the
+     * latest state of the object. A write out of retries fails with the cause.
+     *
+     * @param batch the writes of the failed flush
+     * @param cause the failure
+     */
+    private synchronized void retry(List<PendingWrite> batch, Throwable cause) {
+        int failed = 0;
+        for (PendingWrite write : batch) {
+            if (++write.attempts > maxRetries) {
+                write.future.completeExceptionally(cause);
+                failed++;
+                continue;
+            }
+            Object key = keyOf(write.dataObject);
+            PendingWrite newer = pending.putIfAbsent(key, write);
+            if (newer != null) {
+                newer.future.whenComplete((ignored, ex) -> {
+                    if (ex != null) {
+                        write.future.completeExceptionally(ex);
+                    } else {
+                        write.future.complete(null);
+                    }
+                });
+            }
+        }
+        if (failed > 0) {
+            storage.plugin.getLogger().log(Level.SEVERE, "Failed to write " + failed + " queued saves, giving up after "
+                    + maxRetries + " retries", cause);
+        } else {
+            storage.plugin.getLogger().log(Level.WARNING, "Failed to write " + batch.size()
+                    + " queued saves, retrying with the next flush", cause);
+        }
+    }
+
+    /**
+     * Gets the number of objects waiting for the next flush.
+     *
+     * @return the pending count
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Stops the flush timer and writes everything still pending, waiting for it to commit.
+     * Failed writes are retried right away until they succeed or are out of retries.
+     */
+    public void close() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        do {
+            try {
+                flush().join();
+            } catch (RuntimeException e) {
+                // Logged by retry, the failed writes are pending again or failed for good
+            }
+        } while (getPendingCount() > 0);
+    }
+
+    private CompletableFuture<Map<DataObject, OptimisticLockException>> write(List<PendingWrite> batch) {
+        List<DataObject> dataObjects = new ArrayList<>(batch.size());
+        for (PendingWrite write : batch) {
+            dataObjects.add(write.dataObject);
+        }
+        return storage.writeBatch(dataObjects);
+    }
+
+    /**
+     * Gets the key pending writes are coalesced on: the class and id of the object,
+     * or the object itself if it has no id yet.
+     *
+     * @param dataObject the data object
+     * @return the coalescing key
+     */
+    private static Object keyOf(DataObject dataObject) {
+        ColumnMetadata idColumn = EntityMetadata.of(dataObject).getIdColumn();
+        Object id = idColumn != null ? idColumn.get(dataObject) : null;
+        if (id == null) {
+            return new IdentityKey(dataObject);
+        }
+        return new AbstractMap.SimpleImmutableEntry<>(dataObject.getClass(), id);
+    }
+
+    /**
+     * A queued object and the future shared by every save coalesced into it.
+     */
+    private static final class PendingWrite {
+
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        private DataObject dataObject;
+
+        /**
+         * The number of failed flushes this write was part of.
+         */
+        private int attempts;
+
+        private PendingWrite(DataObject dataObject) {
+            this.dataObject = dataObject;
+        }
+
+    }
+
+    /**
+     * Compares data objects by identity, for objects that do not have an id yet.
+     */
+    private static final class IdentityKey {
+
+        private final DataObject dataObject;
+
+        private IdentityKey(DataObject dataObject) {
+            this.dataObject = dataObject;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof IdentityKey && ((IdentityKey) o).dataObject == dataObject;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(dataObject);
+        }
+
+    }
+
+}
@@ -0,0 +1,344 @@
+package me.rages.reliableframework.storage.cache;
+
+import me.rages.reliableframework.data.DataObject;
+import me.rages.reliableframework.data.metadata.ColumnMetadata;
+import me.rages.reliableframework.data.metadata.EntityMetadata;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A size and time bounded identity cache of loaded data objects.
+ * <p>
+ * Each cached object is stored once under its class and id. Loads by any other column,
+ * such as {@code player_uuid}, register that column and value as a secondary key pointing
+ * at the same entry, so every lookup of the same row returns the same instance. Entries are
+ * evicted least recently used first once the maximum size is reached, and expire when they
+ * have not been read or written for the configured time.
+ */
+public class EntityCache {
+
+    private final int maximumSize;
+    private final long expireAfterAccess;
+    private final Map<Key, CachedEntry> entries;
+    private final Map<Key, Key> secondaryKeys = new HashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Constructs an entity cache.
+     *
+     * @param maximumSize       the maximum number of cached objects
+     * @param expireAfterAccess how long, in milliseconds, an unused object stays cached
+     */
+    public EntityCache(int maximumSize, long expireAfterAccess) {
+        this.maximumSize = maximumSize;
+        this.expireAfterAccess = expireAfterAccess;
+        this.entries = new LinkedHashMap<Key, CachedEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CachedEntry> eldest) {
+                if (size() <= EntityCache.this.maximumSize) {
+                    return false;
+                }
+                removeSecondaryKeys(eldest.getValue());
+                evictions.increment();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Creates an entity cache from a configuration section.
+     *
+     * @param section the {@code storage.cache} section, may be null
+     * @return the entity cache, or null if caching is disabled
+     */
+    public static EntityCache fromConfig(ConfigurationSection section) {
+        if (section == null || !section.getBoolean("enabled", false)) {
+            return null;
+        }
+        return new EntityCache(
+                Math.max(1, section.getInt("maximum-size", 10_000)),
+                section.getLong("expire-after-access", 600_000L)
+        );
+    }
+
+    /**
+     * Gets a cached data object by a column value.
+     *
+     * @param type   the class of the data object
+     * @param column the column the object is looked up by
+     * @param value  the column value
+     * @param <T>    the type of the data object
+     * @return the cached data object, or null if it is not cached
+     */
+    public synchronized <T extends DataObject> T get(Class<T> type, String column, Object value) {
+        Key key = new Key(type, column, value);
+        Key primary = secondaryKeys.getOrDefault(key, key);
+        CachedEntry entry = entries.get(primary);
+        if (entry == null || isExpired(entry)) {
+            if (entry != null) {
+                remove(primary);
+            }
+            misses.increment();
+            return null;
+        }
+        entry.touch();
+        hits.increment();
+        return type.cast(entry.dataObject);
+    }
+
+    /**
+     * Caches a loaded data object unless the same row is already cached, in which case the
+     * cached instance wins so callers keep sharing one object per row.
+     *
+     * @param dataObject the loaded data object
+     * @param column     the column the object was loaded by
+     * @param value      the column value it was loaded by
+     * @param <T>        the type of the data object
+     * @return the cached instance for the row
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized <T extends DataObject> T putIfAbsent(T dataObject, String column, Object value) {
+        Key primary = primaryKey(dataObject);
+        if (primary == null) {
+            return dataObject;
+        }
+        CachedEntry entry = entries.get(primary);
+        if (entry == null || isExpired(entry)) {
+            if (entry != null) {
+                remove(primary);
+            }
+            entry = new CachedEntry(primary, dataObject);
+            entries.put(primary, entry);
+        }
+        entry.touch();
+        addSecondaryKey(entry, new Key(dataObject.getClass(), column, value));
+        return (T) entry.dataObject;
+    }
+
+    /**
+     * Caches a data object that was just saved, replacing any cached instance of the same row.
+     * Secondary keys are re-resolved against the object's current values.
+     *
+     * @param dataObject the saved data object
+     */
+    public synchronized void put(DataObject dataObject) {
+        Key primary = primaryKey(dataObject);
+        if (primary == null) {
+            return;
+        }
+        CachedEntry entry = entries.get(primary);
+        Set<String> columns = new HashSet<>();
+        if (entry != null) {
+            for (Key key : entry.secondaryKeys) {
+                columns.add(key.column);
+            }
+            removeSecondaryKeys(entry);
+        }
+        entry = new CachedEntry(primary, dataObject);
+        entries.put(primary, entry);
+        entry.touch();
+
+        EntityMetadata<DataObject> metadata = EntityMetadata.of(dataObject);
+        for (String column : columns) {
+            ColumnMetadata mapped = metadata.getColumn(column);
+            Object value = mapped != null ? mapped.get(dataObject) : dataObject.getData().get(column);
+            if (value != null) {
+                addSecondaryKey(entry, new Key(dataObject.getClass(), column, value));
+            }
+        }
+    }
+
+    /**
+     * Removes a data object from the cache.
+     *
+     * @param dataObject the data object
+     */
+    public synchronized void invalidate(DataObject dataObject) {
+        Key primary = primaryKey(dataObject);
+        if (primary != null) {
+            remove(primary);
+        }
+    }
+
+    /**
+     * Removes every cached data object stored in a table, used after writes the cache
+     * cannot attribute to single rows.
+     *
+     * @param tableName the name of the table
+     */
+    public synchronized void invalidateTable(String tableName) {
+        Iterator<CachedEntry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            CachedEntry entry = iterator.next();
+            if (EntityMetadata.of(entry.dataObject).getTableName().equalsIgnoreCase(tableName)) {
+                removeSecondaryKeys(entry);
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes every cached data object.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        secondaryKeys.clear();
+    }
+
+    /**
+     * Gets the number of cached data objects.
+     *
+     * @return the cache size
+     */
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    /**
+     * Gets how many lookups were served from the cache.
+     *
+     * @return the hit count
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Gets how many lookups had to go to the database.
+     *
+     * @return the miss count
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Gets how many data objects were evicted to stay within the maximum size.
+     *
+     * @return the eviction count
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Gets the share of lookups served from the cache.
+     *
+     * @return the hit rate between 0 and 1, or 0 if nothing was looked up yet
+     */
+    public double getHitRate() {
+        long hits = getHits();
+        long total = hits + getMisses();
+        return total == 0 ? 0D : (double) hits / total;
+    }
+
+    private boolean isExpired(CachedEntry entry) {
+        return System.currentTimeMillis() - entry.lastAccess > expireAfterAccess;
+    }
+
+    private void remove(Key primary) {
+        CachedEntry entry = entries.remove(primary);
+        if (entry != null) {
+            removeSecondaryKeys(entry);
+        }
+    }
+
+    private void addSecondaryKey(CachedEntry entry, Key key) {
+        if (key.equals(entry.key)) {
+            return;
+        }
+        Key previous = secondaryKeys.put(key, entry.key);
+        if (previous != null && !previous.equals(entry.key)) {
+            CachedEntry stale = entries.get(previous);
+            if (stale != null) {
+                stale.secondaryKeys.remove(key);
+            }
+        }
+        entry.secondaryKeys.add(key);
+    }
+
+    private void removeSecondaryKeys(CachedEntry entry) {
+        for (Key key : entry.secondaryKeys) {
+            secondaryKeys.remove(key, entry.key);
+        }
+        entry.secondaryKeys.clear();
+    }
+
+    private static Key primaryKey(DataObject dataObject) {
+        ColumnMetadata idColumn = EntityMetadata.of(dataObject).getIdColumn();
+        Object id = idColumn != null ? idColumn.get(dataObject) : null;
+        return id != null ? new Key(dataObject.getClass(), idColumn.getName(), id) : null;
+    }
+
+    /**
+     * A cached data object and the secondary keys pointing at it.
+     */
+    private static final class CachedEntry {
+
+        private final Key key;
+        private final DataObject dataObject;
+        private final Set<Key> secondaryKeys = new HashSet<>();
+        private long lastAccess;
+
+        private CachedEntry(Key key, DataObject dataObject) {
+            this.key = key;
+            this.dataObject = dataObject;
+        }
+
+        private void touch() {
+            lastAccess = System.currentTimeMillis();
+        }
+
+    }
+
+    /**
+     * A class, column and value. Column names are compared case-insensitively, UUIDs by their
+     * string form and whole numbers by their long value, matching how values come back from
+     * the database.
+     */
+    private static final class Key {
+
+        private final Class<?> type;
+        private final String column;
+        private final Object value;
+
+        private Key(Class<?> type, String column, Object value) {
+            this.type = type;
+            this.column = column.toLowerCase(Locale.ROOT);
+            this.value = normalize(value);
+        }
+
+        private static Object normalize(Object value) {
+            if (value instanceof UUID) {
+                return value.toString();
+            }
+            if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+                return ((Number) value).longValue();
+            }
+            return value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return type == key.type && column.equals(key.column) && Objects.equals(value, key.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, column, value);
+        }
+
+    }
+
+}
@@ -0,0 +1,62 @@
+package me.rages.reliableframework.storage.codec;
+
+import me.rages.reliableframework.storage.sql.Dialect;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.util.io.BukkitObjectInputStream;
+import org.bukkit.util.io.BukkitObjectOutputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Stores an item stack array as a blob: the length followed by each item, written with
+ * Bukkit's object serialization. Empty slots are kept as nulls.
+ */
+public class ItemStackArrayCodec implements TypeCodec<ItemStack[]> {
+
+    @Override
+    public Class<ItemStack[]> getType() {
+        return ItemStack[].class;
+    }
+
+    @Override
+    public String getColumnType(Dialect dialect) {
+        return dialect == Dialect.MYSQL ? "MEDIUMBLOB" : "BLOB";
+    }
+
+    @Override
+    public void bind(PreparedStatement ps, int index, ItemStack[] value) throws SQLException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (BukkitObjectOutputStream out = new BukkitObjectOutputStream(bytes)) {
+            out.writeInt(value.length);
+            for (ItemStack item : value) {
+                out.writeObject(item);
+            }
+        } catch (IOException e) {
+            throw new SQLException("Failed to serialize item stacks", e);
+        }
+        ps.setBytes(index, bytes.toByteArray());
+    }
+
+    @Override
+    public ItemStack[] read(ResultSet rs, int index) throws SQLException {
+        byte[] bytes = rs.getBytes(index);
+        if (bytes == null) {
+            return null;
+        }
+        try (BukkitObjectInputStream in = new BukkitObjectInputStream(new ByteArrayInputStream(bytes))) {
+            ItemStack[] items = new ItemStack[in.readInt()];
+            for (int i = 0; i < items.length; i++) {
+                items[i] = (ItemStack) in.readObject();
+            }
+            return items;
+        } catch (IOException | ClassNotFoundException e) {
+            throw new SQLException("Failed to deserialize item stacks", e);
+        }
+    }
+
+}
@@ -0,0 +1,50 @@
+package me.rages.reliableframework.storage.codec;
+
+import me.rages.reliableframework.storage.sql.Dialect;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * A codec assembled from its column types and binder and reader functions.
+ *
+ * @param <T> the Java type
+ */
+final class SimpleTypeCodec<T> implements TypeCodec<T> {
+
+    private final Class<T> type;
+    private final String mysqlType;
+    private final String sqliteType;
+    private final Binder<T> binder;
+    private final Reader<T> reader;
+
+    SimpleTypeCodec(Class<T> type, String mysqlType, String sqliteType, Binder<T> binder, Reader<T> reader) {
+        this.type = type;
+        this.mysqlType = mysqlType;
+        this.sqliteType = sqliteType;
+        this.binder = binder;
+        this.reader = reader;
+    }
+
+    @Override
+    public Class<T> getType() {
+        return type;
+    }
+
+    @Override
+    public String getColumnType(Dialect dialect) {
+        return dialect == Dialect.MYSQL ? mysqlType : sqliteType;
+    }
+
+    @Override
+    public void bind(PreparedStatement ps, int index, T value) throws SQLException {
+        binder.bind(ps, index, value);
+    }
+
+    @Override
+    public T read(ResultSet rs, int index) throws SQLException {
+        return reader.read(rs, index);
+    }
+
+}
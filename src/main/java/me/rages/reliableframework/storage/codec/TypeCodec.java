@@ -0,0 +1,111 @@
+package me.rages.reliableframework.storage.codec;
+
+import me.rages.reliableframework.storage.sql.Dialect;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Maps a Java type to a column: its SQL type in each dialect, how a value is bound to a
+ * statement parameter and how it is read back from a result set.
+ * <p>
+ * Codecs are resolved once per mapped column, so binding and reading a row calls the
+ * typed JDBC methods directly instead of going through {@code setObject}/{@code getObject}
+ * and converting the result.
+ *
+ * @param <T> the Java type
+ */
+public interface TypeCodec<T> {
+
+    /**
+     * Binds a value to a statement parameter.
+     *
+     * @param <T> the Java type
+     */
+    @FunctionalInterface
+    interface Binder<T> {
+
+        /**
+         * Binds a non-null value.
+         *
+         * @param ps    the statement
+         * @param index the parameter index
+         * @param value the value
+         * @throws SQLException if a database access error occurs
+         */
+        void bind(PreparedStatement ps, int index, T value) throws SQLException;
+
+    }
+
+    /**
+     * Reads a value from a result set column.
+     *
+     * @param <T> the Java type
+     */
+    @FunctionalInterface
+    interface Reader<T> {
+
+        /**
+         * Reads the value of a column in the current row.
+         *
+         * @param rs    the result set
+         * @param index the column index
+         * @return the value, or null if the column is SQL NULL
+         * @throws SQLException if a database access error occurs
+         */
+        T read(ResultSet rs, int index) throws SQLException;
+
+    }
+
+    /**
+     * Creates a codec from its column types and functions.
+     *
+     * @param type       the Java type
+     * @param mysqlType  the column type on MySQL
+     * @param sqliteType the column type on SQLite
+     * @param binder     binds non-null values
+     * @param reader     reads values, returning null for SQL NULL
+     * @param <T>        the Java type
+     * @return the codec
+     */
+    static <T> TypeCodec<T> of(Class<T> type, String mysqlType, String sqliteType, Binder<T> binder, Reader<T> reader) {
+        return new SimpleTypeCodec<>(type, mysqlType, sqliteType, binder, reader);
+    }
+
+    /**
+     * Gets the Java type handled by this codec.
+     *
+     * @return the Java type
+     */
+    Class<T> getType();
+
+    /**
+     * Gets the column type used to store values of this codec.
+     *
+     * @param dialect the SQL dialect
+     * @return the column type
+     */
+    String getColumnType(Dialect dialect);
+
+    /**
+     * Binds a non-null value to a statement parameter.
+     *
+     * @param ps    the statement
+     * @param index the parameter index
+     * @param value the value
+     * @throws SQLException if a database access error occurs
+     */
+    void bind(PreparedStatement ps, int index, T value) throws SQLException;
+
+    /**
+     * Reads a value from a result set column.
+     *
+     * @param rs    the result set positioned on a row
+     * @param index the column index
+     * @return the value, or null if the column is SQL NULL
+     * @throws SQLException if a database access error occurs
+     */
+    T read(ResultSet rs, int index) throws SQLException;
+
+}
@@ -0,0 +1,172 @@
+package me.rages.reliableframework.storage.codec;
+
+import me.rages.reliableframework.storage.sql.Dialect;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The codecs a storage maps field types with, looked up by exact Java type.
+ * <p>
+ * Primitive types use the codec of their wrapper and enums get a codec storing the
+ * constant name on first use. Plugins can register codecs for their own types before
+ * the storage connects.
+ */
+public class TypeCodecRegistry {
+
+    private static final Map<Class<?>, Class<?>> WRAPPERS = new HashMap<>();
+
+    static {
+        WRAPPERS.put(int.class, Integer.class);
+        WRAPPERS.put(long.class, Long.class);
+        WRAPPERS.put(boolean.class, Boolean.class);
+        WRAPPERS.put(double.class, Double.class);
+        WRAPPERS.put(float.class, Float.class);
+    }
+
+    private final Map<Class<?>, TypeCodec<?>> codecs = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a registry holding the built-in codecs.
+     *
+     * @param dialect     the dialect values are written in
+     * @param binaryUuids whether UUIDs are stored as 16 bytes instead of text
+     * @return the registry
+     */
+    public static TypeCodecRegistry defaults(Dialect dialect, boolean binaryUuids) {
+        TypeCodecRegistry registry = new TypeCodecRegistry();
+        registry.register(TypeCodec.of(Integer.class, "INT", "INTEGER",
+                (ps, i, value) -> ps.setInt(i, value), (rs, i) -> {
+                    int value = rs.getInt(i);
+                    return rs.wasNull() ? null : value;
+                }));
+        registry.register(TypeCodec.of(Long.class, "BIGINT", "INTEGER",
+                (ps, i, value) -> ps.setLong(i, value), (rs, i) -> {
+                    long value = rs.getLong(i);
+                    return rs.wasNull() ? null : value;
+                }));
+        registry.register(TypeCodec.of(Boolean.class, "TINYINT(1)", "INTEGER",
+                (ps, i, value) -> ps.setBoolean(i, value), (rs, i) -> {
+                    boolean value = rs.getBoolean(i);
+                    return rs.wasNull() ? null : value;
+                }));
+        registry.register(TypeCodec.of(Double.class, "DOUBLE", "REAL",
+                (ps, i, value) -> ps.setDouble(i, value), (rs, i) -> {
+                    double value = rs.getDouble(i);
+                    return rs.wasNull() ? null : value;
+                }));
+        registry.register(TypeCodec.of(Float.class, "FLOAT", "REAL",
+                (ps, i, value) -> ps.setFloat(i, value), (rs, i) -> {
+                    float value = rs.getFloat(i);
+                    return rs.wasNull() ? null : value;
+                }));
+        registry.register(TypeCodec.of(String.class, "VARCHAR(255)", "TEXT",
+                (ps, i, value) -> ps.setString(i, value), (rs, i) -> rs.getString(i)));
+        registry.register(TypeCodec.of(byte[].class, "BLOB", "BLOB",
+                (ps, i, value) -> ps.setBytes(i, value), (rs, i) -> rs.getBytes(i)));
+
+        // Instants are stored as epoch milliseconds so no time zone is involved
+        registry.register(TypeCodec.of(Instant.class, "BIGINT", "INTEGER",
+                (ps, i, value) -> ps.setLong(i, value.toEpochMilli()), (rs, i) -> {
+                    long value = rs.getLong(i);
+                    return rs.wasNull() ? null : Instant.ofEpochMilli(value);
+                }));
+        if (dialect == Dialect.MYSQL) {
+            registry.register(TypeCodec.of(Date.class, "DATETIME", "INTEGER",
+                    (ps, i, value) -> ps.setTimestamp(i, new Timestamp(value.getTime())), (rs, i) -> {
+                        Timestamp value = rs.getTimestamp(i);
+                        return value != null ? new Date(value.getTime()) : null;
+                    }));
+        } else {
+            registry.register(TypeCodec.of(Date.class, "DATETIME", "INTEGER",
+                    (ps, i, value) -> ps.setLong(i, value.getTime()), (rs, i) -> {
+                        long value = rs.getLong(i);
+                        return rs.wasNull() ? null : new Date(value);
+                    }));
+        }
+
+        if (binaryUuids) {
+            registry.register(TypeCodec.of(UUID.class, "BINARY(16)", "BLOB",
+                    (ps, i, value) -> ps.setBytes(i, UuidCodec.toBytes(value)), (rs, i) -> {
+                        byte[] value = rs.getBytes(i);
+                        return value != null ? UuidCodec.fromBytes(value) : null;
+                    }));
+        } else {
+            registry.register(TypeCodec.of(UUID.class, "CHAR(36)", "TEXT",
+                    (ps, i, value) -> ps.setString(i, value.toString()), (rs, i) -> {
+                        String value = rs.getString(i);
+                        return value != null ? UUID.fromString(value) : null;
+                    }));
+        }
+        registry.register(new ItemStackArrayCodec());
+        return registry;
+    }
+
+    /**
+     * Registers a codec, replacing any codec for the same type.
+     *
+     * @param codec the codec
+     * @return this TypeCodecRegistry instance
+     */
+    public TypeCodecRegistry register(TypeCodec<?> codec) {
+        codecs.put(codec.getType(), codec);
+        return this;
+    }
+
+    /**
+     * Gets the codec for a type.
+     *
+     * @param type the Java type
+     * @param <T>  the Java type
+     * @return the codec, or null if the type has none
+     */
+    @SuppressWarnings("unchecked")
+    public <T> TypeCodec<T> get(Class<T> type) {
+        TypeCodec<?> codec = codecs.get(type);
+        if (codec != null) {
+            return (TypeCodec<T>) codec;
+        }
+        Class<?> wrapper = WRAPPERS.get(type);
+        if (wrapper != null) {
+            return (TypeCodec<T>) codecs.get(wrapper);
+        }
+        if (Enum.class.isAssignableFrom(type)) {
+            // Constants with a body are subclasses of their enum
+            Class<?> enumType = type.isEnum() ? type : type.getSuperclass();
+            return (TypeCodec<T>) codecs.computeIfAbsent(enumType, TypeCodecRegistry::enumCodec);
+        }
+        return null;
+    }
+
+    /**
+     * Gets the codec for a type, failing if there is none.
+     *
+     * @param type the Java type
+     * @param <T>  the Java type
+     * @return the codec
+     * @throws IllegalArgumentException if the type has no codec
+     */
+    public <T> TypeCodec<T> resolve(Class<T> type) {
+        TypeCodec<T> codec = get(type);
+        if (codec == null) {
+            throw new IllegalArgumentException("Unsupported data type: " + type.getName());
+        }
+        return codec;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static TypeCodec<?> enumCodec(Class<?> type) {
+        Class<Enum> enumType = (Class<Enum>) type;
+        return TypeCodec.of(enumType, "VARCHAR(64)", "TEXT",
+                (ps, i, value) -> ps.setString(i, value.name()), (rs, i) -> {
+                    String value = rs.getString(i);
+                    return value != null ? Enum.valueOf(enumType, value) : null;
+                });
+    }
+
+}
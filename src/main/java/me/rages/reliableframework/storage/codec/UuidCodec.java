@@ -0,0 +1,64 @@
+package me.rages.reliableframework.storage.codec;
+
+import java.util.UUID;
+
+/**
+ * Converts UUIDs to and from their 16-byte binary form, most significant byte first.
+ * <p>
+ * Both directions work directly on the two halves of the UUID, so encoding allocates
+ * only the 16-byte array and decoding only the UUID, instead of formatting and parsing
+ * the 36-character string form.
+ */
+public final class UuidCodec {
+
+    /**
+     * The length of an encoded UUID in bytes.
+     */
+    public static final int BYTES = 16;
+
+    private UuidCodec() {
+    }
+
+    /**
+     * Encodes a UUID as 16 bytes.
+     *
+     * @param uuid the UUID
+     * @return the encoded bytes
+     */
+    public static byte[] toBytes(UUID uuid) {
+        byte[] bytes = new byte[BYTES];
+        writeLong(bytes, 0, uuid.getMostSignificantBits());
+        writeLong(bytes, 8, uuid.getLeastSignificantBits());
+        return bytes;
+    }
+
+    /**
+     * Decodes a UUID from 16 bytes.
+     *
+     * @param bytes the encoded bytes
+     * @return the UUID
+     * @throws IllegalArgumentException if the array is not 16 bytes long
+     */
+    public static UUID fromBytes(byte[] bytes) {
+        if (bytes.length != BYTES) {
+            throw new IllegalArgumentException("Expected " + BYTES + " bytes for a UUID but got " + bytes.length);
+        }
+        return new UUID(readLong(bytes, 0), readLong(bytes, 8));
+    }
+
+    private static void writeLong(byte[] bytes, int offset, long value) {
+        for (int i = 7; i >= 0; i--) {
+            bytes[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    private static long readLong(byte[] bytes, int offset) {
+        long value = 0L;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+}
@@ -0,0 +1,300 @@
+package me.rages.reliableframework.storage.executor;
+
+import me.rages.reliableframework.storage.SqlWork;
+import me.rages.reliableframework.storage.pool.ConnectionPool;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs every write on one dedicated thread, committing queued writes together.
+ * <p>
+ * The writer takes whatever has queued up since its last commit, up to the maximum group
+ * size, and runs it in a single transaction, so a burst of saves costs one commit instead
+ * of one per save. Each write runs under its own savepoint: a failing write is rolled back
+ * and fails only its own future, the rest of the group still commits. Futures complete
+ * once the group is committed, off the writer thread so callers' continuations never hold
+ * up the next group.
+ * <p>
+ * Submitting never blocks: a write arriving while the queue is full fails right away
+ * instead of stalling the calling thread, which may be the server's main thread.
+ * <p>
+ * With a commit window the writer waits up to that long after the first write of a group
+ * for more to arrive, trading a little latency for fewer commits when writes trickle in
+ * one at a time.
+ * <p>
+ * Work that must not be rolled back with a group, such as schema changes, can run before
+ * each group outside of its transaction.
+ */
+public class GroupCommitWriter {
+
+    private final ConnectionPool.ConnectionFactory connections;
+    private final int maxGroupSize;
+    private final long commitWindow;
+    private final Logger logger;
+    private final SqlWork<?> beforeGroup;
+    private final BlockingQueue<QueuedWrite<?>> queue;
+    private final Thread thread;
+    private final LongAdder groupCount = new LongAdder();
+    private final LongAdder writeCount = new LongAdder();
+    private volatile boolean running = true;
+
+    /**
+     * Constructs a group commit writer without a commit window and starts its thread.
+     *
+     * @param name         the thread name
+     * @param connections  supplies the write connection for each group
+     * @param maxGroupSize the maximum number of writes committed together
+     * @param queueSize    the maximum number of queued writes
+     * @param logger       the logger to report failed commits to
+     */
+    public GroupCommitWriter(String name, ConnectionPool.ConnectionFactory connections, int maxGroupSize,
+                             int queueSize, Logger logger) {
+        this(name, connections, maxGroupSize, 0L, queueSize, logger);
+    }
+
+    /**
+     * Constructs a group commit writer and starts its thread.
+     *
+     * @param name         the thread name
+     * @param connections  supplies the write connection for each group
+     * @param maxGroupSize the maximum number of writes committed together
+     * @param commitWindow how long, in milliseconds, a group waits for more writes after its first, 0 to not wait
+     * @param queueSize    the maximum number of queued writes
+     * @param logger       the logger to report failed commits to
+     */
+    public GroupCommitWriter(String name, ConnectionPool.ConnectionFactory connections, int maxGroupSize,
+                             long commitWindow, int queueSize, Logger logger) {
+        this(name, connections, maxGroupSize, commitWindow, queueSize, logger, null);
+    }
+
+    /**
+     * Constructs a group commit writer running work before each group and starts its thread.
+     *
+     * @param name         the thread name
+     * @param connections  supplies the write connection for each group
+     * @param maxGroupSize the maximum number of writes committed together
+     * @param commitWindow how long, in milliseconds, a group waits for more writes after its first, 0 to not wait
+     * @param queueSize    the maximum number of queued writes
+     * @param logger       the logger to report failed commits to
+     * @param beforeGroup  the work to run in auto-commit mode before each group, may be null
+     */
+    public GroupCommitWriter(String name, ConnectionPool.ConnectionFactory connections, int maxGroupSize,
+                             long commitWindow, int queueSize, Logger logger, SqlWork<?> beforeGroup) {
+        this.beforeGroup = beforeGroup;
+        this.connections = connections;
+        this.maxGroupSize = maxGroupSize;
+        this.commitWindow = Math.max(0L, commitWindow);
+        this.logger = logger;
+        this.queue = new LinkedBlockingQueue<>(queueSize);
+        this.thread = new Thread(this::run, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Queues a write for the next group.
+     *
+     * @param work the work to run inside the group's transaction
+     * @param <R>  the type of the result
+     * @return a future of the result, completing once the group is committed, or failed with
+     * {@link RejectedExecutionException} if the queue is full
+     * @throws RejectedExecutionException if the writer is shut down
+     */
+    public <R> CompletableFuture<R> submit(SqlWork<R> work) {
+        if (!running) {
+            throw new RejectedExecutionException("Group commit writer has been shut down");
+        }
+        QueuedWrite<R> write = new QueuedWrite<>(work);
+        if (!queue.offer(write)) {
+            write.future.completeExceptionally(new RejectedExecutionException(
+                    "Write queue is full with " + queue.size() + " writes"));
+        }
+        return write.future;
+    }
+
+    /**
+     * Stops accepting writes and waits for the queued ones to commit.
+     *
+     * @param timeout how long, in milliseconds, to wait for queued writes
+     * @return true if every queued write finished before the timeout
+     */
+    public boolean shutdown(long timeout) {
+        running = false;
+        try {
+            thread.join(timeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!thread.isAlive()) {
+            return true;
+        }
+        thread.interrupt();
+        List<QueuedWrite<?>> dropped = new ArrayList<>();
+        queue.drainTo(dropped);
+        RejectedExecutionException failure = new RejectedExecutionException("Group commit writer has been shut down");
+        dropped.forEach(write -> write.future.completeExceptionally(failure));
+        return false;
+    }
+
+    /**
+     * Gets the number of writes waiting for the next group.
+     *
+     * @return the queue size
+     */
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * Gets the number of committed groups.
+     *
+     * @return the group count
+     */
+    public long getGroupCount() {
+        return groupCount.sum();
+    }
+
+    /**
+     * Gets the number of writes run, successful or not.
+     *
+     * @return the write count
+     */
+    public long getWriteCount() {
+        return writeCount.sum();
+    }
+
+    private void run() {
+        List<QueuedWrite<?>> group = new ArrayList<>(maxGroupSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                QueuedWrite<?> first = queue.poll(100L, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                group.add(first);
+            } catch (InterruptedException e) {
+                if (!running) {
+                    break;
+                }
+                continue;
+            }
+            queue.drainTo(group, maxGroupSize - 1);
+            if (commitWindow > 0 && group.size() < maxGroupSize) {
+                awaitGroup(group);
+            }
+            commit(group);
+            group.clear();
+        }
+    }
+
+    /**
+     * Keeps adding writes to a group until it is full or the commit window has passed.
+     *
+     * @param group the group, holding at least its first write
+     */
+    private void awaitGroup(List<QueuedWrite<?>> group) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(commitWindow);
+        while (group.size() < maxGroupSize) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return;
+            }
+            try {
+                QueuedWrite<?> next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                if (next == null) {
+                    return;
+                }
+                group.add(next);
+            } catch (InterruptedException e) {
+                // Commit what has been gathered and let the run loop handle the interrupt
+                Thread.currentThread().interrupt();
+                return;
+            }
+            queue.drainTo(group, maxGroupSize - group.size());
+        }
+    }
+
+    /**
+     * Runs a group of writes in one transaction and completes their futures.
+     *
+     * @param group the writes
+     */
+    private void commit(List<QueuedWrite<?>> group) {
+        try (Connection connection = connections.create()) {
+            if (beforeGroup != null) {
+                try {
+                    beforeGroup.execute(connection);
+                } catch (SQLException | RuntimeException e) {
+                    logger.log(Level.WARNING, "Failed to prepare a group of queued writes", e);
+                }
+            }
+            connection.setAutoCommit(false);
+            try {
+                for (QueuedWrite<?> write : group) {
+                    Savepoint savepoint = connection.setSavepoint();
+                    try {
+                        write.execute(connection);
+                        connection.releaseSavepoint(savepoint);
+                    } catch (SQLException | RuntimeException e) {
+                        connection.rollback(savepoint);
+                        write.error = e;
+                    }
+                }
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+            groupCount.increment();
+            writeCount.add(group.size());
+        } catch (SQLException | RuntimeException e) {
+            logger.log(Level.SEVERE, "Failed to commit " + group.size() + " queued writes", e);
+            group.forEach(write -> write.error = e);
+        }
+        List<QueuedWrite<?>> completed = new ArrayList<>(group);
+        CompletableFuture.runAsync(() -> completed.forEach(QueuedWrite::complete));
+    }
+
+    /**
+     * A queued write, its result once run and the future waiting for the commit.
+     */
+    private static final class QueuedWrite<R> {
+
+        private final SqlWork<R> work;
+        private final CompletableFuture<R> future = new CompletableFuture<>();
+        private R result;
+        private Exception error;
+
+        private QueuedWrite(SqlWork<R> work) {
+            this.work = work;
+        }
+
+        private void execute(Connection connection) throws SQLException {
+            result = work.execute(connection);
+        }
+
+        private void complete() {
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else {
+                future.complete(result);
+            }
+        }
+
+    }
+
+}
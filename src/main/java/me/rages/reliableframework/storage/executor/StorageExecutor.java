@@ -0,0 +1,266 @@
+package me.rages.reliableframework.storage.executor;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded executor for blocking database work.
+ * <p>
+ * Storage operations run on a fixed number of named threads fed by a bounded queue,
+ * keeping JDBC calls off {@code ForkJoinPool.commonPool()}. When the queue is full the
+ * configured {@link RejectionPolicy} decides how the submitting thread is slowed down.
+ */
+public class StorageExecutor implements Executor {
+
+    /**
+     * What happens to a task submitted while the queue is full.
+     */
+    public enum RejectionPolicy {
+
+        /**
+         * Blocks the submitting thread until space frees up or the block timeout elapses.
+         * Tasks submitted by a worker of the executor itself run on that worker instead, as
+         * blocking it could leave no worker to free up space.
+         */
+        BLOCK,
+
+        /**
+         * Runs the task on the submitting thread.
+         */
+        CALLER_RUNS,
+
+        /**
+         * Fails the task with a {@link RejectedExecutionException}.
+         */
+        ABORT
+
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final RejectionPolicy rejectionPolicy;
+    private final long blockTimeout;
+    private final long shutdownTimeout;
+    private final LongAdder saturatedCount = new LongAdder();
+
+    /**
+     * Constructs a storage executor.
+     *
+     * @param name            the thread name prefix
+     * @param threads         the number of worker threads
+     * @param queueSize       the maximum number of queued tasks
+     * @param rejectionPolicy the policy applied when the queue is full
+     * @param blockTimeout    how long, in milliseconds, {@link RejectionPolicy#BLOCK} waits for space
+     * @param shutdownTimeout how long, in milliseconds, {@link #shutdown()} waits for queued work
+     */
+    public StorageExecutor(String name, int threads, int queueSize, RejectionPolicy rejectionPolicy,
+                           long blockTimeout, long shutdownTimeout) {
+        this.rejectionPolicy = rejectionPolicy;
+        this.blockTimeout = blockTimeout;
+        this.shutdownTimeout = shutdownTimeout;
+        this.executor = new ThreadPoolExecutor(
+                threads, threads,
+                60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                new NamedThreadFactory(name),
+                new SaturationHandler()
+        );
+    }
+
+    /**
+     * Creates a storage executor from a configuration section, falling back to the
+     * defaults for any missing key.
+     *
+     * @param name    the thread name prefix
+     * @param section the {@code storage.executor} section, may be null
+     * @return the storage executor
+     */
+    public static StorageExecutor fromConfig(String name, ConfigurationSection section) {
+        int threads = 4;
+        int queueSize = 1000;
+        RejectionPolicy policy = RejectionPolicy.BLOCK;
+        long blockTimeout = 5000L;
+        long shutdownTimeout = 10_000L;
+
+        if (section != null) {
+            threads = Math.max(1, section.getInt("threads", threads));
+            queueSize = Math.max(1, section.getInt("queue-size", queueSize));
+            policy = RejectionPolicy.valueOf(section.getString("rejection-policy", policy.name()).toUpperCase());
+            blockTimeout = section.getLong("block-timeout", blockTimeout);
+            shutdownTimeout = section.getLong("shutdown-timeout", shutdownTimeout);
+        }
+        return new StorageExecutor(name, threads, queueSize, policy, blockTimeout, shutdownTimeout);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        executor.execute(command);
+    }
+
+    /**
+     * Stops accepting new work and waits for queued tasks to finish.
+     *
+     * @return true if every queued task finished before the shutdown timeout
+     */
+    public boolean shutdown() {
+        executor.shutdown();
+        try {
+            if (executor.awaitTermination(shutdownTimeout, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor.shutdownNow();
+        return false;
+    }
+
+    /**
+     * Checks whether the executor has been shut down.
+     *
+     * @return true if shut down
+     */
+    public boolean isShutdown() {
+        return executor.isShutdown();
+    }
+
+    /**
+     * Gets the number of tasks waiting in the queue.
+     *
+     * @return the queue size
+     */
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Gets the number of free slots left in the queue.
+     *
+     * @return the remaining queue capacity
+     */
+    public int getRemainingCapacity() {
+        return executor.getQueue().remainingCapacity();
+    }
+
+    /**
+     * Gets the number of threads currently running a task.
+     *
+     * @return the active thread count
+     */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * Gets the number of tasks that have finished.
+     *
+     * @return the completed task count
+     */
+    public long getCompletedTaskCount() {
+        return executor.getCompletedTaskCount();
+    }
+
+    /**
+     * Gets how many times a task was submitted while the queue was full.
+     *
+     * @return the saturation count
+     */
+    public long getSaturatedCount() {
+        return saturatedCount.sum();
+    }
+
+    /**
+     * Gets the policy applied when the queue is full.
+     *
+     * @return the rejection policy
+     */
+    public RejectionPolicy getRejectionPolicy() {
+        return rejectionPolicy;
+    }
+
+    /**
+     * Applies the configured {@link RejectionPolicy} to tasks that did not fit in the queue.
+     */
+    private final class SaturationHandler implements RejectedExecutionHandler {
+
+        @Override
+        public void rejectedExecution(Runnable task, ThreadPoolExecutor pool) {
+            if (pool.isShutdown()) {
+                throw new RejectedExecutionException("Storage executor has been shut down");
+            }
+            saturatedCount.increment();
+            switch (rejectionPolicy) {
+                case CALLER_RUNS:
+                    task.run();
+                    return;
+                case BLOCK:
+                    if (isWorker(Thread.currentThread())) {
+                        // Nested storage work, e.g. a transaction waiting on a write it submitted
+                        task.run();
+                        return;
+                    }
+                    try {
+                        if (pool.getQueue().offer(task, blockTimeout, TimeUnit.MILLISECONDS)) {
+                            return;
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    throw new RejectedExecutionException(
+                            "Storage queue stayed full for " + blockTimeout + "ms"
+                    );
+                default:
+                    throw new RejectedExecutionException("Storage queue is full");
+            }
+        }
+
+    }
+
+    private boolean isWorker(Thread thread) {
+        return thread instanceof WorkerThread && ((WorkerThread) thread).owner == this;
+    }
+
+    /**
+     * A worker thread, knowing the executor it belongs to.
+     */
+    private static final class WorkerThread extends Thread {
+
+        private final StorageExecutor owner;
+
+        private WorkerThread(StorageExecutor owner, Runnable runnable, String name) {
+            super(runnable, name);
+            this.owner = owner;
+        }
+
+    }
+
+    /**
+     * Creates daemon worker threads named after the executor.
+     */
+    private final class NamedThreadFactory implements ThreadFactory {
+
+        private final String name;
+        private final AtomicInteger counter = new AtomicInteger();
+
+        private NamedThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new WorkerThread(StorageExecutor.this, runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+
+    }
+
+}
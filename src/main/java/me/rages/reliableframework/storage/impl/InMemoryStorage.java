@@ -0,0 +1,56 @@
+package me.rages.reliableframework.storage.impl;
+
+import me.rages.reliableframework.data.DataObject;
+import me.rages.reliableframework.storage.KeyValueStorage;
+import me.rages.reliableframework.storage.kv.Mutation;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * InMemoryStorage is an implementation of KeyValueStorage that keeps its records in memory
+ * only, without any I/O.
+ * <p>
+ * It behaves like the other storages, generating ids, tracking changes, caching and
+ * evaluating queries the same way, but everything is lost when the server stops. It is meant
+ * for tests and benchmarks that should measure the framework without a database behind it.
+ */
+public class InMemoryStorage extends KeyValueStorage {
+
+    @SafeVarargs
+    public InMemoryStorage(JavaPlugin plugin, Class<? extends DataObject>... dataObjectClasses) {
+        super(plugin, dataObjectClasses);
+    }
+
+    @Override
+    public InMemoryStorage connect() throws SQLException {
+        if (isConnected()) {
+            return this;
+        }
+        lock.writeLock().lock();
+        try {
+            registerTables();
+            connected = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        startWorkers();
+        return this;
+    }
+
+    /**
+     * Does nothing, the records only live in memory.
+     */
+    @Override
+    protected void persist(List<Mutation> mutations) {
+    }
+
+    /**
+     * Does nothing, the records stay readable until the storage is garbage collected.
+     */
+    @Override
+    protected void closeStorage() {
+    }
+
+}
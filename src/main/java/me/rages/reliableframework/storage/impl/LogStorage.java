@@ -0,0 +1,194 @@
+package me.rages.reliableframework.storage.impl;
+
+import me.rages.reliableframework.data.DataObject;
+import me.rages.reliableframework.storage.KeyValueStorage;
+import me.rages.reliableframework.storage.kv.Mutation;
+import me.rages.reliableframework.storage.kv.RecordLog;
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.logging.Level;
+
+/**
+ * LogStorage is an implementation of KeyValueStorage that keeps its records in a local
+ * append-only log instead of a database.
+ * <p>
+ * Every write appends its changes to the log as one checksummed entry, which is forced to
+ * disk in the background every {@code fsync-interval} milliseconds, or on every write if the
+ * interval is 0. On connect the log is replayed into memory; an entry torn by a crash is
+ * dropped along with everything after it. Since every write adds to the log, it is compacted
+ * in the background once it grows past {@code compaction-min-size} bytes and
+ * {@code compaction-ratio} times the size of the live records: the live records are written
+ * to a new log, which replaces the old one after the entries appended in the meantime are
+ * copied over.
+ */
+public class LogStorage extends KeyValueStorage {
+
+    private File file;
+    private RecordLog log;
+    private long syncInterval;
+    private long compactionMinSize;
+    private double compactionRatio;
+    private BukkitTask syncTask;
+    private BukkitTask compactionTask;
+
+    @SafeVarargs
+    public LogStorage(JavaPlugin plugin, Class<? extends DataObject>... dataObjectClasses) {
+        super(plugin, dataObjectClasses);
+    }
+
+    @Override
+    public LogStorage connect() throws SQLException {
+        if (isConnected()) {
+            return this;
+        }
+        ConfigurationSection section = plugin.getConfig().getConfigurationSection("storage.log");
+        file = new File(plugin.getDataFolder(), section != null ? section.getString("file", "data.log") : "data.log");
+        syncInterval = section != null ? section.getLong("fsync-interval", 1000L) : 1000L;
+        compactionMinSize = section != null ? section.getLong("compaction-min-size", 16_777_216L) : 16_777_216L;
+        compactionRatio = section != null ? section.getDouble("compaction-ratio", 2.0D) : 2.0D;
+        long compactionInterval = section != null ? section.getLong("compaction-interval", 300_000L) : 300_000L;
+
+        lock.writeLock().lock();
+        try {
+            log = RecordLog.open(file, plugin.getLogger(), this::restore);
+            registerTables();
+            connected = true;
+        } catch (IOException e) {
+            throw new SQLException("Failed to open " + file, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        if (syncInterval > 0) {
+            long ticks = Math.max(1L, syncInterval / 50L);
+            syncTask = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, this::sync, ticks, ticks);
+        }
+        if (compactionInterval > 0) {
+            long ticks = Math.max(1L, compactionInterval / 50L);
+            compactionTask = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, () -> {
+                if (shouldCompact()) {
+                    try {
+                        compact();
+                    } catch (SQLException e) {
+                        plugin.getLogger().log(Level.WARNING, "Failed to compact " + file.getName(), e);
+                    }
+                }
+            }, ticks, ticks);
+        }
+        startWorkers();
+        return this;
+    }
+
+    @Override
+    protected void persist(List<Mutation> mutations) throws SQLException {
+        try {
+            log.append(mutations);
+            if (syncInterval <= 0) {
+                log.sync();
+            }
+        } catch (IOException e) {
+            throw new SQLException("Failed to append to " + file.getName(), e);
+        }
+    }
+
+    /**
+     * Stops the background tasks and forces the log to disk before closing it.
+     */
+    @Override
+    protected void closeStorage() throws SQLException {
+        if (syncTask != null) {
+            syncTask.cancel();
+            syncTask = null;
+        }
+        if (compactionTask != null) {
+            compactionTask.cancel();
+            compactionTask = null;
+        }
+        try {
+            log.close();
+        } catch (IOException e) {
+            throw new SQLException("Failed to close " + file.getName(), e);
+        }
+    }
+
+    /**
+     * Rewrites the log to hold only the live records. Writes continue while the records are
+     * written to the new log and only wait for the entries appended meanwhile to be copied.
+     *
+     * @throws SQLException if the new log cannot be written, the old log is then kept
+     */
+    public synchronized void compact() throws SQLException {
+        long from;
+        List<Mutation> records;
+        lock.readLock().lock();
+        try {
+            if (!connected) {
+                return;
+            }
+            from = log.size();
+            records = snapshot();
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        File compacted = RecordLog.compactionFile(file);
+        try {
+            RecordLog.write(compacted, records);
+            lock.writeLock().lock();
+            try {
+                if (!connected) {
+                    return;
+                }
+                long before = log.size();
+                log.replaceWith(compacted, from);
+                plugin.getLogger().info("Compacted " + file.getName() + " from " + before + " to " + log.size() + " bytes");
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } catch (IOException e) {
+            throw new SQLException("Failed to compact " + file.getName(), e);
+        } finally {
+            compacted.delete();
+        }
+    }
+
+    /**
+     * Gets the current size of the log.
+     *
+     * @return the size in bytes, or 0 if not connected
+     */
+    public long getLogSize() {
+        RecordLog log = this.log;
+        return log != null ? log.size() : 0L;
+    }
+
+    private boolean shouldCompact() {
+        long size = getLogSize();
+        return connected && size >= compactionMinSize && size >= getLiveBytes() * compactionRatio;
+    }
+
+    /**
+     * Forces the log to disk. Holds the read lock so the log cannot be closed meanwhile.
+     */
+    private void sync() {
+        lock.readLock().lock();
+        try {
+            if (!connected) {
+                return;
+            }
+            log.sync();
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Failed to sync " + file.getName(), e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+}
@@ -2,14 +2,25 @@ package me.rages.reliableframework.storage.impl;
 
 import me.rages.reliableframework.data.DataObject;
 import me.rages.reliableframework.storage.SQLStorage;
+import me.rages.reliableframework.storage.pool.ConnectionPool;
+import me.rages.reliableframework.storage.pool.PoolSettings;
+import me.rages.reliableframework.storage.schema.SchemaRegistry;
+import me.rages.reliableframework.storage.sql.Dialect;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.Date;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 public class MySQLStorage extends SQLStorage {
 
@@ -20,7 +31,7 @@ public class MySQLStorage extends SQLStorage {
 
     @Override
     public MySQLStorage connect() throws SQLException {
-        if (connection != null && !connection.isClosed()) {
+        if (isConnected()) {
             return this;
         }
 
@@ -29,54 +40,129 @@ public class MySQLStorage extends SQLStorage {
         String username = plugin.getConfig().getString("storage.url.username");
         String password = plugin.getConfig().getString("storage.url.password");
 
-        String url = "jdbc:mysql://" + address + "/" + database + "?useSSL=false&serverTimezone=UTC";
-        connection = DriverManager.getConnection(url, username, password);
+        String url = "jdbc:mysql://" + address + "/" + database + "?useSSL=false&serverTimezone=UTC&rewriteBatchedStatements=true&useCursorFetch=true";
+        PoolSettings settings = PoolSettings.fromConfig(plugin.getConfig().getConfigurationSection("storage.pool"));
+        pool = new ConnectionPool(
+                "MySQL", settings,
+                () -> DriverManager.getConnection(url, username, password),
+                plugin.getLogger()
+        );
+        readPool = pool;
 
         if (dataObjectClasses.length > 0) {
             createTablesForDataObjects(this.dataObjectClasses);
         }
 
+        startWorkers();
         return this;
     }
 
     @Override
-    public boolean columnExists(String tableName, String columnName) throws SQLException {
-        String query = "SELECT COUNT(*) AS count FROM information_schema.columns WHERE table_name = ? AND column_name = ?";
+    protected Set<String> getColumns(Connection connection, String tableName) throws SQLException {
+        Set<String> columns = new HashSet<>();
+        String query = "SELECT column_name FROM information_schema.columns WHERE table_schema = DATABASE() AND table_name = ?";
         try (PreparedStatement ps = connection.prepareStatement(query)) {
             ps.setString(1, tableName);
-            ps.setString(2, columnName);
             try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getInt("count") > 0;
+                while (rs.next()) {
+                    columns.add(SchemaRegistry.normalize(rs.getString(1)));
                 }
             }
         }
+        return columns;
+    }
+
+    @Override
+    protected Set<String> getIndexes(Connection connection, String tableName) throws SQLException {
+        Set<String> indexes = new HashSet<>();
+        String query = "SELECT DISTINCT index_name FROM information_schema.statistics WHERE table_schema = DATABASE() AND table_name = ?";
+        try (PreparedStatement ps = connection.prepareStatement(query)) {
+            ps.setString(1, tableName);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    indexes.add(SchemaRegistry.normalize(rs.getString(1)));
+                }
+            }
+        }
+        return indexes;
+    }
+
+    @Override
+    protected void addColumns(Connection connection, String tableName, Collection<String> columnDefinitions) throws SQLException {
+        String sql = "ALTER TABLE " + tableName + " ADD COLUMN " + String.join(", ADD COLUMN ", columnDefinitions);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    /**
+     * Widens the column to raw bytes, rewrites each UUID with {@code UNHEX} and narrows the
+     * column to {@code BINARY(16)}. Indexes on the column are kept.
+     * <p>
+     * Each step commits on its own, so a column left as {@code VARBINARY(36)} by an
+     * interrupted conversion is picked up again and finished.
+     */
+    @Override
+    protected int convertUuidColumn(Connection connection, String tableName, String column) throws SQLException {
+        String query = "SELECT data_type, character_maximum_length FROM information_schema.columns"
+                + " WHERE table_schema = DATABASE() AND table_name = ? AND column_name = ?";
+        boolean widened;
+        try (PreparedStatement ps = connection.prepareStatement(query)) {
+            ps.setString(1, tableName);
+            ps.setString(2, column);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    return 0;
+                }
+                String type = rs.getString(1).toLowerCase(Locale.ROOT);
+                widened = type.equals("varbinary") && rs.getLong(2) == 36;
+                if (!widened && !type.contains("char")) {
+                    return 0;
+                }
+            }
+        }
+        try (Statement stmt = connection.createStatement()) {
+            if (!widened) {
+                stmt.execute("ALTER TABLE " + tableName + " MODIFY " + column + " VARBINARY(36)");
+            }
+            int converted = stmt.executeUpdate("UPDATE " + tableName + " SET " + column + " = UNHEX(REPLACE("
+                    + column + ", '-', '')) WHERE LENGTH(" + column + ") = 36");
+            stmt.execute("ALTER TABLE " + tableName + " MODIFY " + column + " BINARY(16)");
+            return converted;
+        }
+    }
+
+    @Override
+    protected Dialect getDialect() {
+        return Dialect.MYSQL;
+    }
+
+    @Override
+    protected boolean supportsBatchGeneratedKeys() {
+        return true;
+    }
+
+    /**
+     * MySQL commits the open transaction before any ALTER TABLE.
+     */
+    @Override
+    protected boolean supportsTransactionalSchemaChanges() {
         return false;
     }
 
     @Override
-    public String getColumnType(Class<?> type) {
-        if (type == Integer.class) {
-            return "INT";
-        } else if (type == Long.class) {
-            return "BIGINT";
-        } else if (type == String.class) {
-            return "VARCHAR(255)";
-        } else if (type == Boolean.class) {
-            return "TINYINT(1)";
-        } else if (type == Double.class) {
-            return "DOUBLE";
-        } else if (type == Float.class) {
-            return "FLOAT";
-        } else if (type == Date.class) {
-            return "DATETIME";
-        } else if (type == byte[].class) {
-            return "BLOB";
-        } else if (type == UUID.class) {
-            return "CHAR(36)"; // UUIDs stored as CHAR(36)
-        } else {
-            throw new IllegalArgumentException("Unsupported data type: " + type.getName());
+    protected String getPrimaryKeyDefinition(boolean autoIncrement) {
+        return autoIncrement ? " PRIMARY KEY AUTO_INCREMENT" : " PRIMARY KEY";
+    }
+
+    @Override
+    protected String getUpsertClause(String idColumn, List<String> updateColumns) {
+        if (updateColumns.isEmpty()) {
+            return " ON DUPLICATE KEY UPDATE " + idColumn + " = " + idColumn;
         }
+        return " ON DUPLICATE KEY UPDATE " + updateColumns.stream()
+                .map(column -> column + " = VALUES(" + column + ")")
+                .collect(Collectors.joining(", "));
     }
 
 }
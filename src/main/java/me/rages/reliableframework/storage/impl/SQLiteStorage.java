@@ -2,23 +2,62 @@ package me.rages.reliableframework.storage.impl;
 
 import me.rages.reliableframework.data.DataObject;
 import me.rages.reliableframework.storage.SQLStorage;
+import me.rages.reliableframework.storage.SqlWork;
+import me.rages.reliableframework.storage.codec.UuidCodec;
+import me.rages.reliableframework.storage.executor.GroupCommitWriter;
+import me.rages.reliableframework.storage.pool.ConnectionPool;
+import me.rages.reliableframework.storage.pool.PoolSettings;
+import me.rages.reliableframework.storage.schema.SchemaRegistry;
+import me.rages.reliableframework.storage.sql.Dialect;
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitTask;
 
 import java.io.File;
+import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.Date;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+import java.util.stream.Collectors;
 
 /**
  * SQLiteStorage is an implementation of SQLStorage that provides
  * functionality for connecting to and interacting with an SQLite database.
+ * <p>
+ * SQLite only allows a single writer, so writes go through a pool holding one
+ * connection while reads are spread over a pool of read-only connections. The database
+ * runs in WAL mode by default, letting readers work while a write is in progress, and
+ * saves, updates and deletes are handed to a {@link GroupCommitWriter} that commits
+ * queued writes together. The WAL file is checkpointed back into the database in the
+ * background.
  */
 public class SQLiteStorage extends SQLStorage {
 
+    /**
+     * sqlite-jdbc open flag for read-only connections (SQLITE_OPEN_READONLY).
+     */
+    private static final String OPEN_READ_ONLY = "1";
+
+    /**
+     * How long, in milliseconds, a connection waits on a locked database before failing.
+     */
+    private static final String BUSY_TIMEOUT = "5000";
+
+    private GroupCommitWriter writer;
+    private BukkitTask checkpointTask;
+    private boolean wal;
+
     @SafeVarargs
     public SQLiteStorage(JavaPlugin plugin, Class<? extends DataObject>... dataObjectClasses) {
         super(plugin, dataObjectClasses);
@@ -26,48 +65,203 @@ public class SQLiteStorage extends SQLStorage {
 
     @Override
     public SQLiteStorage connect() throws SQLException {
-        if (connection != null && !connection.isClosed()) {
+        if (isConnected()) {
             return this;
         }
         File file = new File(plugin.getDataFolder(), "data.db");
-        connection = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
+        String url = "jdbc:sqlite:" + file.getAbsolutePath();
+        PoolSettings settings = PoolSettings.fromConfig(plugin.getConfig().getConfigurationSection("storage.pool"));
+        ConfigurationSection section = plugin.getConfig().getConfigurationSection("storage.sqlite");
+        String journalMode = section != null ? section.getString("journal-mode", "WAL") : "WAL";
 
+        // The journal mode is stored in the database file, so only the writer sets it
+        Properties writeProperties = pragmas(section);
+        writeProperties.setProperty("journal_mode", journalMode);
+        pool = new ConnectionPool(
+                "SQLite-Write", settings.toBuilder().maximumPoolSize(1).minimumIdle(1).build(),
+                () -> DriverManager.getConnection(url, writeProperties),
+                plugin.getLogger()
+        );
+
+        // Create the schema before opening readers so they start out with it
         if (dataObjectClasses.length > 0) {
             createTablesForDataObjects(this.dataObjectClasses);
         }
 
+        Properties readProperties = pragmas(section);
+        readProperties.setProperty("open_mode", OPEN_READ_ONLY);
+        readPool = new ConnectionPool(
+                "SQLite-Read", settings,
+                () -> DriverManager.getConnection(url, readProperties),
+                plugin.getLogger()
+        );
+
+        if (section == null || section.getBoolean("group-commit", true)) {
+            writer = new GroupCommitWriter(
+                    plugin.getName() + "-SQLite-Writer", () -> pool.borrow(),
+                    Math.max(1, section != null ? section.getInt("max-group-size", 500) : 500),
+                    section != null ? section.getLong("group-commit-window", 0L) : 0L,
+                    Math.max(1, section != null ? section.getInt("writer-queue-size", 10_000) : 10_000),
+                    plugin.getLogger(),
+                    // Columns added inside a group would be lost if it rolls back
+                    connection -> {
+                        applyPendingColumns(connection);
+                        return null;
+                    }
+            );
+        }
+
+        wal = "WAL".equalsIgnoreCase(journalMode);
+        long checkpointInterval = section != null ? section.getLong("checkpoint-interval", 60_000L) : 60_000L;
+        if (wal && checkpointInterval > 0) {
+            long ticks = Math.max(1L, checkpointInterval / 50L);
+            checkpointTask = Bukkit.getScheduler().runTaskTimerAsynchronously(
+                    plugin, () -> checkpoint("PASSIVE"), ticks, ticks
+            );
+        }
+
+        startWorkers();
         return this;
     }
 
+    /**
+     * Stops the checkpoint timer, waits for queued writes to commit and truncates the WAL
+     * file before the connections are closed.
+     */
+    @Override
+    protected void beforePoolsClose() {
+        if (checkpointTask != null) {
+            checkpointTask.cancel();
+            checkpointTask = null;
+        }
+        if (writer != null) {
+            long timeout = plugin.getConfig().getLong("storage.executor.shutdown-timeout", 10_000L);
+            if (!writer.shutdown(timeout)) {
+                plugin.getLogger().warning("Timed out waiting for queued writes to commit, pending writes were dropped");
+            }
+            writer = null;
+        }
+        if (wal && isConnected()) {
+            checkpoint("TRUNCATE");
+        }
+    }
+
+    /**
+     * Runs writes on the group commit writer if it is enabled.
+     */
+    @Override
+    protected <R> CompletableFuture<R> write(SqlWork<R> work) {
+        GroupCommitWriter writer = this.writer;
+        return writer != null ? writer.submit(work) : super.write(work);
+    }
+
+    /**
+     * Gets the writer committing queued writes together.
+     *
+     * @return the group commit writer, or null if group commit is disabled or not connected
+     */
+    public GroupCommitWriter getWriter() {
+        return writer;
+    }
+
+    /**
+     * Copies committed pages from the WAL file back into the database file.
+     *
+     * @param mode the checkpoint mode, such as {@code PASSIVE} or {@code TRUNCATE}
+     */
+    private void checkpoint(String mode) {
+        try (Connection connection = getConnection(); Statement stmt = connection.createStatement()) {
+            stmt.execute("PRAGMA wal_checkpoint(" + mode + ")");
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.WARNING, "Failed to checkpoint the WAL file", e);
+        }
+    }
+
+    /**
+     * Builds the connection properties shared by the write and read connections.
+     *
+     * @param section the {@code storage.sqlite} section, may be null
+     * @return the connection properties
+     */
+    private static Properties pragmas(ConfigurationSection section) {
+        Properties properties = new Properties();
+        properties.setProperty("busy_timeout", BUSY_TIMEOUT);
+        properties.setProperty("synchronous", section != null ? section.getString("synchronous", "NORMAL") : "NORMAL");
+        properties.setProperty("cache_size", String.valueOf(section != null ? section.getInt("cache-size", -16_000) : -16_000));
+        properties.setProperty("mmap_size", String.valueOf(section != null ? section.getLong("mmap-size", 268_435_456L) : 268_435_456L));
+        properties.setProperty("temp_store", section != null ? section.getString("temp-store", "MEMORY") : "MEMORY");
+        return properties;
+    }
+
     @Override
-    public boolean columnExists(String tableName, String columnName) throws SQLException {
-        String query = "PRAGMA table_info(" + tableName + ")";
-        try (PreparedStatement ps = connection.prepareStatement(query); ResultSet rs = ps.executeQuery()) {
+    protected Set<String> getColumns(Connection connection, String tableName) throws SQLException {
+        Set<String> columns = new HashSet<>();
+        try (PreparedStatement ps = connection.prepareStatement("PRAGMA table_info(" + tableName + ")");
+             ResultSet rs = ps.executeQuery()) {
             while (rs.next()) {
-                if (rs.getString("name").equalsIgnoreCase(columnName)) {
-                    return true;
-                }
+                columns.add(SchemaRegistry.normalize(rs.getString("name")));
+            }
+        }
+        return columns;
+    }
+
+    @Override
+    protected Set<String> getIndexes(Connection connection, String tableName) throws SQLException {
+        Set<String> indexes = new HashSet<>();
+        try (PreparedStatement ps = connection.prepareStatement("PRAGMA index_list(" + tableName + ")");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                indexes.add(SchemaRegistry.normalize(rs.getString("name")));
             }
         }
-        return false;
+        return indexes;
     }
 
+    /**
+     * Rewrites text UUIDs as blobs row by row. SQLite keeps a blob stored in a TEXT column
+     * as a blob, so the declared column type is left as it is.
+     */
     @Override
-    public String getColumnType(Class<?> type) {
-        if (type == Integer.class || type == Long.class || type == Boolean.class) {
-            return "INTEGER";
-        } else if (type == String.class || type == UUID.class) {
-            return "TEXT";
-        } else if (type == Double.class || type == Float.class) {
-            return "REAL";
-        } else if (type == Date.class) {
-            return "INTEGER";
-        } else if (type == byte[].class) {
-            return "BLOB";
+    protected int convertUuidColumn(Connection connection, String tableName, String column) throws SQLException {
+        String select = "SELECT rowid, " + column + " FROM " + tableName + " WHERE typeof(" + column + ") = 'text'";
+        String update = "UPDATE " + tableName + " SET " + column + " = ? WHERE rowid = ?";
+        List<Object[]> rows = new ArrayList<>();
+        try (PreparedStatement ps = connection.prepareStatement(select); ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                rows.add(new Object[]{rs.getLong(1), UuidCodec.toBytes(UUID.fromString(rs.getString(2)))});
+            }
+        }
+        if (rows.isEmpty()) {
+            return 0;
         }
-        else {
-            throw new IllegalArgumentException("Unsupported data type: " + type.getName());
+        return inTransaction(connection, tx -> {
+            try (PreparedStatement ps = tx.prepareStatement(update)) {
+                for (int start = 0; start < rows.size(); start += batchSize) {
+                    for (Object[] row : rows.subList(start, Math.min(rows.size(), start + batchSize))) {
+                        ps.setBytes(1, (byte[]) row[1]);
+                        ps.setLong(2, (Long) row[0]);
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+            }
+            return rows.size();
+        });
+    }
+
+    @Override
+    protected Dialect getDialect() {
+        return Dialect.SQLITE;
+    }
+
+    @Override
+    protected String getUpsertClause(String idColumn, List<String> updateColumns) {
+        if (updateColumns.isEmpty()) {
+            return " ON CONFLICT(" + idColumn + ") DO NOTHING";
         }
+        return " ON CONFLICT(" + idColumn + ") DO UPDATE SET " + updateColumns.stream()
+                .map(column -> column + " = excluded." + column)
+                .collect(Collectors.joining(", "));
     }
 
 }
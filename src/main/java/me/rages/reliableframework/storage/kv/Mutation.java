@@ -0,0 +1,63 @@
+package me.rages.reliableframework.storage.kv;
+
+import lombok.Getter;
+
+/**
+ * A single change to a record of a key-value storage: a record written under its key,
+ * replacing any previous one, or a key removed.
+ */
+@Getter
+public final class Mutation {
+
+    /**
+     * The kind of a mutation.
+     */
+    public enum Type {
+        PUT,
+        DELETE
+    }
+
+    private final Type type;
+    private final String table;
+
+    /**
+     * The key of the record, normalized with {@link Values#key(Object)}.
+     */
+    private final Object key;
+
+    /**
+     * The record encoded with {@link RecordCodec}, or null for a {@link Type#DELETE}.
+     */
+    private final byte[] record;
+
+    private Mutation(Type type, String table, Object key, byte[] record) {
+        this.type = type;
+        this.table = table;
+        this.key = key;
+        this.record = record;
+    }
+
+    /**
+     * Creates a mutation writing a record.
+     *
+     * @param table  the table
+     * @param key    the normalized key
+     * @param record the encoded record
+     * @return the mutation
+     */
+    public static Mutation put(String table, Object key, byte[] record) {
+        return new Mutation(Type.PUT, table, key, record);
+    }
+
+    /**
+     * Creates a mutation removing a record.
+     *
+     * @param table the table
+     * @param key   the normalized key
+     * @return the mutation
+     */
+    public static Mutation delete(String table, Object key) {
+        return new Mutation(Type.DELETE, table, key, null);
+    }
+
+}
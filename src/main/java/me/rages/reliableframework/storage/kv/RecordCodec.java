@@ -0,0 +1,293 @@
+package me.rages.reliableframework.storage.kv;
+
+import org.bukkit.util.io.BukkitObjectInputStream;
+import org.bukkit.util.io.BukkitObjectOutputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Encodes rows as compact binary records: the number of columns, then every column name
+ * followed by its value as a one byte type tag and the value's bytes. Lengths are written
+ * as variable-length integers.
+ * <p>
+ * Enum constants are stored by name and converted back when read into a field, byte
+ * buffers are stored as byte arrays. Values of any other type are stored through
+ * {@link BukkitObjectOutputStream}, so they must be {@link java.io.Serializable} or
+ * {@link org.bukkit.configuration.serialization.ConfigurationSerializable}.
+ */
+public final class RecordCodec {
+
+    private static final byte NULL = 0;
+    private static final byte BOOLEAN = 1;
+    private static final byte INT = 2;
+    private static final byte LONG = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte FLOAT = 5;
+    private static final byte SHORT = 6;
+    private static final byte BYTE = 7;
+    private static final byte STRING = 8;
+    private static final byte BYTES = 9;
+    private static final byte UUID_VALUE = 10;
+    private static final byte INSTANT = 11;
+    private static final byte DATE = 12;
+    private static final byte OBJECT = 13;
+
+    private RecordCodec() {
+    }
+
+    /**
+     * Creates an empty record whose column names are matched ignoring case, like SQL columns.
+     *
+     * @return the record
+     */
+    public static Map<String, Object> newRecord() {
+        return new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    }
+
+    /**
+     * Encodes a record.
+     *
+     * @param record the values by column
+     * @return the encoded record
+     * @throws IOException if a value cannot be serialized
+     */
+    public static byte[] encode(Map<String, ?> record) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + record.size() * 16);
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeVarInt(out, record.size());
+        for (Map.Entry<String, ?> entry : record.entrySet()) {
+            writeString(out, entry.getKey());
+            writeValue(out, entry.getValue());
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a record written by {@link #encode(Map)}.
+     *
+     * @param record the encoded record
+     * @return the values by column, see {@link #newRecord()}
+     * @throws IOException if the record is malformed
+     */
+    public static Map<String, Object> decode(byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        int size = readVarInt(in);
+        Map<String, Object> values = newRecord();
+        for (int i = 0; i < size; i++) {
+            String column = readString(in);
+            values.put(column, readValue(in));
+        }
+        return values;
+    }
+
+    /**
+     * Writes a single tagged value.
+     *
+     * @param out   the output
+     * @param value the value, may be null
+     * @throws IOException if the value cannot be serialized
+     */
+    public static void writeValue(DataOutput out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INT);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) value);
+        } else if (value instanceof Short) {
+            out.writeByte(SHORT);
+            out.writeShort((Short) value);
+        } else if (value instanceof Byte) {
+            out.writeByte(BYTE);
+            out.writeByte((Byte) value);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof Enum) {
+            out.writeByte(STRING);
+            writeString(out, ((Enum<?>) value).name());
+        } else if (value instanceof byte[]) {
+            out.writeByte(BYTES);
+            writeBytes(out, (byte[]) value);
+        } else if (value instanceof ByteBuffer) {
+            ByteBuffer buffer = ((ByteBuffer) value).duplicate();
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            out.writeByte(BYTES);
+            writeBytes(out, bytes);
+        } else if (value instanceof UUID) {
+            out.writeByte(UUID_VALUE);
+            out.writeLong(((UUID) value).getMostSignificantBits());
+            out.writeLong(((UUID) value).getLeastSignificantBits());
+        } else if (value instanceof Instant) {
+            out.writeByte(INSTANT);
+            out.writeLong(((Instant) value).toEpochMilli());
+        } else if (value.getClass() == Date.class) {
+            out.writeByte(DATE);
+            out.writeLong(((Date) value).getTime());
+        } else {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (BukkitObjectOutputStream objects = new BukkitObjectOutputStream(bytes)) {
+                objects.writeObject(value);
+            }
+            out.writeByte(OBJECT);
+            writeBytes(out, bytes.toByteArray());
+        }
+    }
+
+    /**
+     * Reads a single tagged value written by {@link #writeValue(DataOutput, Object)}.
+     *
+     * @param in the input
+     * @return the value, may be null
+     * @throws IOException if the value is malformed or cannot be deserialized
+     */
+    public static Object readValue(DataInput in) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case BOOLEAN:
+                return in.readBoolean();
+            case INT:
+                return in.readInt();
+            case LONG:
+                return in.readLong();
+            case DOUBLE:
+                return in.readDouble();
+            case FLOAT:
+                return in.readFloat();
+            case SHORT:
+                return in.readShort();
+            case BYTE:
+                return in.readByte();
+            case STRING:
+                return readString(in);
+            case BYTES:
+                return readBytes(in);
+            case UUID_VALUE:
+                return new UUID(in.readLong(), in.readLong());
+            case INSTANT:
+                return Instant.ofEpochMilli(in.readLong());
+            case DATE:
+                return new Date(in.readLong());
+            case OBJECT:
+                try (BukkitObjectInputStream objects = new BukkitObjectInputStream(new ByteArrayInputStream(readBytes(in)))) {
+                    return objects.readObject();
+                } catch (ClassNotFoundException e) {
+                    throw new IOException("Failed to deserialize stored value", e);
+                }
+            default:
+                throw new IOException("Unknown value tag " + tag);
+        }
+    }
+
+    /**
+     * Writes a string as its UTF-8 length and bytes.
+     *
+     * @param out   the output
+     * @param value the string
+     * @throws IOException if an I/O error occurs
+     */
+    public static void writeString(DataOutput out, String value) throws IOException {
+        writeBytes(out, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads a string written by {@link #writeString(DataOutput, String)}.
+     *
+     * @param in the input
+     * @return the string
+     * @throws IOException if an I/O error occurs
+     */
+    public static String readString(DataInput in) throws IOException {
+        return new String(readBytes(in), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a byte array as its length and content.
+     *
+     * @param out   the output
+     * @param bytes the bytes
+     * @throws IOException if an I/O error occurs
+     */
+    public static void writeBytes(DataOutput out, byte[] bytes) throws IOException {
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a byte array written by {@link #writeBytes(DataOutput, byte[])}.
+     *
+     * @param in the input
+     * @return the bytes
+     * @throws IOException if an I/O error occurs
+     */
+    public static byte[] readBytes(DataInput in) throws IOException {
+        byte[] bytes = new byte[readVarInt(in)];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * Writes a non-negative integer in seven bit groups, one byte for values below 128.
+     *
+     * @param out   the output
+     * @param value the value
+     * @throws IOException if an I/O error occurs
+     */
+    public static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * Reads an integer written by {@link #writeVarInt(DataOutput, int)}.
+     *
+     * @param in the input
+     * @return the value
+     * @throws IOException if an I/O error occurs or the value is malformed
+     */
+    public static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < Integer.SIZE; shift += 7) {
+            byte b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0) {
+                    throw new IOException("Negative length " + value);
+                }
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable-length integer");
+    }
+
+}
@@ -0,0 +1,332 @@
+package me.rages.reliableframework.storage.kv;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only file of {@link Mutation} batches.
+ * <p>
+ * The file starts with a magic number and a version, followed by one entry per appended
+ * batch: the payload length, the CRC32 of the payload and the payload, holding the number
+ * of mutations and each mutation's type, table, key and record. A batch is only applied on
+ * recovery if its whole entry was written and its checksum matches, so a batch is either
+ * recovered completely or not at all. Recovery stops at the first incomplete or corrupt
+ * entry and truncates the file there.
+ * <p>
+ * The log grows with every write. {@link #write(File, Collection)} writes the live records
+ * to a new file, which {@link #replaceWith(File, long)} swaps in after copying over the
+ * batches appended in the meantime.
+ */
+public final class RecordLog implements Closeable {
+
+    private static final int MAGIC = 0x52464C47;
+    private static final byte VERSION = 1;
+    private static final int HEADER_SIZE = Integer.BYTES + 1;
+    private static final int ENTRY_HEADER_SIZE = Integer.BYTES * 2;
+
+    /**
+     * The number of mutations written per entry when compacting.
+     */
+    private static final int COMPACTION_BATCH = 1000;
+
+    private final File file;
+    private FileChannel channel;
+    private long size;
+
+    private RecordLog(File file, FileChannel channel, long size) {
+        this.file = file;
+        this.channel = channel;
+        this.size = size;
+    }
+
+    /**
+     * Opens a log, creating it if it does not exist, and replays its batches in order.
+     * A leftover file of an interrupted compaction is deleted.
+     *
+     * @param file     the log file
+     * @param logger   the logger recovery problems are reported to
+     * @param consumer receives every recovered mutation
+     * @return the open log, positioned at its end
+     * @throws IOException if the file cannot be read or is not a log
+     */
+    public static RecordLog open(File file, Logger logger, Consumer<Mutation> consumer) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Failed to create directory " + parent);
+        }
+        Files.deleteIfExists(compactionFile(file).toPath());
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long size = channel.size() < HEADER_SIZE ? writeHeader(channel) : recover(file, channel, logger, consumer);
+            channel.position(size);
+            return new RecordLog(file, channel, size);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the file a compaction of a log is written to before it replaces the log.
+     *
+     * @param file the log file
+     * @return the compaction file
+     */
+    public static File compactionFile(File file) {
+        return new File(file.getPath() + ".compact");
+    }
+
+    /**
+     * Writes a new log holding the given mutations.
+     *
+     * @param target    the file to write, replaced if it exists
+     * @param mutations the mutations
+     * @throws IOException if an I/O error occurs
+     */
+    public static void write(File target, Collection<Mutation> mutations) throws IOException {
+        try (FileChannel channel = FileChannel.open(target.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeHeader(channel);
+            List<Mutation> batch = new ArrayList<>(Math.min(mutations.size(), COMPACTION_BATCH));
+            for (Mutation mutation : mutations) {
+                batch.add(mutation);
+                if (batch.size() == COMPACTION_BATCH) {
+                    writeFully(channel, entry(batch));
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                writeFully(channel, entry(batch));
+            }
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Appends a batch of mutations as one entry. The entry is handed to the operating
+     * system before this returns, but only written to disk by {@link #sync()}.
+     *
+     * @param mutations the mutations
+     * @throws IOException if an I/O error occurs
+     */
+    public synchronized void append(List<Mutation> mutations) throws IOException {
+        ByteBuffer entry = entry(mutations);
+        long start = size;
+        try {
+            size += writeFully(channel, entry);
+        } catch (IOException e) {
+            // Drop a partial entry so later entries are not appended after garbage
+            channel.truncate(start);
+            channel.position(start);
+            throw e;
+        }
+    }
+
+    /**
+     * Forces appended entries to disk.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public synchronized void sync() throws IOException {
+        channel.force(false);
+    }
+
+    /**
+     * Gets the size of the log.
+     *
+     * @return the size in bytes
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    /**
+     * Replaces this log with a compacted one. The entries appended to this log from the given
+     * position on, after the compacted records were taken, are copied to the end of the
+     * compacted log before it is atomically moved over this one.
+     *
+     * @param compacted the compacted log written by {@link #write(File, Collection)}
+     * @param from      the size of this log when the compacted records were taken
+     * @throws IOException if an I/O error occurs, this log is then left as it was
+     */
+    public synchronized void replaceWith(File compacted, long from) throws IOException {
+        try (FileChannel target = FileChannel.open(compacted.toPath(), StandardOpenOption.WRITE)) {
+            long position = target.size();
+            long copied = 0;
+            while (from + copied < size) {
+                copied += channel.transferTo(from + copied, size - from - copied, target.position(position + copied));
+            }
+            target.force(true);
+        }
+        channel.close();
+        try {
+            try {
+                Files.move(compacted.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(compacted.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            size = channel.size();
+            channel.position(size);
+        }
+    }
+
+    /**
+     * Forces appended entries to disk and closes the file.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel.isOpen()) {
+            try {
+                channel.force(false);
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    private static long writeHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).put(VERSION);
+        header.flip();
+        channel.truncate(0);
+        channel.position(0);
+        writeFully(channel, header);
+        channel.force(true);
+        return HEADER_SIZE;
+    }
+
+    /**
+     * Replays the entries of a log and truncates it after the last complete one.
+     *
+     * @return the size of the valid part of the log
+     */
+    private static long recover(File file, FileChannel channel, Logger logger, Consumer<Mutation> consumer) throws IOException {
+        long length = channel.size();
+        InputStream stream = new BufferedInputStream(Channels.newInputStream(channel.position(0)), 1 << 16);
+        DataInputStream in = new DataInputStream(stream);
+        if (in.readInt() != MAGIC) {
+            throw new IOException(file + " is not a record log");
+        }
+        byte version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported record log version " + version + " in " + file);
+        }
+
+        long position = HEADER_SIZE;
+        long entries = 0;
+        String problem = null;
+        CRC32 crc = new CRC32();
+        while (position < length) {
+            if (length - position < ENTRY_HEADER_SIZE) {
+                problem = "an incomplete entry";
+                break;
+            }
+            int payloadLength = in.readInt();
+            int checksum = in.readInt();
+            if (payloadLength < 0 || payloadLength > length - position - ENTRY_HEADER_SIZE) {
+                problem = "an incomplete entry";
+                break;
+            }
+            byte[] payload = new byte[payloadLength];
+            in.readFully(payload);
+            crc.reset();
+            crc.update(payload);
+            if ((int) crc.getValue() != checksum) {
+                problem = "a corrupt entry";
+                break;
+            }
+            List<Mutation> mutations;
+            try {
+                mutations = readPayload(payload);
+            } catch (IOException e) {
+                problem = "a malformed entry";
+                break;
+            }
+            mutations.forEach(consumer);
+            position += ENTRY_HEADER_SIZE + payloadLength;
+            entries++;
+        }
+
+        if (problem != null) {
+            logger.warning("Found " + problem + " at byte " + position + " of " + file.getName()
+                    + " after " + entries + " entries, discarding the last " + (length - position) + " bytes");
+            channel.truncate(position);
+            channel.force(true);
+        }
+        return position;
+    }
+
+    private static ByteBuffer entry(List<Mutation> mutations) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(ENTRY_HEADER_SIZE + mutations.size() * 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0);
+        out.writeInt(0);
+        RecordCodec.writeVarInt(out, mutations.size());
+        for (Mutation mutation : mutations) {
+            out.writeByte(mutation.getType().ordinal());
+            RecordCodec.writeString(out, mutation.getTable());
+            RecordCodec.writeValue(out, mutation.getKey());
+            if (mutation.getType() == Mutation.Type.PUT) {
+                RecordCodec.writeBytes(out, mutation.getRecord());
+            }
+        }
+        ByteBuffer entry = ByteBuffer.wrap(bytes.toByteArray());
+        CRC32 crc = new CRC32();
+        crc.update(entry.array(), ENTRY_HEADER_SIZE, entry.limit() - ENTRY_HEADER_SIZE);
+        entry.putInt(0, entry.limit() - ENTRY_HEADER_SIZE);
+        entry.putInt(Integer.BYTES, (int) crc.getValue());
+        return entry;
+    }
+
+    private static List<Mutation> readPayload(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        int count = RecordCodec.readVarInt(in);
+        List<Mutation> mutations = new ArrayList<>(Math.min(count, COMPACTION_BATCH));
+        for (int i = 0; i < count; i++) {
+            int type = in.readUnsignedByte();
+            String table = RecordCodec.readString(in);
+            Object key = Values.key(RecordCodec.readValue(in));
+            if (type == Mutation.Type.PUT.ordinal()) {
+                mutations.add(Mutation.put(table, key, RecordCodec.readBytes(in)));
+            } else if (type == Mutation.Type.DELETE.ordinal()) {
+                mutations.add(Mutation.delete(table, key));
+            } else {
+                throw new IOException("Unknown mutation type " + type);
+            }
+        }
+        return mutations;
+    }
+
+    private static int writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        int written = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        return written;
+    }
+
+}
@@ -0,0 +1,171 @@
+package me.rages.reliableframework.storage.kv;
+
+import me.rages.reliableframework.storage.codec.UuidCodec;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * Compares and converts stored values the way an SQL column would, for storages that
+ * evaluate conditions in memory.
+ * <p>
+ * Values are compared by a normalized form: integral numbers and booleans as longs,
+ * other numbers as doubles, UUIDs and enum constants as text, dates as epoch milliseconds
+ * and byte arrays by content. Nulls sort before every other value.
+ */
+public final class Values {
+
+    private Values() {
+    }
+
+    /**
+     * Normalizes a value so equal values of different Java types compare and hash equal.
+     *
+     * @param value the value, may be null
+     * @return the normalized value
+     */
+    public static Object key(Object value) {
+        if (value instanceof Long || value == null || value instanceof String) {
+            return value;
+        }
+        if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof Double || value instanceof Float || value instanceof BigDecimal) {
+            double number = ((Number) value).doubleValue();
+            long integral = (long) number;
+            return integral == number ? (Object) integral : (Object) number;
+        }
+        if (value instanceof BigInteger) {
+            BigInteger number = (BigInteger) value;
+            return number.bitLength() < Long.SIZE ? (Object) number.longValue() : (Object) number.doubleValue();
+        }
+        if (value instanceof Boolean) {
+            return (Boolean) value ? 1L : 0L;
+        }
+        if (value instanceof UUID || value instanceof Character) {
+            return value.toString();
+        }
+        if (value instanceof Enum) {
+            return ((Enum<?>) value).name();
+        }
+        if (value instanceof Date) {
+            return ((Date) value).getTime();
+        }
+        if (value instanceof Instant) {
+            return ((Instant) value).toEpochMilli();
+        }
+        if (value instanceof byte[]) {
+            return ByteBuffer.wrap((byte[]) value);
+        }
+        return value;
+    }
+
+    /**
+     * Compares two values by their normalized form. Numbers sort before text, text before
+     * bytes, and values of any other type after those by their string form.
+     *
+     * @param a the first value, may be null
+     * @param b the second value, may be null
+     * @return a negative number, zero or a positive number as the first value is less than,
+     * equal to or greater than the second
+     */
+    public static int compare(Object a, Object b) {
+        Object left = key(a);
+        Object right = key(b);
+        int rank = Integer.compare(rank(left), rank(right));
+        if (rank != 0) {
+            return rank;
+        }
+        if (left == null) {
+            return 0;
+        }
+        if (left instanceof Long && right instanceof Long) {
+            return Long.compare((Long) left, (Long) right);
+        }
+        if (left instanceof Number) {
+            return Double.compare(((Number) left).doubleValue(), ((Number) right).doubleValue());
+        }
+        if (left instanceof String) {
+            return ((String) left).compareTo((String) right);
+        }
+        if (left instanceof ByteBuffer) {
+            return ((ByteBuffer) left).compareTo((ByteBuffer) right);
+        }
+        return left.equals(right) ? 0 : left.toString().compareTo(right.toString());
+    }
+
+    private static int rank(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof Number) {
+            return 1;
+        }
+        if (value instanceof String) {
+            return 2;
+        }
+        return value instanceof ByteBuffer ? 3 : 4;
+    }
+
+    /**
+     * Converts a stored value to the type of the field it is read into, for values whose
+     * stored form differs from the field type, such as enum constants stored by name.
+     *
+     * @param value the stored value, may be null
+     * @param type  the field type
+     * @return the converted value, or the value itself if no conversion applies
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public static Object coerce(Object value, Class<?> type) {
+        if (value == null || type.isInstance(value)) {
+            return value;
+        }
+        if (value instanceof Number) {
+            Number number = (Number) value;
+            if (type == Integer.class || type == int.class) {
+                return number.intValue();
+            }
+            if (type == Long.class || type == long.class) {
+                return number.longValue();
+            }
+            if (type == Double.class || type == double.class) {
+                return number.doubleValue();
+            }
+            if (type == Float.class || type == float.class) {
+                return number.floatValue();
+            }
+            if (type == Short.class || type == short.class) {
+                return number.shortValue();
+            }
+            if (type == Byte.class || type == byte.class) {
+                return number.byteValue();
+            }
+            if (type == Boolean.class || type == boolean.class) {
+                return number.longValue() != 0;
+            }
+        }
+        if (type == boolean.class && value instanceof Boolean) {
+            return value;
+        }
+        if (type.isEnum() && value instanceof String) {
+            return Enum.valueOf((Class<? extends Enum>) type, (String) value);
+        }
+        if (type == UUID.class && value instanceof String) {
+            return UUID.fromString((String) value);
+        }
+        if (type == UUID.class && value instanceof byte[] && ((byte[]) value).length == UuidCodec.BYTES) {
+            return UuidCodec.fromBytes((byte[]) value);
+        }
+        if (type == Timestamp.class && value instanceof Date) {
+            return new Timestamp(((Date) value).getTime());
+        }
+        return value;
+    }
+
+}
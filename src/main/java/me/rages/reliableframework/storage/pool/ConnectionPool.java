@@ -0,0 +1,338 @@
+package me.rages.reliableframework.storage.pool;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A small, dependency free JDBC connection pool.
+ * <p>
+ * Connections handed out by {@link #borrow()} are proxies; calling {@link Connection#close()}
+ * returns the underlying connection to the pool instead of closing it. Connections are
+ * validated before reuse and retired once they exceed the idle timeout or maximum lifetime.
+ * <p>
+ * Each physical connection keeps a {@link StatementCache}, so preparing the same SQL on a
+ * borrowed connection reuses the already parsed statement.
+ */
+public class ConnectionPool implements AutoCloseable {
+
+    /**
+     * Opens new physical connections for the pool.
+     */
+    @FunctionalInterface
+    public interface ConnectionFactory {
+
+        /**
+         * Opens a new physical connection.
+         *
+         * @return the connection
+         * @throws SQLException if a database access error occurs
+         */
+        Connection create() throws SQLException;
+
+    }
+
+    /**
+     * Connections idle for less than this are handed out without a validation round trip.
+     */
+    private static final long VALIDATION_BYPASS_MILLIS = 500L;
+
+    private final String name;
+    private final PoolSettings settings;
+    private final ConnectionFactory factory;
+    private final Logger logger;
+
+    private final BlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Semaphore permits;
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    private final LongAdder statementCacheHits = new LongAdder();
+    private final LongAdder statementCacheMisses = new LongAdder();
+    private volatile boolean closed;
+
+    /**
+     * Constructs a connection pool and opens the configured minimum of idle connections.
+     *
+     * @param name     the pool name used in log messages
+     * @param settings the pool settings
+     * @param factory  the factory opening physical connections
+     * @param logger   the logger for pool warnings
+     * @throws SQLException if an initial connection cannot be opened
+     */
+    public ConnectionPool(String name, PoolSettings settings, ConnectionFactory factory, Logger logger) throws SQLException {
+        this.name = name;
+        this.settings = settings;
+        this.factory = factory;
+        this.logger = logger;
+        this.permits = new Semaphore(settings.getMaximumPoolSize(), true);
+
+        int initial = Math.min(settings.getMinimumIdle(), settings.getMaximumPoolSize());
+        for (int i = 0; i < initial; i++) {
+            idle.offerLast(open());
+        }
+    }
+
+    /**
+     * Borrows a connection from the pool, waiting up to the configured connection timeout.
+     * The connection must be closed to return it to the pool.
+     *
+     * @return a pooled connection
+     * @throws SQLException if the pool is closed, the timeout elapses or a connection cannot be opened
+     */
+    public Connection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool " + name + " is closed");
+        }
+        try {
+            if (!permits.tryAcquire(settings.getConnectionTimeout(), TimeUnit.MILLISECONDS)) {
+                throw new SQLTimeoutException("Timed out after " + settings.getConnectionTimeout()
+                        + "ms waiting for a connection from pool " + name);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection from pool " + name, e);
+        }
+
+        try {
+            PooledConnection pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                if (isUsable(pooled)) {
+                    return pooled.lease();
+                }
+                discard(pooled);
+            }
+            return open().lease();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the number of connections currently borrowed.
+     *
+     * @return the active connection count
+     */
+    public int getActiveConnections() {
+        return settings.getMaximumPoolSize() - permits.availablePermits();
+    }
+
+    /**
+     * Gets the number of connections waiting in the pool.
+     *
+     * @return the idle connection count
+     */
+    public int getIdleConnections() {
+        return idle.size();
+    }
+
+    /**
+     * Gets the number of physical connections currently open.
+     *
+     * @return the total connection count
+     */
+    public int getTotalConnections() {
+        return totalConnections.get();
+    }
+
+    /**
+     * Gets how many prepared statements were served from a connection's statement cache.
+     *
+     * @return the statement cache hit count
+     */
+    public long getStatementCacheHits() {
+        return statementCacheHits.sum();
+    }
+
+    /**
+     * Gets how many prepared statements had to be parsed by the database.
+     *
+     * @return the statement cache miss count
+     */
+    public long getStatementCacheMisses() {
+        return statementCacheMisses.sum();
+    }
+
+    /**
+     * Checks whether the pool has been closed.
+     *
+     * @return true if the pool is closed
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Closes the pool and every idle connection. Borrowed connections are closed when returned.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            discard(pooled);
+        }
+    }
+
+    private PooledConnection open() throws SQLException {
+        PooledConnection pooled = new PooledConnection(factory.create());
+        totalConnections.incrementAndGet();
+        return pooled;
+    }
+
+    private boolean isUsable(PooledConnection pooled) {
+        long now = System.currentTimeMillis();
+        if (now - pooled.createdAt > settings.getMaxLifetime()) {
+            return false;
+        }
+        if (now - pooled.lastReturnedAt > settings.getIdleTimeout()
+                && totalConnections.get() > settings.getMinimumIdle()) {
+            return false;
+        }
+        if (now - pooled.lastReturnedAt < VALIDATION_BYPASS_MILLIS) {
+            return true;
+        }
+        try {
+            return pooled.connection.isValid(settings.getValidationTimeout());
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void release(PooledConnection pooled) {
+        try {
+            if (closed || pooled.connection.isClosed()
+                    || System.currentTimeMillis() - pooled.createdAt > settings.getMaxLifetime()) {
+                discard(pooled);
+                return;
+            }
+            if (!pooled.connection.getAutoCommit()) {
+                pooled.connection.rollback();
+                pooled.connection.setAutoCommit(true);
+            }
+            pooled.lastReturnedAt = System.currentTimeMillis();
+            idle.offerFirst(pooled);
+        } catch (SQLException e) {
+            logger.log(Level.WARNING, "Discarding broken connection from pool " + name, e);
+            discard(pooled);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void discard(PooledConnection pooled) {
+        totalConnections.decrementAndGet();
+        if (pooled.statements != null) {
+            pooled.statements.close();
+        }
+        try {
+            pooled.connection.close();
+        } catch (SQLException e) {
+            logger.log(Level.FINE, "Failed to close pooled connection", e);
+        }
+    }
+
+    /**
+     * A physical connection owned by the pool.
+     */
+    private final class PooledConnection {
+
+        private final Connection connection;
+        private final StatementCache statements;
+        private final long createdAt = System.currentTimeMillis();
+        private volatile long lastReturnedAt = createdAt;
+
+        private PooledConnection(Connection connection) {
+            this.connection = connection;
+            this.statements = settings.getStatementCacheSize() > 0
+                    ? new StatementCache(settings.getStatementCacheSize(), statementCacheHits, statementCacheMisses)
+                    : null;
+        }
+
+        private Connection lease() {
+            return (Connection) Proxy.newProxyInstance(
+                    ConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{Connection.class},
+                    new LeaseHandler(this)
+            );
+        }
+
+    }
+
+    /**
+     * Checks whether a connection method is a {@code prepareStatement(String)} or
+     * {@code prepareStatement(String, int)} call that the statement cache handles.
+     *
+     * @param method the invoked method
+     * @return true if the call can be served from the statement cache
+     */
+    private static boolean isCacheablePrepare(Method method) {
+        if (!method.getName().equals("prepareStatement")) {
+            return false;
+        }
+        Class<?>[] parameters = method.getParameterTypes();
+        return parameters.length == 1
+                || (parameters.length == 2 && parameters[1] == int.class);
+    }
+
+    /**
+     * Routes calls on a leased proxy to the physical connection and returns it on close.
+     */
+    private final class LeaseHandler implements InvocationHandler {
+
+        private final PooledConnection pooled;
+        private boolean returned;
+
+        private LeaseHandler(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!returned) {
+                        returned = true;
+                        release(pooled);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned || pooled.connection.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + name + "]";
+                default:
+                    if (returned) {
+                        throw new SQLException("Connection has already been returned to pool " + name);
+                    }
+                    if (pooled.statements != null && isCacheablePrepare(method)) {
+                        return pooled.statements.prepare(
+                                pooled.connection, (Connection) proxy, (String) args[0],
+                                args.length == 2 ? (Integer) args[1] : null
+                        );
+                    }
+                    try {
+                        return method.invoke(pooled.connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+
+    }
+
+}
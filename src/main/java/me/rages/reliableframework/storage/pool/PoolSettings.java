@@ -0,0 +1,79 @@
+package me.rages.reliableframework.storage.pool;
+
+import lombok.Builder;
+import lombok.Getter;
+import org.bukkit.configuration.ConfigurationSection;
+
+/**
+ * Immutable sizing and lifecycle settings for a {@link ConnectionPool}.
+ */
+@Getter
+@Builder(toBuilder = true)
+public class PoolSettings {
+
+    /**
+     * The maximum number of connections the pool will open at once.
+     */
+    @Builder.Default
+    private final int maximumPoolSize = 10;
+
+    /**
+     * The number of connections opened eagerly and kept through idle eviction.
+     */
+    @Builder.Default
+    private final int minimumIdle = 2;
+
+    /**
+     * How long, in milliseconds, a borrower waits for a free connection.
+     */
+    @Builder.Default
+    private final long connectionTimeout = 30_000L;
+
+    /**
+     * How long, in milliseconds, a connection may sit idle before it is closed.
+     */
+    @Builder.Default
+    private final long idleTimeout = 600_000L;
+
+    /**
+     * The maximum age, in milliseconds, of a connection before it is retired.
+     */
+    @Builder.Default
+    private final long maxLifetime = 1_800_000L;
+
+    /**
+     * How long, in seconds, a validation check may take.
+     */
+    @Builder.Default
+    private final int validationTimeout = 5;
+
+    /**
+     * The number of prepared statements cached per connection, zero disables the cache.
+     */
+    @Builder.Default
+    private final int statementCacheSize = 64;
+
+    /**
+     * Creates pool settings from a configuration section, falling back to the defaults
+     * for any missing key.
+     *
+     * @param section the {@code storage.pool} section, may be null
+     * @return the pool settings
+     */
+    public static PoolSettings fromConfig(ConfigurationSection section) {
+        PoolSettings defaults = PoolSettings.builder().build();
+        if (section == null) {
+            return defaults;
+        }
+        return PoolSettings.builder()
+                .maximumPoolSize(Math.max(1, section.getInt("maximum-pool-size", defaults.maximumPoolSize)))
+                .minimumIdle(Math.max(0, section.getInt("minimum-idle", defaults.minimumIdle)))
+                .connectionTimeout(section.getLong("connection-timeout", defaults.connectionTimeout))
+                .idleTimeout(section.getLong("idle-timeout", defaults.idleTimeout))
+                .maxLifetime(section.getLong("max-lifetime", defaults.maxLifetime))
+                .validationTimeout(section.getInt("validation-timeout", defaults.validationTimeout))
+                .statementCacheSize(Math.max(0, section.getInt("statement-cache-size", defaults.statementCacheSize)))
+                .build();
+    }
+
+}
@@ -0,0 +1,195 @@
+package me.rages.reliableframework.storage.pool;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A size-bounded LRU cache of prepared statements for a single physical connection.
+ * <p>
+ * Statements are keyed by their SQL text. Closing a cached statement only clears its
+ * parameters so the next caller preparing the same SQL skips the parse and plan step.
+ * A connection is only used by one borrower at a time, so the cache is not thread safe.
+ */
+final class StatementCache {
+
+    private final int maximumSize;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final Map<Key, CachedStatement> statements;
+
+    StatementCache(int maximumSize, LongAdder hits, LongAdder misses) {
+        this.maximumSize = maximumSize;
+        this.hits = hits;
+        this.misses = misses;
+        this.statements = new LinkedHashMap<Key, CachedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CachedStatement> eldest) {
+                if (size() <= StatementCache.this.maximumSize) {
+                    return false;
+                }
+                eldest.getValue().evict();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Prepares a statement, reusing a cached one for the same SQL when it is free.
+     *
+     * @param connection        the physical connection
+     * @param owner             the leased connection returned from {@link Statement#getConnection()}
+     * @param sql               the SQL text
+     * @param autoGeneratedKeys the generated keys flag, or null for the plain overload
+     * @return a prepared statement whose close returns it to the cache
+     * @throws SQLException if a database access error occurs
+     */
+    PreparedStatement prepare(Connection connection, Connection owner, String sql, Integer autoGeneratedKeys)
+            throws SQLException {
+        Key key = new Key(sql, autoGeneratedKeys);
+        CachedStatement cached = statements.get(key);
+        if (cached != null && !cached.inUse && !cached.statement.isClosed()) {
+            hits.increment();
+            return cached.lease(owner);
+        }
+        misses.increment();
+
+        PreparedStatement statement = autoGeneratedKeys == null
+                ? connection.prepareStatement(sql)
+                : connection.prepareStatement(sql, autoGeneratedKeys);
+        if (cached != null && cached.inUse) {
+            // The cached statement is still open higher up the stack, hand out an uncached one.
+            return statement;
+        }
+        CachedStatement created = new CachedStatement(statement);
+        statements.put(key, created);
+        return created.lease(owner);
+    }
+
+    /**
+     * Closes every cached statement.
+     */
+    void close() {
+        for (CachedStatement cached : statements.values()) {
+            cached.evict();
+        }
+        statements.clear();
+    }
+
+    /**
+     * A statement owned by the cache and whether a caller currently holds it.
+     */
+    private static final class CachedStatement {
+
+        private final PreparedStatement statement;
+        private boolean inUse;
+        private boolean evicted;
+
+        private CachedStatement(PreparedStatement statement) {
+            this.statement = statement;
+        }
+
+        private PreparedStatement lease(Connection owner) {
+            inUse = true;
+            boolean[] closed = {false};
+            return (PreparedStatement) Proxy.newProxyInstance(
+                    StatementCache.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class},
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "close":
+                                if (!closed[0]) {
+                                    closed[0] = true;
+                                    release();
+                                }
+                                return null;
+                            case "isClosed":
+                                return closed[0] || statement.isClosed();
+                            case "getConnection":
+                                return owner;
+                            case "equals":
+                                return proxy == args[0];
+                            case "hashCode":
+                                return System.identityHashCode(proxy);
+                            default:
+                                if (closed[0]) {
+                                    throw new SQLException("Statement is closed");
+                                }
+                                try {
+                                    return method.invoke(statement, args);
+                                } catch (InvocationTargetException e) {
+                                    throw e.getCause();
+                                }
+                        }
+                    }
+            );
+        }
+
+        private void release() throws SQLException {
+            inUse = false;
+            if (evicted) {
+                statement.close();
+                return;
+            }
+            try {
+                statement.clearParameters();
+                statement.clearBatch();
+            } catch (SQLException e) {
+                evicted = true;
+                statement.close();
+            }
+        }
+
+        private void evict() {
+            evicted = true;
+            if (!inUse) {
+                try {
+                    statement.close();
+                } catch (SQLException ignored) {
+                    // The statement is discarded either way.
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Cache key made of the SQL text and the generated keys flag.
+     */
+    private static final class Key {
+
+        private final String sql;
+        private final Integer autoGeneratedKeys;
+
+        private Key(String sql, Integer autoGeneratedKeys) {
+            this.sql = sql;
+            this.autoGeneratedKeys = autoGeneratedKeys;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return sql.equals(key.sql) && Objects.equals(autoGeneratedKeys, key.autoGeneratedKeys);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * sql.hashCode() + Objects.hashCode(autoGeneratedKeys);
+        }
+
+    }
+
+}
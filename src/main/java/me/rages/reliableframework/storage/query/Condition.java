@@ -0,0 +1,285 @@
+package me.rages.reliableframework.storage.query;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A single condition of a query's where clause, such as {@code uuid = ?} or {@code id IN (?, ?)}.
+ * <p>
+ * Conditions render to a fixed SQL fragment with placeholders, values are always bound as
+ * parameters. {@code IN} lists are padded to the next power of two by repeating their last
+ * value, so lists of similar length share one statement instead of each length preparing
+ * its own.
+ */
+@Getter
+public final class Condition {
+
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+    private static final Pattern AND = Pattern.compile("\\s+AND\\s+", Pattern.CASE_INSENSITIVE);
+    private static final Pattern COMPARISON = Pattern.compile("([A-Za-z_][A-Za-z0-9_]*)\\s*(=|<>|!=|<=|>=|<|>)\\s*\\?");
+    private static final Pattern NULL_CHECK = Pattern.compile("([A-Za-z_][A-Za-z0-9_]*)\\s+IS\\s+(NOT\\s+)?NULL",
+            Pattern.CASE_INSENSITIVE);
+
+    /**
+     * The comparison of a condition.
+     */
+    public enum Operator {
+        EQ("="),
+        NE("<>"),
+        GT(">"),
+        GE(">="),
+        LT("<"),
+        LE("<="),
+        IN("IN"),
+        IS_NULL("IS NULL"),
+        IS_NOT_NULL("IS NOT NULL");
+
+        private final String sql;
+
+        Operator(String sql) {
+            this.sql = sql;
+        }
+    }
+
+    private final String column;
+    private final Operator operator;
+
+    /**
+     * The values bound to the placeholders of {@link #getSql()}, in order.
+     */
+    private final List<Object> values;
+
+    /**
+     * The SQL fragment of this condition.
+     */
+    private final String sql;
+
+    private Condition(String column, Operator operator, List<Object> values, String sql) {
+        this.column = column;
+        this.operator = operator;
+        this.values = values;
+        this.sql = sql;
+    }
+
+    /**
+     * Creates {@code column = value}.
+     *
+     * @param column the column
+     * @param value  the value, not null
+     * @return the condition
+     */
+    public static Condition eq(String column, Object value) {
+        return compare(column, Operator.EQ, value);
+    }
+
+    /**
+     * Creates {@code column <> value}.
+     *
+     * @param column the column
+     * @param value  the value, not null
+     * @return the condition
+     */
+    public static Condition ne(String column, Object value) {
+        return compare(column, Operator.NE, value);
+    }
+
+    /**
+     * Creates {@code column > value}.
+     *
+     * @param column the column
+     * @param value  the value, not null
+     * @return the condition
+     */
+    public static Condition gt(String column, Object value) {
+        return compare(column, Operator.GT, value);
+    }
+
+    /**
+     * Creates {@code column >= value}.
+     *
+     * @param column the column
+     * @param value  the value, not null
+     * @return the condition
+     */
+    public static Condition ge(String column, Object value) {
+        return compare(column, Operator.GE, value);
+    }
+
+    /**
+     * Creates {@code column < value}.
+     *
+     * @param column the column
+     * @param value  the value, not null
+     * @return the condition
+     */
+    public static Condition lt(String column, Object value) {
+        return compare(column, Operator.LT, value);
+    }
+
+    /**
+     * Creates {@code column <= value}.
+     *
+     * @param column the column
+     * @param value  the value, not null
+     * @return the condition
+     */
+    public static Condition le(String column, Object value) {
+        return compare(column, Operator.LE, value);
+    }
+
+    /**
+     * Creates {@code column IN (values)}. An empty collection matches no rows.
+     *
+     * @param column the column
+     * @param values the values, none of them null
+     * @return the condition
+     */
+    public static Condition in(String column, Collection<?> values) {
+        checkIdentifier(column);
+        if (values.isEmpty()) {
+            return new Condition(column, Operator.IN, Collections.emptyList(), "1 = 0");
+        }
+        int size = Integer.highestOneBit(values.size());
+        if (size < values.size()) {
+            size <<= 1;
+        }
+        List<Object> padded = new ArrayList<>(size);
+        for (Object value : values) {
+            padded.add(requireValue(column, value));
+        }
+        Object last = padded.get(padded.size() - 1);
+        while (padded.size() < size) {
+            padded.add(last);
+        }
+        StringBuilder sql = new StringBuilder(column.length() + 6 + size * 3).append(column).append(" IN (");
+        for (int i = 0; i < size; i++) {
+            sql.append(i > 0 ? ", ?" : "?");
+        }
+        return new Condition(column, Operator.IN, Collections.unmodifiableList(padded), sql.append(')').toString());
+    }
+
+    /**
+     * Creates {@code column IN (values)}.
+     *
+     * @param column the column
+     * @param values the values, none of them null
+     * @return the condition
+     */
+    public static Condition in(String column, Object... values) {
+        List<Object> list = new ArrayList<>(values.length);
+        Collections.addAll(list, values);
+        return in(column, list);
+    }
+
+    /**
+     * Creates {@code column IS NULL}.
+     *
+     * @param column the column
+     * @return the condition
+     */
+    public static Condition isNull(String column) {
+        checkIdentifier(column);
+        return new Condition(column, Operator.IS_NULL, Collections.emptyList(), column + " IS NULL");
+    }
+
+    /**
+     * Creates {@code column IS NOT NULL}.
+     *
+     * @param column the column
+     * @return the condition
+     */
+    public static Condition isNotNull(String column) {
+        checkIdentifier(column);
+        return new Condition(column, Operator.IS_NOT_NULL, Collections.emptyList(), column + " IS NOT NULL");
+    }
+
+    /**
+     * Parses a where clause of simple terms joined with AND, such as {@code uuid = ?} or
+     * {@code name = ? AND level >= ?}, for storages that do not run SQL. Each term compares
+     * a column with a placeholder using {@code =}, {@code <>}, {@code !=}, {@code <},
+     * {@code <=}, {@code >} or {@code >=}, or is {@code column IS [NOT] NULL}.
+     *
+     * @param whereClause the where clause
+     * @param params      the values of the placeholders in order, none of them null
+     * @return the conditions
+     * @throws IllegalArgumentException if the clause has any other form or the values do not
+     *                                  match its placeholders
+     */
+    public static List<Condition> parse(String whereClause, Object... params) {
+        if (whereClause == null || whereClause.trim().isEmpty()) {
+            throw new IllegalArgumentException("Empty where clause");
+        }
+        List<Condition> conditions = new ArrayList<>();
+        int param = 0;
+        for (String term : AND.split(whereClause.trim())) {
+            Matcher comparison = COMPARISON.matcher(term);
+            Matcher nullCheck = NULL_CHECK.matcher(term);
+            if (comparison.matches()) {
+                if (param >= params.length) {
+                    throw new IllegalArgumentException("No value for " + term + " in where clause: " + whereClause);
+                }
+                conditions.add(compare(comparison.group(1), operator(comparison.group(2)), params[param++]));
+            } else if (nullCheck.matches()) {
+                conditions.add(nullCheck.group(2) == null ? isNull(nullCheck.group(1)) : isNotNull(nullCheck.group(1)));
+            } else {
+                throw new IllegalArgumentException("Unsupported term " + term + " in where clause: " + whereClause);
+            }
+        }
+        if (param != params.length) {
+            throw new IllegalArgumentException(params.length + " values given for " + param
+                    + " placeholders in where clause: " + whereClause);
+        }
+        return conditions;
+    }
+
+    private static Operator operator(String sql) {
+        if (sql.equals("!=")) {
+            return Operator.NE;
+        }
+        for (Operator operator : Operator.values()) {
+            if (operator.sql.equals(sql)) {
+                return operator;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported operator " + sql);
+    }
+
+    private static Condition compare(String column, Operator operator, Object value) {
+        checkIdentifier(column);
+        return new Condition(column, operator, Collections.singletonList(requireValue(column, value)),
+                column + " " + operator.sql + " ?");
+    }
+
+    private static Object requireValue(String column, Object value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null value compared with " + column + ", use isNull instead");
+        }
+        return value;
+    }
+
+    /**
+     * Checks that a name is a plain SQL identifier, so it can be written into a statement.
+     *
+     * @param name the column name
+     * @return the name
+     * @throws IllegalArgumentException if the name is not a plain identifier
+     */
+    static String checkIdentifier(String name) {
+        if (name == null || !IDENTIFIER.matcher(name).matches()) {
+            throw new IllegalArgumentException("Invalid column name: " + name);
+        }
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return sql + " " + values;
+    }
+
+}
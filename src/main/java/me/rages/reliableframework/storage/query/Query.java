@@ -0,0 +1,235 @@
+package me.rages.reliableframework.storage.query;
+
+import lombok.Getter;
+import me.rages.reliableframework.data.DataObject;
+import me.rages.reliableframework.storage.Database;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A select over the table of a data object class, built fluently and run asynchronously.
+ * <pre>{@code
+ * database.select(ReliableUser.class)
+ *         .columns("id", "username")
+ *         .where(Condition.gt("id", 100), Condition.in("username", names))
+ *         .orderBy("id")
+ *         .limit(50)
+ *         .list();
+ * }</pre>
+ * Conditions are joined with AND. Column names must be plain identifiers, values are
+ * always bound as parameters. When {@link #columns(String...)} projects a subset of the
+ * columns, the returned data objects only have those fields and data values set; they
+ * are not cached and should not be saved, as the unselected columns would be written
+ * as null. Relationships named in {@link #fetch(String...)} are resolved for all returned
+ * data objects with one query each.
+ *
+ * @param <T> the type of the data objects
+ */
+@Getter
+public class Query<T extends DataObject> {
+
+    private final Database database;
+    private final Class<T> type;
+    private final List<String> columns = new ArrayList<>();
+    private final List<Condition> conditions = new ArrayList<>();
+    private final List<String> orders = new ArrayList<>();
+
+    /**
+     * The relationships resolved eagerly for every returned data object.
+     */
+    private final List<String> relations = new ArrayList<>();
+
+    /**
+     * The maximum number of rows, or -1 for no limit.
+     */
+    private int limit = -1;
+
+    /**
+     * The number of rows skipped before the first returned one.
+     */
+    private int offset;
+
+    /**
+     * Constructs a query over every row of a class.
+     *
+     * @param database the database to run the query on
+     * @param type     the class of the data objects
+     */
+    public Query(Database database, Class<T> type) {
+        this.database = database;
+        this.type = type;
+    }
+
+    /**
+     * Selects only the given columns instead of every column.
+     *
+     * @param columns the columns
+     * @return this query
+     * @throws IllegalArgumentException if a column name is not a plain identifier
+     */
+    public Query<T> columns(String... columns) {
+        for (String column : columns) {
+            this.columns.add(Condition.checkIdentifier(column));
+        }
+        return this;
+    }
+
+    /**
+     * Adds conditions a row has to match.
+     *
+     * @param conditions the conditions
+     * @return this query
+     */
+    public Query<T> where(Condition... conditions) {
+        Collections.addAll(this.conditions, conditions);
+        return this;
+    }
+
+    /**
+     * Orders the rows by a column, ascending. Later calls order rows the earlier ones consider equal.
+     *
+     * @param column the column
+     * @return this query
+     */
+    public Query<T> orderBy(String column) {
+        return orderBy(column, false);
+    }
+
+    /**
+     * Orders the rows by a column. Later calls order rows the earlier ones consider equal.
+     *
+     * @param column     the column
+     * @param descending whether to order from the highest value down
+     * @return this query
+     */
+    public Query<T> orderBy(String column, boolean descending) {
+        orders.add(Condition.checkIdentifier(column) + (descending ? " DESC" : " ASC"));
+        return this;
+    }
+
+    /**
+     * Limits the number of rows returned.
+     *
+     * @param limit the maximum number of rows
+     * @return this query
+     */
+    public Query<T> limit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit must not be negative: " + limit);
+        }
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * Skips rows before the first returned one. Requires a {@link #limit(int)}.
+     *
+     * @param offset the number of rows to skip
+     * @return this query
+     */
+    public Query<T> offset(int offset) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("Offset must not be negative: " + offset);
+        }
+        this.offset = offset;
+        return this;
+    }
+
+    /**
+     * Resolves relationships eagerly for the returned data objects.
+     *
+     * @param relations the names of the relationship fields
+     * @return this query
+     */
+    public Query<T> fetch(String... relations) {
+        Collections.addAll(this.relations, relations);
+        return this;
+    }
+
+    /**
+     * Checks whether the query reads only some of the columns.
+     *
+     * @return true if columns were projected
+     */
+    public boolean isProjected() {
+        return !columns.isEmpty();
+    }
+
+    /**
+     * Gets the shape of the query for the given statement kind.
+     *
+     * @param kind {@link QueryShape.Kind#SELECT} or {@link QueryShape.Kind#COUNT}
+     * @return the shape
+     * @throws IllegalStateException if an offset is set without a limit
+     */
+    public QueryShape getShape(QueryShape.Kind kind) {
+        if (kind == QueryShape.Kind.COUNT) {
+            return new QueryShape(kind, Collections.emptyList(), QueryShape.fragments(conditions),
+                    Collections.emptyList(), false, false);
+        }
+        if (offset > 0 && limit < 0) {
+            throw new IllegalStateException("An offset requires a limit");
+        }
+        return new QueryShape(kind, new ArrayList<>(columns), QueryShape.fragments(conditions),
+                new ArrayList<>(orders), limit >= 0, offset > 0);
+    }
+
+    /**
+     * Gets the values bound to the statement of the given kind, in placeholder order.
+     *
+     * @param kind {@link QueryShape.Kind#SELECT} or {@link QueryShape.Kind#COUNT}
+     * @return the parameters
+     */
+    public List<Object> getParameters(QueryShape.Kind kind) {
+        List<Object> parameters = new ArrayList<>();
+        for (Condition condition : conditions) {
+            parameters.addAll(condition.getValues());
+        }
+        if (kind == QueryShape.Kind.SELECT) {
+            if (limit >= 0) {
+                parameters.add(limit);
+            }
+            if (offset > 0) {
+                parameters.add(offset);
+            }
+        }
+        return parameters;
+    }
+
+    /**
+     * Runs the query.
+     *
+     * @return a CompletableFuture of the matching data objects
+     */
+    public CompletableFuture<List<T>> list() {
+        CompletableFuture<List<T>> items = database.find(this);
+        if (relations.isEmpty()) {
+            return items;
+        }
+        String[] fetched = relations.toArray(new String[0]);
+        return items.thenCompose(found -> database.fetch(found, fetched));
+    }
+
+    /**
+     * Runs the query limited to one row.
+     *
+     * @return a CompletableFuture of the first matching data object, or of null if none matched
+     */
+    public CompletableFuture<T> first() {
+        limit(1);
+        return list().thenApply(items -> items.isEmpty() ? null : items.get(0));
+    }
+
+    /**
+     * Counts the matching rows, ignoring the columns, ordering, limit and offset.
+     *
+     * @return a CompletableFuture of the number of matching rows
+     */
+    public CompletableFuture<Long> count() {
+        return database.count(this);
+    }
+
+}
@@ -0,0 +1,170 @@
+package me.rages.reliableframework.storage.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Everything about a statement except its parameter values: the kind of statement, the
+ * columns, the condition fragments, the ordering and whether it is limited.
+ * <p>
+ * Two queries with the same shape produce the same SQL text, so shapes are used as the
+ * key the compiled SQL is cached under, and the statement cache of the pool can reuse
+ * the prepared statement.
+ */
+public final class QueryShape {
+
+    /**
+     * The kind of statement a shape compiles to.
+     */
+    public enum Kind {
+        SELECT,
+        COUNT,
+        UPDATE,
+        DELETE
+    }
+
+    private final Kind kind;
+    private final List<String> columns;
+    private final List<String> conditions;
+    private final List<String> orders;
+    private final boolean limited;
+    private final boolean offset;
+    private final int hash;
+
+    /**
+     * Constructs a shape.
+     *
+     * @param kind       the kind of statement
+     * @param columns    the selected or updated columns, empty to select every column
+     * @param conditions the SQL fragments of the conditions, joined with AND
+     * @param orders     the order by terms
+     * @param limited    whether the statement has a LIMIT parameter
+     * @param offset     whether the statement has an OFFSET parameter, only used with a limit
+     */
+    public QueryShape(Kind kind, List<String> columns, List<String> conditions, List<String> orders,
+                      boolean limited, boolean offset) {
+        this.kind = kind;
+        this.columns = columns;
+        this.conditions = conditions;
+        this.orders = orders;
+        this.limited = limited;
+        this.offset = offset;
+        this.hash = Objects.hash(kind, columns, conditions, orders, limited, offset);
+    }
+
+    /**
+     * Creates the shape of an update or delete.
+     *
+     * @param kind       {@link Kind#UPDATE} or {@link Kind#DELETE}
+     * @param columns    the updated columns, empty for a delete
+     * @param conditions the conditions
+     * @return the shape
+     */
+    public static QueryShape of(Kind kind, List<String> columns, List<Condition> conditions) {
+        return new QueryShape(kind, columns, fragments(conditions), Collections.emptyList(), false, false);
+    }
+
+    /**
+     * Gets the updated columns of an update, checked to be plain identifiers.
+     *
+     * @param data the updated values by column
+     * @return the column names in iteration order
+     * @throws IllegalArgumentException if a column name is not a plain identifier
+     */
+    public static List<String> columnsOf(Map<String, ?> data) {
+        List<String> columns = new ArrayList<>(data.size());
+        for (String column : data.keySet()) {
+            columns.add(Condition.checkIdentifier(column));
+        }
+        return columns;
+    }
+
+    static List<String> fragments(List<Condition> conditions) {
+        if (conditions.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> fragments = new ArrayList<>(conditions.size());
+        for (Condition condition : conditions) {
+            fragments.add(condition.getSql());
+        }
+        return fragments;
+    }
+
+    /**
+     * Compiles the shape against a table.
+     *
+     * @param tableName the table
+     * @return the SQL text
+     */
+    public String toSql(String tableName) {
+        return toSql(tableName, null);
+    }
+
+    /**
+     * Compiles the shape against a table whose rows carry a version. An update increments
+     * the version, unless it sets the version itself.
+     *
+     * @param tableName     the table
+     * @param versionColumn the version column, or null if the table has none
+     * @return the SQL text
+     */
+    public String toSql(String tableName, String versionColumn) {
+        StringBuilder sql = new StringBuilder(64);
+        switch (kind) {
+            case SELECT:
+                sql.append("SELECT ").append(columns.isEmpty() ? "*" : String.join(", ", columns))
+                        .append(" FROM ").append(tableName);
+                break;
+            case COUNT:
+                sql.append("SELECT COUNT(*) FROM ").append(tableName);
+                break;
+            case UPDATE:
+                sql.append("UPDATE ").append(tableName).append(" SET ");
+                for (int i = 0; i < columns.size(); i++) {
+                    sql.append(i > 0 ? ", " : "").append(columns.get(i)).append(" = ?");
+                }
+                if (versionColumn != null && columns.stream().noneMatch(versionColumn::equalsIgnoreCase)) {
+                    sql.append(", ").append(versionColumn).append(" = ").append(versionColumn).append(" + 1");
+                }
+                break;
+            case DELETE:
+                sql.append("DELETE FROM ").append(tableName);
+                break;
+        }
+        if (!conditions.isEmpty()) {
+            sql.append(" WHERE ").append(String.join(" AND ", conditions));
+        }
+        if (!orders.isEmpty()) {
+            sql.append(" ORDER BY ").append(String.join(", ", orders));
+        }
+        if (limited) {
+            sql.append(" LIMIT ?");
+        }
+        if (offset) {
+            sql.append(" OFFSET ?");
+        }
+        return sql.toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof QueryShape)) {
+            return false;
+        }
+        QueryShape that = (QueryShape) o;
+        return hash == that.hash && kind == that.kind && limited == that.limited && offset == that.offset
+                && columns.equals(that.columns) && conditions.equals(that.conditions) && orders.equals(that.orders);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+}
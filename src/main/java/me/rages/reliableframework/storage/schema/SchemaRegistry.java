@@ -0,0 +1,192 @@
+package me.rages.reliableframework.storage.schema;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The known columns of each table, kept in memory so checking for a column does not
+ * query the database.
+ * <p>
+ * Columns that are missing are not added right away. They are queued as pending columns
+ * and added together right before the next write to their table. Table and column names
+ * are compared case-insensitively.
+ */
+public class SchemaRegistry {
+
+    private final Map<String, TableSchema> tables = new ConcurrentHashMap<>();
+
+    /**
+     * Records the columns a table has in the database, replacing what was known before.
+     *
+     * @param tableName the name of the table
+     * @param columns   the column names
+     */
+    public void register(String tableName, Collection<String> columns) {
+        Set<String> normalized = ConcurrentHashMap.newKeySet();
+        for (String column : columns) {
+            normalized.add(normalize(column));
+        }
+        table(tableName).columns = normalized;
+    }
+
+    /**
+     * Records a single column added to a table.
+     *
+     * @param tableName the name of the table
+     * @param column    the column name
+     */
+    public void registerColumn(String tableName, String column) {
+        TableSchema table = tables.get(normalize(tableName));
+        if (table != null && table.columns != null) {
+            table.columns.add(normalize(column));
+        }
+    }
+
+    /**
+     * Checks whether the columns of a table have been loaded.
+     *
+     * @param tableName the name of the table
+     * @return true if the table is known
+     */
+    public boolean isLoaded(String tableName) {
+        TableSchema table = tables.get(normalize(tableName));
+        return table != null && table.columns != null;
+    }
+
+    /**
+     * Checks whether a table has a column, or will have it once pending columns are added.
+     *
+     * @param tableName the name of the table
+     * @param column    the column name
+     * @return true if the column exists or is pending
+     */
+    public boolean hasColumn(String tableName, String column) {
+        TableSchema table = tables.get(normalize(tableName));
+        if (table == null) {
+            return false;
+        }
+        String name = normalize(column);
+        if (table.columns != null && table.columns.contains(name)) {
+            return true;
+        }
+        synchronized (table.pending) {
+            return table.pending.containsKey(name);
+        }
+    }
+
+    /**
+     * Queues a column to be added to a table.
+     *
+     * @param tableName the name of the table
+     * @param column    the column name
+     * @param type      the SQL column type
+     */
+    public void addPending(String tableName, String column, String type) {
+        TableSchema table = table(tableName);
+        synchronized (table.pending) {
+            table.pending.putIfAbsent(normalize(column), column + " " + type);
+        }
+    }
+
+    /**
+     * Checks whether a table has columns waiting to be added.
+     *
+     * @param tableName the name of the table
+     * @return true if columns are pending
+     */
+    public boolean hasPending(String tableName) {
+        TableSchema table = tables.get(normalize(tableName));
+        if (table == null) {
+            return false;
+        }
+        synchronized (table.pending) {
+            return !table.pending.isEmpty();
+        }
+    }
+
+    /**
+     * Gets the pending columns of a table without removing them.
+     *
+     * @param tableName the name of the table
+     * @return the pending column definitions keyed by normalized column name, in the order they were queued
+     */
+    public Map<String, String> getPending(String tableName) {
+        TableSchema table = tables.get(normalize(tableName));
+        if (table == null) {
+            return Collections.emptyMap();
+        }
+        synchronized (table.pending) {
+            return new LinkedHashMap<>(table.pending);
+        }
+    }
+
+    /**
+     * Gets the tables that have columns waiting to be added.
+     *
+     * @return the normalized table names
+     */
+    public List<String> getPendingTables() {
+        List<String> pendingTables = new ArrayList<>();
+        tables.forEach((tableName, table) -> {
+            synchronized (table.pending) {
+                if (!table.pending.isEmpty()) {
+                    pendingTables.add(tableName);
+                }
+            }
+        });
+        return pendingTables;
+    }
+
+    /**
+     * Removes and returns the pending columns of a table.
+     *
+     * @param tableName the name of the table
+     * @return the pending column definitions keyed by normalized column name, in the order they were queued
+     */
+    public Map<String, String> drainPending(String tableName) {
+        TableSchema table = tables.get(normalize(tableName));
+        if (table == null) {
+            return Collections.emptyMap();
+        }
+        synchronized (table.pending) {
+            Map<String, String> pending = new LinkedHashMap<>(table.pending);
+            table.pending.clear();
+            return pending;
+        }
+    }
+
+    /**
+     * Gets the lock serializing schema changes to a table.
+     *
+     * @param tableName the name of the table
+     * @return the lock object
+     */
+    public Object lock(String tableName) {
+        return table(tableName);
+    }
+
+    /**
+     * Normalizes a table or column name for comparison.
+     *
+     * @param name the name
+     * @return the lower case name
+     */
+    public static String normalize(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    private TableSchema table(String tableName) {
+        return tables.computeIfAbsent(normalize(tableName), key -> new TableSchema());
+    }
+
+    /**
+     * The loaded and pending columns of a table.
+     */
+    private static final class TableSchema {
+
+        private volatile Set<String> columns;
+        private final Map<String, String> pending = new LinkedHashMap<>();
+
+    }
+
+}
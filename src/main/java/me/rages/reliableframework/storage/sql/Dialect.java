@@ -0,0 +1,11 @@
+package me.rages.reliableframework.storage.sql;
+
+/**
+ * The SQL dialects a storage can speak, used to pick dialect specific column types.
+ */
+public enum Dialect {
+
+    MYSQL,
+    SQLITE
+
+}
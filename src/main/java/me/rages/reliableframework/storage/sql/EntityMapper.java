@@ -0,0 +1,90 @@
+package me.rages.reliableframework.storage.sql;
+
+import me.rages.reliableframework.data.DataObject;
+import me.rages.reliableframework.storage.Database;
+import me.rages.reliableframework.storage.codec.TypeCodec;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Reads and writes the mapped columns of a data object class without reflection.
+ * <p>
+ * Implementations are generated at compile time as {@code <Entity>_Mapper} next to every
+ * {@link me.rages.reliableframework.data.annotations.Table} class, calling the entity's
+ * constructor, getters and setters directly. A mapper has a public constructor taking the
+ * {@link me.rages.reliableframework.storage.codec.TypeCodecRegistry} of the storage using it.
+ * Columns are addressed by their position in declaration order.
+ *
+ * @param <T> the type of the data object
+ */
+public interface EntityMapper<T extends DataObject> {
+
+    /**
+     * Gets the names of the mapped columns in declaration order.
+     *
+     * @return the column names
+     */
+    List<String> getColumns();
+
+    /**
+     * Creates an empty data object.
+     *
+     * @param storage the storage passed to the constructor
+     * @return the new data object
+     */
+    T create(Database storage);
+
+    /**
+     * Reads the value of a mapped column from a data object.
+     *
+     * @param entity the data object
+     * @param column the position of the column
+     * @return the value
+     */
+    Object get(T entity, int column);
+
+    /**
+     * Reads a result set column into a mapped column of a data object.
+     *
+     * @param rs     the result set positioned on a row
+     * @param index  the result set column index
+     * @param column the position of the mapped column
+     * @param entity the data object
+     * @throws SQLException if a database access error occurs
+     */
+    void read(ResultSet rs, int index, int column, T entity) throws SQLException;
+
+    /**
+     * Binds the values of every mapped column in declaration order, starting at the first
+     * parameter. The values are the ones read with {@link #get(DataObject, int)} when the
+     * row was collected, so the bound row matches the one recorded as stored.
+     *
+     * @param ps     the statement
+     * @param values the row values, starting with the mapped columns in declaration order
+     * @return the index after the last bound parameter
+     * @throws SQLException if a database access error occurs
+     */
+    int bind(PreparedStatement ps, List<Object> values) throws SQLException;
+
+    /**
+     * Binds a value with its codec, or as SQL NULL.
+     *
+     * @param ps    the statement
+     * @param index the parameter index
+     * @param codec the codec of the column
+     * @param value the value, may be null
+     * @param <V>   the type of the value
+     * @throws SQLException if a database access error occurs
+     */
+    static <V> void bind(PreparedStatement ps, int index, TypeCodec<V> codec, V value) throws SQLException {
+        if (value == null) {
+            ps.setObject(index, null);
+        } else {
+            codec.bind(ps, index, value);
+        }
+    }
+
+}
@@ -0,0 +1,329 @@
+package me.rages.reliableframework.storage.sql;
+
+import me.rages.reliableframework.data.DataObject;
+import me.rages.reliableframework.data.metadata.ColumnMetadata;
+import me.rages.reliableframework.data.metadata.EntityMetadata;
+import me.rages.reliableframework.storage.codec.TypeCodec;
+import me.rages.reliableframework.storage.codec.TypeCodecRegistry;
+import me.rages.reliableframework.storage.query.QueryShape;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * The CRUD statements and column codecs for a single data object class, generated once
+ * and reused.
+ * <p>
+ * Statements over the mapped columns are built up front. Statements that also include
+ * dynamic data columns are built on first use and kept per column list, so the SQL
+ * text handed to the statement cache stays identical between calls.
+ * <p>
+ * If the class has a generated {@link EntityMapper} matching its mapped columns, it is
+ * loaded here and used in place of reflection to create, read and populate instances.
+ */
+public final class EntitySql {
+
+    /**
+     * Builds the dialect specific conflict clause of an upsert.
+     */
+    @FunctionalInterface
+    public interface UpsertClause {
+
+        /**
+         * Builds the clause appended to an insert to update the existing row on an id conflict.
+         *
+         * @param idColumn      the id column
+         * @param updateColumns the columns to overwrite, may be empty
+         * @return the conflict clause
+         */
+        String build(String idColumn, List<String> updateColumns);
+
+    }
+
+    /**
+     * The most sets of changed columns an entity keeps update statements for.
+     */
+    private static final int MAX_PARTIAL_UPDATES = 16;
+
+    private final EntityMetadata<?> metadata;
+    private final UpsertClause upsertClause;
+    private final List<String> mappedColumns;
+    private final List<TypeCodec<?>> mappedCodecs;
+    private final Map<ColumnMetadata, Integer> positions = new IdentityHashMap<>();
+    private final EntityMapper<?> mapper;
+    private final String selectAll;
+    private final Map<String, String> selectWhere = new ConcurrentHashMap<>();
+    private final Map<String, String> deleteWhere = new ConcurrentHashMap<>();
+    private final Map<List<String>, String> inserts = new ConcurrentHashMap<>();
+    private final Map<List<List<String>>, String> upserts = new ConcurrentHashMap<>();
+    private final Map<List<String>, String> versionedUpdates = new ConcurrentHashMap<>();
+    private final Set<List<String>> partialUpdates = ConcurrentHashMap.newKeySet();
+    private final Map<QueryShape, String> queries = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs the statements for an entity.
+     *
+     * @param metadata     the entity metadata
+     * @param upsertClause the conflict clause of the storage dialect
+     * @param codecs       the codecs of the storage
+     * @throws IllegalArgumentException if a mapped column has a type without a codec
+     */
+    public EntitySql(EntityMetadata<?> metadata, UpsertClause upsertClause, TypeCodecRegistry codecs) {
+        this.metadata = metadata;
+        this.upsertClause = upsertClause;
+        List<String> mappedColumns = new ArrayList<>();
+        List<TypeCodec<?>> mappedCodecs = new ArrayList<>();
+        for (ColumnMetadata column : metadata.getColumns()) {
+            TypeCodec<?> codec = codecs.resolve(column.getType());
+            mappedColumns.add(column.getName());
+            mappedCodecs.add(codec);
+            positions.put(column, positions.size());
+        }
+        this.mappedColumns = Collections.unmodifiableList(mappedColumns);
+        this.mappedCodecs = Collections.unmodifiableList(mappedCodecs);
+        this.mapper = loadMapper(metadata.getType(), codecs);
+        this.selectAll = "SELECT * FROM " + metadata.getTableName();
+        insert(this.mappedColumns);
+    }
+
+    /**
+     * Gets the names of the mapped columns in declaration order.
+     *
+     * @return the mapped column names
+     */
+    public List<String> getMappedColumns() {
+        return mappedColumns;
+    }
+
+    /**
+     * Gets the codecs of the mapped columns, in the same order as {@link #getMappedColumns()}.
+     *
+     * @return the mapped column codecs
+     */
+    public List<TypeCodec<?>> getMappedCodecs() {
+        return mappedCodecs;
+    }
+
+    /**
+     * Gets the codec of a mapped column.
+     *
+     * @param column the column
+     * @return the codec, or null if the column is not mapped by this entity
+     */
+    public TypeCodec<?> getCodec(ColumnMetadata column) {
+        int position = getPosition(column);
+        return position < 0 ? null : mappedCodecs.get(position);
+    }
+
+    /**
+     * Gets the position of a mapped column in declaration order.
+     *
+     * @param column the column
+     * @return the position, or -1 if the column is not mapped by this entity
+     */
+    public int getPosition(ColumnMetadata column) {
+        Integer position = positions.get(column);
+        return position == null ? -1 : position;
+    }
+
+    /**
+     * Gets the generated mapper of the entity.
+     *
+     * @param <T> the type of the data object
+     * @return the mapper, or null if none was generated or it is out of date
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends DataObject> EntityMapper<T> getMapper() {
+        return (EntityMapper<T>) mapper;
+    }
+
+    /**
+     * Gets {@code SELECT * FROM table}.
+     *
+     * @return the select statement
+     */
+    public String selectAll() {
+        return selectAll;
+    }
+
+    /**
+     * Gets {@code SELECT * FROM table WHERE column = ?}.
+     *
+     * @param column the column to filter on
+     * @return the select statement
+     */
+    public String selectWhere(String column) {
+        return selectWhere.computeIfAbsent(column, key -> selectAll + " WHERE " + key + " = ?");
+    }
+
+    /**
+     * Gets {@code SELECT * FROM table ORDER BY id LIMIT ?}, or with {@code WHERE id > ?}
+     * when reading after a known id.
+     *
+     * @param afterId whether the statement filters on a previous id
+     * @return the select statement
+     * @throws IllegalStateException if the entity has no @Id column
+     */
+    public String selectPage(boolean afterId) {
+        if (metadata.getIdColumn() == null) {
+            throw new IllegalStateException("No @Id field found in " + metadata.getType().getName());
+        }
+        String id = metadata.getIdColumn().getName();
+        return selectAll + (afterId ? " WHERE " + id + " > ?" : "") + " ORDER BY " + id + " LIMIT ?";
+    }
+
+    /**
+     * Gets {@code DELETE FROM table WHERE column = ?}.
+     *
+     * @param column the column to filter on
+     * @return the delete statement
+     */
+    public String deleteWhere(String column) {
+        return deleteWhere.computeIfAbsent(column, key -> "DELETE FROM " + metadata.getTableName() + " WHERE " + key + " = ?");
+    }
+
+    /**
+     * Gets {@code INSERT INTO table (columns) VALUES (?, ...)}.
+     *
+     * @param columns the inserted columns
+     * @return the insert statement
+     */
+    public String insert(List<String> columns) {
+        String sql = inserts.get(columns);
+        if (sql == null) {
+            sql = inserts.computeIfAbsent(new ArrayList<>(columns), key -> "INSERT INTO " + metadata.getTableName()
+                    + " (" + String.join(", ", key) + ") VALUES (" + placeholders(key.size()) + ")");
+        }
+        return sql;
+    }
+
+    /**
+     * Checks whether a save may update only the changed columns of a row. Every distinct set
+     * of changed columns needs its own upsert and versioned update, so only the first
+     * {@value #MAX_PARTIAL_UPDATES} sets are accepted. A save changing any other set updates
+     * every column instead, keeping the statements of an entity bounded.
+     *
+     * @param changedColumns the changed columns, without the id and version columns
+     * @return whether statements for these columns are or may be kept
+     */
+    public boolean acceptsPartialUpdate(List<String> changedColumns) {
+        if (partialUpdates.contains(changedColumns)) {
+            return true;
+        }
+        if (partialUpdates.size() >= MAX_PARTIAL_UPDATES) {
+            return false;
+        }
+        partialUpdates.add(new ArrayList<>(changedColumns));
+        return true;
+    }
+
+    /**
+     * Gets {@code INSERT INTO table (columns) VALUES (?, ...)} followed by the dialect's
+     * conflict clause on the id column.
+     *
+     * @param columns       the inserted columns
+     * @param updateColumns the columns overwritten if the id already exists
+     * @return the upsert statement
+     * @throws IllegalStateException if the entity has no @Id column
+     */
+    public String upsert(List<String> columns, List<String> updateColumns) {
+        if (metadata.getIdColumn() == null) {
+            throw new IllegalStateException("No @Id field found in " + metadata.getType().getName());
+        }
+        List<List<String>> key = Arrays.asList(columns, updateColumns);
+        String sql = upserts.get(key);
+        if (sql == null) {
+            List<String> insertColumns = new ArrayList<>(columns);
+            List<String> conflictColumns = new ArrayList<>(updateColumns);
+            sql = upserts.computeIfAbsent(Arrays.asList(insertColumns, conflictColumns), ignored -> insert(insertColumns)
+                    + upsertClause.build(metadata.getIdColumn().getName(), conflictColumns));
+        }
+        return sql;
+    }
+
+    /**
+     * Gets {@code UPDATE table SET column = ?, ..., version = version + 1 WHERE id = ? AND version = ?},
+     * which only updates the row if its stored version is the expected one.
+     *
+     * @param columns the updated columns, without the id and version columns
+     * @return the update statement
+     * @throws IllegalStateException if the entity has no @Id or no @Version column
+     */
+    public String versionedUpdate(List<String> columns) {
+        ColumnMetadata idColumn = metadata.getIdColumn();
+        ColumnMetadata versionColumn = metadata.getVersionColumn();
+        if (idColumn == null || versionColumn == null) {
+            throw new IllegalStateException("No @Id and @Version fields found in " + metadata.getType().getName());
+        }
+        String sql = versionedUpdates.get(columns);
+        if (sql == null) {
+            String version = versionColumn.getName();
+            sql = versionedUpdates.computeIfAbsent(new ArrayList<>(columns), key -> "UPDATE " + metadata.getTableName()
+                    + " SET " + key.stream().map(column -> column + " = ?").collect(Collectors.joining(", "))
+                    + (key.isEmpty() ? "" : ", ") + version + " = " + version + " + 1"
+                    + " WHERE " + idColumn.getName() + " = ? AND " + version + " = ?");
+        }
+        return sql;
+    }
+
+    /**
+     * Loads the generated {@code <Entity>_Mapper} of a class. A mapper is only used if its
+     * columns are exactly the mapped columns, so a stale mapper left over from an older
+     * build falls back to reflection instead of misreading rows.
+     *
+     * @param type   the data object class
+     * @param codecs the codecs passed to the mapper
+     * @return the mapper, or null if there is no usable one
+     */
+    private EntityMapper<?> loadMapper(Class<?> type, TypeCodecRegistry codecs) {
+        try {
+            Class<?> mapperClass = Class.forName(type.getName().replace('$', '_') + "_Mapper", true, type.getClassLoader());
+            if (!EntityMapper.class.isAssignableFrom(mapperClass)) {
+                return null;
+            }
+            EntityMapper<?> loaded = (EntityMapper<?>) mapperClass.getConstructor(TypeCodecRegistry.class).newInstance(codecs);
+            return loaded.getColumns().equals(mappedColumns) ? loaded : null;
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Gets the statement of a query shape, compiled on first use. Updates of an entity with a
+     * {@code @Version} column also increment the version of every row they change.
+     *
+     * @param shape the shape
+     * @return the statement
+     */
+    public String query(QueryShape shape) {
+        ColumnMetadata versionColumn = metadata.getVersionColumn();
+        return queries.computeIfAbsent(shape, key -> key.toSql(
+                metadata.getTableName(), versionColumn != null ? versionColumn.getName() : null
+        ));
+    }
+
+    /**
+     * Builds a comma separated list of {@code ?} placeholders.
+     *
+     * @param count the number of placeholders
+     * @return the placeholders
+     */
+    public static String placeholders(int count) {
+        StringBuilder builder = new StringBuilder(count * 3);
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append('?');
+        }
+        return builder.toString();
+    }
+
+}